@@ -1,18 +1,25 @@
 package com.rubyride.tripmanager.api;
 
+import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.model.ReindexJobStatus;
+import com.rubyride.tripmanager.service.ReindexService;
 import com.rubyride.tripmanager.utility.AdminUtils;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.time.OffsetDateTime;
+import java.util.UUID;
 
 @Service
 public class AdminApiImpl {
   private final AdminUtils adminUtils;
+  private final ReindexService reindexService;
 
-  public AdminApiImpl(final AdminUtils adminUtils) {
+  public AdminApiImpl(final AdminUtils adminUtils, final ReindexService reindexService) {
     this.adminUtils = adminUtils;
+    this.reindexService = reindexService;
   }
 
   @PreAuthorize("hasAuthority('ADMIN')")
@@ -25,9 +32,20 @@ public class AdminApiImpl {
 
   @PreAuthorize("hasAuthority('ADMIN')")
   public ResponseEntity<Void> reindexRepositories() {
-    adminUtils.reindexRepositories();
+    final var jobId = adminUtils.reindexRepositories();
 
-    return ResponseEntity.ok()
+    return ResponseEntity.accepted()
+        .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+            .path("/admin/reindex/{jobId}")
+            .buildAndExpand(jobId)
+            .toUri())
         .build();
   }
+
+  @PreAuthorize("hasAuthority('ADMIN')")
+  public ResponseEntity<ReindexJobStatus> getReindexJob(final UUID jobId) {
+    return reindexService.getStatus(jobId)
+        .map(ResponseEntity::ok)
+        .orElseThrow(() -> new EntityNotFoundException("Reindex job not found"));
+  }
 }
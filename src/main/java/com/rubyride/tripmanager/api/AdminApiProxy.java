@@ -1,11 +1,15 @@
 package com.rubyride.tripmanager.api;
 
 import com.rubyride.api.AdminApi;
+import com.rubyride.tripmanager.model.ReindexJobStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
 import java.time.OffsetDateTime;
+import java.util.UUID;
 
 @RestController
 public class AdminApiProxy implements AdminApi {
@@ -24,4 +28,9 @@ public class AdminApiProxy implements AdminApi {
   public ResponseEntity<Void> reindexRepositories() {
     return adminApi.reindexRepositories();
   }
+
+  @GetMapping("/admin/reindex/{jobId}")
+  public ResponseEntity<ReindexJobStatus> getReindexJob(@PathVariable final UUID jobId) {
+    return adminApi.getReindexJob(jobId);
+  }
 }
@@ -1,15 +1,10 @@
 package com.rubyride.tripmanager.api;
 
 import com.rubyride.model.InlineResponse200;
-import com.rubyride.model.TripRequest;
 import com.rubyride.model.TripRequestScheduleType;
 import com.rubyride.model.TripRequestStatus;
-import com.rubyride.tripmanager.repository.mongo.TripArchiveRepository;
-import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
-import com.rubyride.tripmanager.repository.redis.TripRepository;
-import com.rubyride.tripmanager.utility.DateUtils;
-import com.rubyride.tripmanager.utility.StreamUtils;
-import com.rubyride.tripmanager.utility.TripUtils;
+import com.rubyride.tripmanager.model.TripCount;
+import com.rubyride.tripmanager.service.TripCountService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -17,64 +12,26 @@ import org.springframework.stereotype.Service;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @PreAuthorize("hasAnyAuthority('ADMIN,DISPATCHER')")
 public class AnalyticsApiImpl {
-  private final TripRepository tripRepository;
-  private final TripArchiveRepository tripArchiveRepository;
-  private final TripUtils tripUtils;
-  private final ZoneRepository zoneRepository;
+  private final TripCountService tripCountService;
 
-  public AnalyticsApiImpl(final TripRepository tripRepository, final TripArchiveRepository tripArchiveRepository, final TripUtils tripUtils, final ZoneRepository zoneRepository) {
-    this.tripRepository = tripRepository;
-    this.tripArchiveRepository = tripArchiveRepository;
-    this.tripUtils = tripUtils;
-    this.zoneRepository = zoneRepository;
-  }
-
-  private Stream<TripRequest> getTrips(final LocalDate from, final LocalDate to, final UUID zoneId) {
-    final Stream<TripRequest> tripRequests;
-
-    final var dates = DateUtils.getMinMaxDates(from, to);
-
-    if (zoneId != null) {
-      tripRequests = zoneRepository.findById(zoneId)
-          .map(zone -> StreamUtils.merge(tripRepository.findByFromZoneId(zone.getId()).stream(),
-              tripRepository.findByToZoneId(zone.getId()).stream(),
-              tripArchiveRepository.findByFromZoneId(zone.getId()).stream(),
-              tripArchiveRepository.findByToZoneId(zone.getId()).stream())
-              .unordered()
-              .distinct()
-              .filter(request -> {
-                final var requestDate = tripUtils.getPrimaryTimeConstraint(request).atZoneSameInstant(ZoneOffset.ofHours(zone.getTimeZone())).toLocalDate();
-                return dates.getFirst().compareTo(requestDate) <= 0 &&
-                    dates.getSecond().compareTo(requestDate) > 0;
-              }))
-          .orElse(Stream.empty());
-    } else {
-      tripRequests = StreamUtils.merge(StreamUtils.streamIterable(tripRepository.findAll()),
-          StreamUtils.streamIterable(tripArchiveRepository.findAll()))
-          .filter(request -> {
-            final var requestDate = tripUtils.getPrimaryTimeConstraint(request).toLocalDate();
-            return dates.getFirst().compareTo(requestDate) <= 0 &&
-                dates.getSecond().compareTo(requestDate) > 0;
-          });
-    }
-
-    return tripRequests;
+  public AnalyticsApiImpl(final TripCountService tripCountService) {
+    this.tripCountService = tripCountService;
   }
 
   public ResponseEntity<InlineResponse200> getAggregatedTripCounts(@NotNull @Valid final LocalDate from, @NotNull @Valid final LocalDate to, @Valid final UUID zoneId) {
-    final var groupedTripRequests = getTrips(from, to, zoneId)
-        .collect(Collectors.groupingBy(TripRequest::getStatus,
-            Collectors.counting()));
+    final Map<TripRequestStatus, Long> groupedTripRequests = tripCountService.getCounts(zoneId, from, to).stream()
+        .filter(tripCount -> tripCount.getStatus() != null)
+        .collect(Collectors.groupingBy(TripCount::getStatus,
+            Collectors.summingLong(TripCount::getCount)));
 
     return ResponseEntity.ok(new InlineResponse200()
         .notStarted(groupedTripRequests.getOrDefault(TripRequestStatus.NEW, 0L) +
@@ -90,10 +47,10 @@ public class AnalyticsApiImpl {
 
   public ResponseEntity<Map<String, Long>> getTripCounts(@NotNull @Valid final LocalDate from, @NotNull @Valid final LocalDate
       to, @Valid final UUID zoneId, @Valid final TripRequestScheduleType scheduleType) {
-    return ResponseEntity.ok(getTrips(from, to, zoneId)
-        .filter(request -> scheduleType == null || scheduleType.equals(request.getScheduleType()))
-        .collect(Collectors.groupingBy(tripRequest -> tripUtils.getPrimaryTimeConstraint(tripRequest).toLocalDate().toString(),
+    return ResponseEntity.ok(tripCountService.getCounts(zoneId, from, to).stream()
+        .filter(tripCount -> scheduleType == null || Objects.equals(scheduleType, tripCount.getScheduleType()))
+        .collect(Collectors.groupingBy(TripCount::getDate,
             TreeMap::new,
-            Collectors.counting())));
+            Collectors.summingLong(TripCount::getCount))));
   }
 }
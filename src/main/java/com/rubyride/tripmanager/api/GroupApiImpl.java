@@ -6,8 +6,9 @@ import com.rubyride.model.GroupNode;
 import com.rubyride.tripmanager.exception.CyclicGroupsException;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
 import com.rubyride.tripmanager.repository.mongo.GroupRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.service.GroupHierarchyService;
 import com.rubyride.tripmanager.utility.DataRepositoryUtils;
-import com.rubyride.tripmanager.utility.StreamUtils;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -20,10 +21,14 @@ import java.util.stream.Collectors;
 @Service
 public class GroupApiImpl {
   private final GroupRepository groupRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final GroupHierarchyService groupHierarchyService;
   private final DataRepositoryUtils dataRepositoryUtils;
 
-  public GroupApiImpl(final GroupRepository groupRepository, final DataRepositoryUtils dataRepositoryUtils) {
+  public GroupApiImpl(final GroupRepository groupRepository, final ReferenceDataCache referenceDataCache, final GroupHierarchyService groupHierarchyService, final DataRepositoryUtils dataRepositoryUtils) {
     this.groupRepository = groupRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.groupHierarchyService = groupHierarchyService;
     this.dataRepositoryUtils = dataRepositoryUtils;
   }
 
@@ -31,7 +36,11 @@ public class GroupApiImpl {
   public ResponseEntity<Group> addGroup(@Valid final Group group) {
     group.setId(UUID.randomUUID());
 
-    groupRepository.insert(group);
+    groupHierarchyService.withLock(() -> {
+      groupRepository.insert(group);
+      groupHierarchyService.refresh(group.getId());
+      return group;
+    });
 
     return ResponseEntity.created(URI.create("/v1/groups/" + group.getId().toString()))
         .body(group);
@@ -39,14 +48,22 @@ public class GroupApiImpl {
 
   @PreAuthorize("@accessControl.canModifyGroups()")
   public ResponseEntity<Void> deleteGroup(final UUID groupId) {
-    groupRepository.findById(groupId)
-        .ifPresent(group -> {
-          dataRepositoryUtils.removeAllReferences(groupId);
-          groupRepository.findByParentGroupId(groupId)
-              .forEach(childGroup ->
-                  groupRepository.save(childGroup.parentGroupId(null)));
-          groupRepository.deleteById(groupId);
-        });
+    groupHierarchyService.withLock(() -> {
+      groupRepository.findById(groupId)
+          .ifPresent(group -> {
+            dataRepositoryUtils.removeAllReferences(groupId);
+            groupRepository.findByParentGroupId(groupId)
+                .forEach(childGroup -> {
+                  groupRepository.save(childGroup.parentGroupId(null));
+                  referenceDataCache.getGroups().evict(childGroup.getId());
+                  groupHierarchyService.refresh(childGroup.getId());
+                });
+            groupRepository.deleteById(groupId);
+            referenceDataCache.getGroups().evict(groupId);
+            groupHierarchyService.refresh(groupId);
+          });
+      return null;
+    });
 
     return ResponseEntity.noContent()
         .build();
@@ -57,26 +74,36 @@ public class GroupApiImpl {
   }
 
   public ResponseEntity<GroupNode> getGroupHierarchy(final UUID groupId, final Integer maxDepth) {
+    final var depth = maxDepth == null ?
+        Integer.MAX_VALUE :
+        maxDepth;
+
     return groupRepository.findById(groupId)
-        .map(group -> ResponseEntity.of(getGroupHierarchy(group,
-            0,
-            maxDepth == null ?
-                Integer.MAX_VALUE :
-                maxDepth,
-            new HashSet<>())))
+        .map(group -> {
+          if (depth < 0) {
+            return ResponseEntity.<GroupNode>notFound()
+                .build();
+          }
+
+          final var descendants = groupHierarchyService.getClosure(groupId)
+              .map(closure -> groupHierarchyService.getDescendants(closure, depth))
+              .orElse(Collections.emptyList());
+
+          return ResponseEntity.ok(getGroupHierarchy(group,
+              descendants.stream()
+                  .filter(descendant -> descendant.getParentGroupId() != null)
+                  .collect(Collectors.groupingBy(Group::getParentGroupId)),
+              new HashSet<>()));
+        })
         .orElseThrow(() -> new EntityNotFoundException("Group not found"));
   }
 
-  private Optional<GroupNode> getGroupHierarchy(final Group group, final int currentDepth, final int maxDepth, final Set<Group> currentGroups) {
-    if (currentDepth > maxDepth) {
-      return Optional.empty();
-    }
-
-    if (!currentGroups.add(group)) {
+  private GroupNode getGroupHierarchy(final Group group, final Map<UUID, List<Group>> childrenByParentId, final Set<UUID> currentGroupIds) {
+    if (!currentGroupIds.add(group.getId())) {
       throw new CyclicGroupsException("Cycle detected in group hierarchy");
     }
 
-    return Optional.of(new GroupNode()
+    return new GroupNode()
         .id(group.getId())
         .parentGroupId(group.getParentGroupId())
         .ownerId(group.getOwnerId())
@@ -91,11 +118,9 @@ public class GroupApiImpl {
         .serviceLevelAgreementId(group.getServiceLevelAgreementId())
         .reportingId(group.getReportingId())
         .agentId(group.getAgentId())
-        .children(
-            StreamUtils.safeStream(groupRepository.findByParentGroupId(group.getId()))
-                .map(childGroup -> getGroupHierarchy(childGroup, currentDepth + 1, maxDepth, currentGroups))
-                .flatMap(Optional::stream)
-                .collect(Collectors.toList())));
+        .children(childrenByParentId.getOrDefault(group.getId(), Collections.emptyList()).stream()
+            .map(childGroup -> getGroupHierarchy(childGroup, childrenByParentId, currentGroupIds))
+            .collect(Collectors.toList()));
   }
 
   public ResponseEntity<List<Group>> getGroups() {
@@ -198,9 +223,13 @@ public class GroupApiImpl {
 
   @PreAuthorize("@accessControl.canModifyGroups()")
   public ResponseEntity<Group> updateGroup(@Valid final Group group) {
-    return groupRepository.findById(group.getId())
+    return groupHierarchyService.withLock(() -> groupRepository.findById(group.getId())
         .map(existingGroup -> {
+          final var previousParentGroupId = existingGroup.getParentGroupId();
+          final var previousOriginZoneId = existingGroup.getOriginZoneId();
+
           if (group.getParentGroupId() != null) {
+            groupHierarchyService.checkParent(existingGroup.getId(), group.getParentGroupId());
             existingGroup.setParentGroupId(group.getParentGroupId());
           }
 
@@ -261,12 +290,18 @@ public class GroupApiImpl {
           }
 
           groupRepository.save(existingGroup);
+          referenceDataCache.getGroups().evict(existingGroup.getId());
+
+          if (!Objects.equals(previousParentGroupId, existingGroup.getParentGroupId()) ||
+              !Objects.equals(previousOriginZoneId, existingGroup.getOriginZoneId())) {
+            groupHierarchyService.refresh(existingGroup.getId());
+          }
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/groups/" + group.getId().toString()))
               .body(existingGroup);
         })
         .orElse(ResponseEntity.noContent()
-            .build());
+            .build()));
   }
 }
@@ -2,7 +2,9 @@ package com.rubyride.tripmanager.api;
 
 import com.rubyride.model.LatitudeLongitude;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.model.DriverLocation;
 import com.rubyride.tripmanager.repository.mongo.DriverRepository;
+import com.rubyride.tripmanager.service.LocationIngestService;
 import com.rubyride.tripmanager.service.LocationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +16,7 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -23,21 +26,19 @@ public class LocationApiImpl {
 
   private final DriverRepository driverRepository;
   private final LocationService locationService;
+  private final LocationIngestService locationIngestService;
 
   @Autowired
-  public LocationApiImpl(final DriverRepository driverRepository, final LocationService locationService) {
+  public LocationApiImpl(final DriverRepository driverRepository, final LocationService locationService, final LocationIngestService locationIngestService) {
     this.driverRepository = driverRepository;
     this.locationService = locationService;
+    this.locationIngestService = locationIngestService;
   }
 
   @MessageMapping("/driverLocation/{driverId}/setLocation")
-  @PreAuthorize("@accessControl.canAccessLocation(#driverId)")
+  @PreAuthorize("@accessControl.canSetLocation(#driverId)")
   public void updateLocation(@DestinationVariable("driverId") final UUID driverId, @Payload final LatitudeLongitude location) {
-    Optional.ofNullable(driverRepository.findByUserId(driverId))
-        .ifPresentOrElse(driver -> locationService.setLocation(driverId, location),
-            () -> {
-              throw new EntityNotFoundException("Driver not found");
-            });
+    locationIngestService.ingest(driverId, location);
   }
 
   @PreAuthorize("@accessControl.canAccessLocation(#driverId)")
@@ -47,4 +48,16 @@ public class LocationApiImpl {
         .map(ResponseEntity::of)
         .orElseThrow(() -> new EntityNotFoundException("Driver not found"));
   }
+
+  @PreAuthorize("@accessControl.canAccessLocations()")
+  public ResponseEntity<List<DriverLocation>> getDriverLocationsInZone(final UUID zoneId) {
+    return ResponseEntity.ok(locationService.getLocationsInZone(zoneId));
+  }
+
+  @PreAuthorize("@accessControl.canAccessLocations()")
+  public ResponseEntity<List<DriverLocation>> getNearestDriversInZone(final UUID zoneId, final double latitude, final double longitude, final double radius, final int count) {
+    return ResponseEntity.ok(locationService.getNearestDriversInZone(zoneId, new LatitudeLongitude()
+        .latitude(latitude)
+        .longitude(longitude), radius, count));
+  }
 }
@@ -2,9 +2,14 @@ package com.rubyride.tripmanager.api;
 
 import com.rubyride.api.LocationApi;
 import com.rubyride.model.LatitudeLongitude;
+import com.rubyride.tripmanager.model.DriverLocation;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -19,4 +24,15 @@ public class LocationApiProxy implements LocationApi {
   public ResponseEntity<LatitudeLongitude> getLocation(final UUID driverId) {
     return locationApi.getLocation(driverId);
   }
+
+  @GetMapping("/zones/{zoneId}/driverLocations")
+  public ResponseEntity<List<DriverLocation>> getDriverLocationsInZone(@PathVariable final UUID zoneId) {
+    return locationApi.getDriverLocationsInZone(zoneId);
+  }
+
+  @GetMapping("/zones/{zoneId}/driverLocations/nearest")
+  public ResponseEntity<List<DriverLocation>> getNearestDriversInZone(@PathVariable final UUID zoneId, @RequestParam final double latitude, @RequestParam final double longitude,
+                                                                      @RequestParam(defaultValue = "25") final double radius, @RequestParam(defaultValue = "10") final int count) {
+    return locationApi.getNearestDriversInZone(zoneId, latitude, longitude, radius, count);
+  }
 }
@@ -5,7 +5,8 @@ import com.rubyride.model.Place;
 import com.rubyride.tripmanager.exception.EntityAlreadyExistsException;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
 import com.rubyride.tripmanager.repository.mongo.PartnerRepository;
-import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.utility.ObjectUtils;
 import com.rubyride.tripmanager.utility.StreamUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -15,20 +16,18 @@ import org.springframework.stereotype.Service;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.net.URI;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class PartnerApiImpl {
   private final PartnerRepository partnerRepository;
-  private final PlaceRepository placeRepository;
+  private final ReferenceDataCache referenceDataCache;
 
   @Autowired
-  public PartnerApiImpl(final PartnerRepository partnerRepository, final PlaceRepository placeRepository) {
+  public PartnerApiImpl(final PartnerRepository partnerRepository, final ReferenceDataCache referenceDataCache) {
     this.partnerRepository = partnerRepository;
-    this.placeRepository = placeRepository;
+    this.referenceDataCache = referenceDataCache;
   }
 
   private Partner findPartner(final UUID partnerId) {
@@ -52,6 +51,9 @@ public class PartnerApiImpl {
 
     partnerRepository.insert(partner);
 
+    // Facilities of the new partner may already have been looked up as having no partner
+    referenceDataCache.getPartners().evict(partner.getId());
+
     return ResponseEntity.created(URI.create("/v1/partners/" + partner.getId()))
         .body(partner);
   }
@@ -69,6 +71,7 @@ public class PartnerApiImpl {
   @PreAuthorize("@accessControl.canAccessPartners()")
   public ResponseEntity<Void> deletePartner(final UUID partnerId) {
     partnerRepository.deleteById(partnerId);
+    referenceDataCache.getPartners().evict(partnerId);
 
     return ResponseEntity.noContent()
         .build();
@@ -77,11 +80,12 @@ public class PartnerApiImpl {
   @PreAuthorize("@accessControl.canReadPartner(#partnerId)")
   public ResponseEntity<List<Place>> getFacilitiesForPartner(final UUID partnerId) {
     final var partner = findPartner(partnerId);
+    final var facilities = referenceDataCache.getPlaces().findAllById(ObjectUtils.getOrDefault(partner.getFacilities(), Collections.emptySet()));
 
     return ResponseEntity.ok()
         .body(StreamUtils.safeStream(partner.getFacilities())
-            .map(placeRepository::findById)
-            .flatMap(Optional::stream)
+            .map(facilities::get)
+            .filter(Objects::nonNull)
             .collect(Collectors.toList()));
   }
 
@@ -108,6 +112,7 @@ public class PartnerApiImpl {
           }
 
           partnerRepository.save(existingPartner);
+          referenceDataCache.getPartners().evict(existingPartner.getId());
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/partners/" + existingPartner.getId()))
@@ -3,9 +3,9 @@ package com.rubyride.tripmanager.api;
 import com.rubyride.model.*;
 import com.rubyride.tripmanager.event.NewTripRequestEvent;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
-import com.rubyride.tripmanager.repository.mongo.PartnerRepository;
 import com.rubyride.tripmanager.repository.mongo.PartnerTransportationRequestRepository;
 import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
 import com.rubyride.tripmanager.repository.redis.TripRepository;
 import com.rubyride.tripmanager.security.AccessControl;
@@ -33,8 +33,8 @@ import java.util.stream.Stream;
 public class PartnerTransportationRequestApiImpl {
   private final AccessControl accessControl;
   private final ApplicationEventPublisher applicationEventPublisher;
-  private final PartnerRepository partnerRepository;
   private final PlaceRepository placeRepository;
+  private final ReferenceDataCache referenceDataCache;
   private final TripRepository tripRepository;
   private final UserRepository userRepository;
   private final PartnerTransportationRequestRepository partnerTransportationRequestRepository;
@@ -42,11 +42,11 @@ public class PartnerTransportationRequestApiImpl {
   private final UserUtils userUtils;
 
   @Autowired
-  public PartnerTransportationRequestApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final PartnerRepository partnerRepository, final PlaceRepository placeRepository, final TripRepository tripRepository, final UserRepository userRepository, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final MapService mapService, final UserUtils userUtils) {
+  public PartnerTransportationRequestApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final PlaceRepository placeRepository, final ReferenceDataCache referenceDataCache, final TripRepository tripRepository, final UserRepository userRepository, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final MapService mapService, final UserUtils userUtils) {
     this.accessControl = accessControl;
     this.applicationEventPublisher = applicationEventPublisher;
-    this.partnerRepository = partnerRepository;
     this.placeRepository = placeRepository;
+    this.referenceDataCache = referenceDataCache;
     this.tripRepository = tripRepository;
     this.userRepository = userRepository;
     this.partnerTransportationRequestRepository = partnerTransportationRequestRepository;
@@ -70,7 +70,7 @@ public class PartnerTransportationRequestApiImpl {
 
   @PreAuthorize("@accessControl.canReadPartnerTransportationRequests(#partnerId)")
   public ResponseEntity<List<PartnerTransportationRequest>> getPartnerTransportationRequestByPartner(final UUID partnerId) {
-    final var partner = partnerRepository.findById(partnerId)
+    final var partner = referenceDataCache.getPartners().findById(partnerId)
         .orElseThrow(() -> new EntityNotFoundException("Partner not found"));
 
     return ResponseEntity.ok(
@@ -95,7 +95,7 @@ public class PartnerTransportationRequestApiImpl {
   public ResponseEntity<PartnerTransportationRequest> scheduleTripFromPartnerTransportationRequest(final UUID transportationRequestId, @Valid final TimeConstraint timeConstraint) {
     return partnerTransportationRequestRepository.findById(transportationRequestId)
         .map(transportationRequest -> {
-          final var facility = placeRepository.findById(transportationRequest.getFacilityId())
+          final var facility = referenceDataCache.getPlaces().findById(transportationRequest.getFacilityId())
               .orElseThrow(() -> new EntityNotFoundException("Facility not found"));
 
           final var userId = UUID.randomUUID();
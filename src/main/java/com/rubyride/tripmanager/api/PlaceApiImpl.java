@@ -7,6 +7,7 @@ import com.rubyride.model.User;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
 import com.rubyride.tripmanager.repository.mongo.DataBlobRepository;
 import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
 import com.rubyride.tripmanager.service.MapService;
 import com.rubyride.tripmanager.utility.DataRepositoryUtils;
@@ -29,14 +30,16 @@ public class PlaceApiImpl {
   private final DataRepositoryUtils dataRepositoryUtils;
   private final MapService mapService;
   private final PlaceRepository placeRepository;
+  private final ReferenceDataCache referenceDataCache;
   private final UserRepository userRepository;
   private final SpringContext springContext;
 
-  public PlaceApiImpl(final DataBlobRepository dataRepository, final DataRepositoryUtils dataRepositoryUtils, final MapService mapService, final PlaceRepository placeRepository, final UserRepository userRepository, final SpringContext springContext) {
+  public PlaceApiImpl(final DataBlobRepository dataRepository, final DataRepositoryUtils dataRepositoryUtils, final MapService mapService, final PlaceRepository placeRepository, final ReferenceDataCache referenceDataCache, final UserRepository userRepository, final SpringContext springContext) {
     this.dataRepository = dataRepository;
     this.dataRepositoryUtils = dataRepositoryUtils;
     this.mapService = mapService;
     this.placeRepository = placeRepository;
+    this.referenceDataCache = referenceDataCache;
     this.userRepository = userRepository;
     this.springContext = springContext;
   }
@@ -71,6 +74,7 @@ public class PlaceApiImpl {
 
   public ResponseEntity<Void> deletePlace(final UUID placeId) {
     placeRepository.deleteById(placeId);
+    referenceDataCache.getPlaces().evict(placeId);
 
     return ResponseEntity.noContent()
         .build();
@@ -220,6 +224,7 @@ public class PlaceApiImpl {
           }
 
           placeRepository.save(existingPlace);
+          referenceDataCache.getPlaces().evict(existingPlace.getId());
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/places/" + existingPlace.getId().toString()))
@@ -4,17 +4,24 @@ import com.rubyride.model.*;
 import com.rubyride.tripmanager.event.ModifyShiftEvent;
 import com.rubyride.tripmanager.event.NewShiftEvent;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+import com.rubyride.tripmanager.model.ShiftSnapshot;
+import com.rubyride.tripmanager.model.TrackPoint;
 import com.rubyride.tripmanager.repository.mongo.DriverRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.ShiftArchiveRepository;
-import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
+import com.rubyride.tripmanager.repository.redis.ShiftDeltaLog;
 import com.rubyride.tripmanager.repository.redis.ShiftRepository;
 import com.rubyride.tripmanager.security.AccessControl;
+import com.rubyride.tripmanager.service.LocationHistoryService;
+import com.rubyride.tripmanager.service.ShiftAnalyticsService;
 import com.rubyride.tripmanager.utility.*;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -28,6 +35,7 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ShiftApiImpl {
@@ -36,22 +44,29 @@ public class ShiftApiImpl {
   private final DriverRepository driverRepository;
   private final ShiftRepository shiftRepository;
   private final ShiftArchiveRepository shiftArchiveRepository;
-  private final ZoneRepository zoneRepository;
+  private final ShiftDeltaLog shiftDeltaLog;
+  private final ReferenceDataCache referenceDataCache;
+  private final ShiftAnalyticsService shiftAnalyticsService;
+  private final LocationHistoryService locationHistoryService;
+  private final StreamingResponseUtils streamingResponseUtils;
 
-  public ShiftApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final DriverRepository driverRepository, final ShiftRepository shiftRepository, final ShiftArchiveRepository shiftArchiveRepository, final ZoneRepository zoneRepository, final AnalyticsUtils analyticsUtils) {
+  public ShiftApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final DriverRepository driverRepository, final ShiftRepository shiftRepository, final ShiftArchiveRepository shiftArchiveRepository, final ShiftDeltaLog shiftDeltaLog, final ReferenceDataCache referenceDataCache, final ShiftAnalyticsService shiftAnalyticsService, final LocationHistoryService locationHistoryService, final StreamingResponseUtils streamingResponseUtils) {
     this.accessControl = accessControl;
     this.applicationEventPublisher = applicationEventPublisher;
     this.driverRepository = driverRepository;
     this.shiftRepository = shiftRepository;
     this.shiftArchiveRepository = shiftArchiveRepository;
-    this.zoneRepository = zoneRepository;
+    this.shiftDeltaLog = shiftDeltaLog;
+    this.referenceDataCache = referenceDataCache;
+    this.shiftAnalyticsService = shiftAnalyticsService;
+    this.locationHistoryService = locationHistoryService;
+    this.streamingResponseUtils = streamingResponseUtils;
   }
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> addEvent(final UUID shiftId, @Valid final Event event) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, event, null))
         .map(shift -> {
-          shiftRepository.save(SchedulingUtils.addOrUpdateEvent(shift, event, null));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false));
 
           return ResponseEntity.created(URI.create("/v1/shifts/" + shift.getId().toString()))
@@ -62,9 +77,8 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> updateEvent(final UUID shiftId, @Valid final Event event) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, event, null))
         .map(shift -> {
-          shiftRepository.save(SchedulingUtils.addOrUpdateEvent(shift, event, null));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false));
 
           return ResponseEntity.ok()
@@ -76,9 +90,8 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> assignDriver(final UUID shiftId, @NotNull @Valid final UUID driverId) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.driverId(driverId))
         .map(shift -> {
-          shiftRepository.save(shift.driverId(driverId));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, true));
 
           return ResponseEntity.ok()
@@ -110,8 +123,7 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shift.driverId)")
   public ResponseEntity<Shift> updateShift(@Valid final Shift shift) {
-    return shiftRepository.findById(shift.getId())
-        .map(existingShift -> {
+    return shiftRepository.update(shift.getId(), existingShift -> {
           if (shift.getZoneId() != null) {
             existingShift.setZoneId(shift.getZoneId());
           }
@@ -156,7 +168,9 @@ public class ShiftApiImpl {
             existingShift.setActive(shift.getActive());
           }
 
-          shiftRepository.save(existingShift);
+          return existingShift;
+        })
+        .map(existingShift -> {
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, true));
 
           return ResponseEntity.ok()
@@ -185,9 +199,24 @@ public class ShiftApiImpl {
     return ResponseEntity.ok(shiftRepository.findByActive(active));
   }
 
+  private Stream<String> getAnalyticsRows(final LocalDate from, final LocalDate to, final List<UUID> driverId, final List<UUID> zoneId) {
+    return accessControl.restrictShiftDriverIds(ObjectUtils.getOrDefault(driverId, Collections.emptyList()))
+        .map(driverIds -> shiftAnalyticsService.streamCsvRows(from, to,
+            driverIds,
+            ObjectUtils.getOrDefault(zoneId, Collections.emptyList()),
+            accessControl.getShiftAccessFilter()))
+        .orElseGet(Stream::empty);
+  }
+
   public ResponseEntity<String> getAnalytics(@NotNull @Valid final LocalDate from, @NotNull @Valid final LocalDate to, @Valid final List<UUID> driverId, @Valid final List<UUID> zoneId) {
-    return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
-        .build();
+    try (final var rows = getAnalyticsRows(from, to, driverId, zoneId)) {
+      return ResponseEntity.ok(Stream.concat(Stream.of(AnalyticsUtils.CSV_HEADER), rows)
+          .collect(Collectors.joining("\n", "", "\n")));
+    }
+  }
+
+  public ResponseEntity<StreamingResponseBody> streamAnalytics(final LocalDate from, final LocalDate to, final List<UUID> driverId, final List<UUID> zoneId) {
+    return streamingResponseUtils.toCsv(AnalyticsUtils.CSV_HEADER, getAnalyticsRows(from, to, driverId, zoneId));
   }
 
   private ZoneOffset getTimeZoneForDriver(final UUID driverId) {
@@ -195,7 +224,7 @@ public class ShiftApiImpl {
         Optional.ofNullable(driverRepository.findByUserId(driverId)))
         .orElse(driverRepository.findById(driverId))
         .map(Driver::getHomeZone)
-        .map(zoneRepository::findById)
+        .map(referenceDataCache.getZones()::findById)
         .flatMap(Function.identity())
         .map(Zone::getTimeZone)
         .map(ZoneOffset::ofHours)
@@ -203,16 +232,16 @@ public class ShiftApiImpl {
         ZoneOffset.UTC;
   }
 
-  public ResponseEntity<List<Shift>> getArchivedShifts(final LocalDate from, final LocalDate to, final UUID driverId) {
+  private Stream<Shift> getArchivedShiftStream(final LocalDate from, final LocalDate to, final UUID driverId) {
     final var dates = DateUtils.getMinMaxDates(from, to);
     final var timezone = getTimeZoneForDriver(driverId);
 
-    return ResponseEntity.ok(StreamUtils.merge(driverId != null ?
+    return StreamUtils.merge(driverId != null ?
             StreamUtils.safeStream(shiftRepository.findByDriverId(driverId)) :
             StreamUtils.streamIterable(shiftRepository.findAll()),
         driverId != null ?
-            StreamUtils.safeStream(shiftArchiveRepository.findByDriverId(driverId)) :
-            StreamUtils.streamIterable(shiftArchiveRepository.findAll()))
+            shiftArchiveRepository.streamByDriverId(driverId) :
+            shiftArchiveRepository.streamAllBy())
         .filter(shift ->
             ObjectUtils.getOrDefault(shift.getStartTime(), OffsetDateTime.now())
                 .atZoneSameInstant(timezone).toLocalDate()
@@ -220,8 +249,17 @@ public class ShiftApiImpl {
                 ObjectUtils.getOrDefault(shift.getEndTime(), OffsetDateTime.now())
                     .atZoneSameInstant(timezone).toLocalDate()
                     .compareTo(dates.getFirst()) >= 0)
-        .filter(shift -> accessControl.canAccessShift(shift.getId()))
-        .collect(Collectors.toList()));
+        .filter(accessControl.getShiftAccessFilter());
+  }
+
+  public ResponseEntity<List<Shift>> getArchivedShifts(final LocalDate from, final LocalDate to, final UUID driverId) {
+    try (final var shifts = getArchivedShiftStream(from, to, driverId)) {
+      return ResponseEntity.ok(shifts.collect(Collectors.toList()));
+    }
+  }
+
+  public ResponseEntity<StreamingResponseBody> streamArchivedShifts(final LocalDate from, final LocalDate to, final UUID driverId) {
+    return streamingResponseUtils.toNdjson(getArchivedShiftStream(from, to, driverId));
   }
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
@@ -231,6 +269,37 @@ public class ShiftApiImpl {
             .orElse(null))));
   }
 
+  @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
+  public ResponseEntity<List<TrackPoint>> getShiftTrack(final UUID shiftId) {
+    return shiftRepository.findById(shiftId)
+        .or(() -> shiftArchiveRepository.findById(shiftId))
+        .map(shift -> shift.getDriverId() != null && shift.getStartTime() != null ?
+            locationHistoryService.getTrack(shift.getDriverId(), shift.getStartTime(), ObjectUtils.getOrDefault(shift.getEndTime(), OffsetDateTime.now())) :
+            Collections.<TrackPoint>emptyList())
+        .map(ResponseEntity::ok)
+        .orElseThrow(() -> new EntityNotFoundException("Shift not found"));
+  }
+
+  @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
+  public ResponseEntity<ShiftSnapshot> getShiftSnapshot(final UUID shiftId) {
+    return shiftRepository.findSnapshotById(shiftId)
+        .map(ResponseEntity::ok)
+        .orElseThrow(() -> new EntityNotFoundException("Shift not found"));
+  }
+
+  @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
+  public ResponseEntity<List<ShiftEventDelta>> getShiftDeltas(final UUID shiftId, final long since) {
+    if (!shiftRepository.existsById(shiftId)) {
+      throw new EntityNotFoundException("Shift not found");
+    }
+
+    // Deltas that are no longer retained can't be replayed; the caller has to start again from a new snapshot
+    return shiftDeltaLog.findSince(shiftId, since)
+        .map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.GONE)
+            .build());
+  }
+
   public ResponseEntity<List<Shift>> getShiftsForDriver(final UUID driverId, @Valid final Boolean active, @Valid final LocalDate startDate, @Valid final LocalDate endDate) {
     final var dates = DateUtils.getMinMaxDates(startDate, endDate);
     final var timezone = getTimeZoneForDriver(driverId);
@@ -244,13 +313,13 @@ public class ShiftApiImpl {
                 ObjectUtils.getOrDefault(shift.getEndTime(), OffsetDateTime.now())
                     .atZoneSameInstant(timezone).toLocalDate()
                     .compareTo(dates.getFirst()) >= 0)
-        .filter(shift -> accessControl.canAccessShift(shift.getId()))
+        .filter(accessControl.getShiftAccessFilter())
         .collect(Collectors.toList()));
   }
 
   @PreAuthorize("@accessControl.canAccessShifts()")
   public ResponseEntity<List<Shift>> getShiftsForZone(final UUID zoneId, final LocalDate date) {
-    return zoneRepository.findById(zoneId)
+    return referenceDataCache.getZones().findById(zoneId)
         .map(zone -> ResponseEntity.ok(StreamUtils.streamIterable(shiftRepository.findByZoneId(zoneId))
             .filter(shift -> date == null || (
                 ObjectUtils.getOrDefault(shift.getStartTime(), OffsetDateTime.now())
@@ -270,33 +339,29 @@ public class ShiftApiImpl {
           .build();
     }
 
-    return shiftRepository.findById(shiftId)
-        .map(shift -> StreamUtils.safeStream(shift.getEvents())
+    return shiftRepository.update(shiftId, shift -> StreamUtils.safeStream(shift.getEvents())
             .filter(event -> event.getId().equals(anchorEventId))
             .findFirst()
             .map(anchorEvent -> StreamUtils.safeStream(shift.getEvents())
                 .filter(event -> event.getId().equals(eventId))
                 .findFirst()
-                .map(event -> {
-                  SchedulingUtils.addOrUpdateEvent(shift, event, anchorEventId);
-
-                  shiftRepository.save(shift);
-                  applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false));
-
-                  return ResponseEntity.ok()
-                      .location(URI.create("/v1/shifts/" + shift.getId().toString()))
-                      .body(shift);
-                })
+                .map(event -> SchedulingUtils.addOrUpdateEvent(shift, event, anchorEventId))
                 .orElseThrow(() -> new EntityNotFoundException("Event not found")))
             .orElseThrow(() -> new EntityNotFoundException("Anchor event not found")))
+        .map(shift -> {
+          applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false));
+
+          return ResponseEntity.ok()
+              .location(URI.create("/v1/shifts/" + shift.getId().toString()))
+              .body(shift);
+        })
         .orElseThrow(() -> new EntityNotFoundException("Shift not found"));
   }
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> removeDriver(final UUID shiftId) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.driverId(null))
         .map(shift -> {
-          shiftRepository.save(shift.driverId(null));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, true));
 
           return ResponseEntity.ok()
@@ -308,13 +373,10 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> removeEvent(final UUID shiftId, final UUID eventId) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.events(StreamUtils.safeStream(shift.getEvents())
+            .filter(event -> !eventId.equals(event.getId()))
+            .collect(Collectors.toList())))
         .map(shift -> {
-          final var events = shift.getEvents();
-
-          shiftRepository.save(shift.events(events.stream()
-              .filter(event -> !eventId.equals(event.getId()))
-              .collect(Collectors.toList())));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false));
 
           return ResponseEntity.ok()
@@ -326,9 +388,8 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> setEndTime(final UUID shiftId, @NotNull @Valid final OffsetDateTime endTime) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.endTime(endTime))
         .map(shift -> {
-          shiftRepository.save(shift.endTime(endTime));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, EventAction.SHIFT_END, true));
 
           return ResponseEntity.ok()
@@ -340,9 +401,8 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> setShiftActive(final UUID shiftId, final Boolean active) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.active(active))
         .map(shift -> {
-          shiftRepository.save(shift.active(active));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, true));
 
           return ResponseEntity.ok()
@@ -354,9 +414,8 @@ public class ShiftApiImpl {
 
   @PreAuthorize("@accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<Shift> setStartTime(final UUID shiftId, @NotNull @Valid final OffsetDateTime startTime) {
-    return shiftRepository.findById(shiftId)
+    return shiftRepository.update(shiftId, shift -> shift.startTime(startTime))
         .map(shift -> {
-          shiftRepository.save(shift.startTime(startTime));
           applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, EventAction.SHIFT_START, true));
 
           return ResponseEntity.ok()
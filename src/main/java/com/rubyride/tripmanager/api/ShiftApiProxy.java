@@ -3,8 +3,16 @@ package com.rubyride.tripmanager.api;
 import com.rubyride.api.ShiftApi;
 import com.rubyride.model.Event;
 import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+import com.rubyride.tripmanager.model.ShiftSnapshot;
+import com.rubyride.tripmanager.model.TrackPoint;
+import com.rubyride.tripmanager.utility.StreamingResponseUtils;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -110,4 +118,29 @@ public class ShiftApiProxy implements ShiftApi {
   public ResponseEntity<Shift> updateShift(@Valid final Shift shift) {
     return shiftApiImpl.updateShift(shift);
   }
+
+  @GetMapping("/shifts/{shiftId}/snapshot")
+  public ResponseEntity<ShiftSnapshot> getShiftSnapshot(@PathVariable final UUID shiftId) {
+    return shiftApiImpl.getShiftSnapshot(shiftId);
+  }
+
+  @GetMapping("/shifts/{shiftId}/track")
+  public ResponseEntity<List<TrackPoint>> getShiftTrack(@PathVariable final UUID shiftId) {
+    return shiftApiImpl.getShiftTrack(shiftId);
+  }
+
+  @GetMapping("/shifts/{shiftId}/deltas")
+  public ResponseEntity<List<ShiftEventDelta>> getShiftDeltas(@PathVariable final UUID shiftId, @RequestParam(defaultValue = "0") final long since) {
+    return shiftApiImpl.getShiftDeltas(shiftId, since);
+  }
+
+  @GetMapping(value = "/shifts/analytics/stream", produces = StreamingResponseUtils.TEXT_CSV_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAnalytics(@NotNull @RequestParam final LocalDate from, @NotNull @RequestParam final LocalDate to, @RequestParam(required = false) final List<UUID> driverId, @RequestParam(required = false) final List<UUID> zoneId) {
+    return shiftApiImpl.streamAnalytics(from, to, driverId, zoneId);
+  }
+
+  @GetMapping(value = "/shifts/archived/stream", produces = StreamingResponseUtils.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamArchivedShifts(@NotNull @RequestParam final LocalDate from, @NotNull @RequestParam final LocalDate to, @RequestParam(required = false) final UUID driverId) {
+    return shiftApiImpl.streamArchivedShifts(from, to, driverId);
+  }
 }
@@ -5,10 +5,14 @@ import com.rubyride.tripmanager.event.ModifyShiftEvent;
 import com.rubyride.tripmanager.event.ModifyTripRequestEvent;
 import com.rubyride.tripmanager.event.NewTripRequestEvent;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.exception.EntityUpdateConflictException;
+import com.rubyride.tripmanager.model.TripAssignment;
 import com.rubyride.tripmanager.repository.mongo.*;
 import com.rubyride.tripmanager.repository.redis.ShiftRepository;
 import com.rubyride.tripmanager.repository.redis.TripRepository;
+import com.rubyride.tripmanager.repository.redis.TripTimeIndex;
 import com.rubyride.tripmanager.security.AccessControl;
+import com.rubyride.tripmanager.service.TripDetailsService;
 import com.rubyride.tripmanager.utility.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,6 +20,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -24,6 +29,7 @@ import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,79 +40,41 @@ public class TripApiImpl {
   private final AccessControl accessControl;
   private final ApplicationEventPublisher applicationEventPublisher;
   private final PartnerTransportationRequestRepository partnerTransportationRequestRepository;
-  private final PlaceRepository placeRepository;
-  private final ZoneRepository zoneRepository;
+  private final ReferenceDataCache referenceDataCache;
   private final ShiftRepository shiftRepository;
   private final TripRepository tripRepository;
+  private final TripTimeIndex tripTimeIndex;
   private final TripArchiveRepository tripArchiveRepository;
   private final UserRepository userRepository;
-  private final DriverRepository driverRepository;
-  private final VehicleRepository vehicleRepository;
+  private final TripDetailsService tripDetailsService;
   private final TripUtils tripUtils;
+  private final StreamingResponseUtils streamingResponseUtils;
 
-  public TripApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final PlaceRepository placeRepository, final ZoneRepository zoneRepository, final ShiftRepository shiftRepository, final TripRepository tripRepository, final TripArchiveRepository tripArchiveRepository, final UserRepository userRepository, final DriverRepository driverRepository, final VehicleRepository vehicleRepository, final TripUtils tripUtils) {
+  public TripApiImpl(final AccessControl accessControl, final ApplicationEventPublisher applicationEventPublisher, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final ReferenceDataCache referenceDataCache, final ShiftRepository shiftRepository, final TripRepository tripRepository, final TripTimeIndex tripTimeIndex, final TripArchiveRepository tripArchiveRepository, final UserRepository userRepository, final TripDetailsService tripDetailsService, final TripUtils tripUtils, final StreamingResponseUtils streamingResponseUtils) {
     this.accessControl = accessControl;
     this.applicationEventPublisher = applicationEventPublisher;
     this.partnerTransportationRequestRepository = partnerTransportationRequestRepository;
-    this.placeRepository = placeRepository;
-    this.zoneRepository = zoneRepository;
+    this.referenceDataCache = referenceDataCache;
     this.shiftRepository = shiftRepository;
     this.tripRepository = tripRepository;
+    this.tripTimeIndex = tripTimeIndex;
     this.tripArchiveRepository = tripArchiveRepository;
     this.userRepository = userRepository;
-    this.driverRepository = driverRepository;
-    this.vehicleRepository = vehicleRepository;
+    this.tripDetailsService = tripDetailsService;
     this.tripUtils = tripUtils;
-  }
-
-  private TripRequestWithLocationsAndDriverDetails withLocationsAndDriverDetails(final TripRequest tripRequest) {
-    if (tripRequest == null) {
-      return null;
-    }
-
-    final var fromLocationResponse = placeRepository.findById(tripRequest.getFromLocationId());
-    final var toLocationResponse = placeRepository.findById(tripRequest.getToLocationId());
-
-    if (fromLocationResponse.isPresent() && toLocationResponse.isPresent()) {
-      return new TripRequestWithLocationsAndDriverDetails()
-          .id(tripRequest.getId())
-          .riderId(tripRequest.getRiderId())
-          .fromLocation(fromLocationResponse.get())
-          .toLocation(toLocationResponse.get())
-          .fromZoneId(fromLocationResponse.get().getZoneId())
-          .toZoneId(toLocationResponse.get().getZoneId())
-          .shiftId(tripRequest.getShiftId())
-          .driverDetails(getDriverDetails(tripRequest)
-              .orElse(null))
-          .passengerCount(tripRequest.getPassengerCount())
-          .tripRequestType(tripRequest.getTripRequestType())
-          .primaryTimeConstraint(tripRequest.getPrimaryTimeConstraint())
-          .secondaryTimeConstraint(tripRequest.getSecondaryTimeConstraint())
-          .leftFloat(tripRequest.getLeftFloat())
-          .rightFloat(tripRequest.getRightFloat())
-          .partnerTransportationRequestId(tripRequest.getPartnerTransportationRequestId())
-          .status(tripRequest.getStatus())
-          .specialInstructions(tripRequest.getSpecialInstructions())
-          .lastUpdated(tripRequest.getLastUpdated());
-    } else {
-      return null;
-    }
+    this.streamingResponseUtils = streamingResponseUtils;
   }
 
   private void unassignTripFromShift(final TripRequest tripRequest) {
     Optional.ofNullable(tripRequest.getShiftId())
-        .flatMap(shiftRepository::findById)
-        .ifPresent(shift -> {
-          shiftRepository.save(shift
-              .trips(StreamUtils.safeStream(shift.getTrips())
-                  .filter(tripRequestId -> !tripRequest.getId().equals(tripRequestId))
-                  .collect(Collectors.toList()))
-              .events(StreamUtils.safeStream(shift.getEvents())
-                  .filter(event -> !tripRequest.getId().equals(event.getTripRequestId()))
-                  .collect(Collectors.toList())));
-
-          applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
-        });
+        .flatMap(shiftId -> shiftRepository.update(shiftId, shift -> shift
+            .trips(StreamUtils.safeStream(shift.getTrips())
+                .filter(tripRequestId -> !tripRequest.getId().equals(tripRequestId))
+                .collect(Collectors.toList()))
+            .events(StreamUtils.safeStream(shift.getEvents())
+                .filter(event -> !tripRequest.getId().equals(event.getTripRequestId()))
+                .collect(Collectors.toList()))))
+        .ifPresent(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false)));
   }
 
   private void updateAssociatedPartnerTransportationRequest(final TripRequest tripRequest, final PartnerTransportationRequestStatus status) {
@@ -116,6 +84,24 @@ public class TripApiImpl {
         .ifPresent(partnerTransportationRequestRepository::save);
   }
 
+  private List<Event> getAssignmentEvents(final TripRequest tripRequest) {
+    return List.of(
+        new Event()
+            .action(EventAction.PICKUP)
+            .riderId(tripRequest.getRiderId())
+            .passengerDelta(ObjectUtils.getOrDefault(tripRequest.getPassengerCount(), 1))
+            .placeId(tripRequest.getFromLocationId())
+            .leftFloat(tripRequest.getLeftFloat())
+            .rightFloat(tripRequest.getRightFloat())
+            .tripRequestId(tripRequest.getId()),
+        new Event()
+            .action(EventAction.DROPOFF)
+            .riderId(tripRequest.getRiderId())
+            .passengerDelta(-ObjectUtils.getOrDefault(tripRequest.getPassengerCount(), 1))
+            .placeId(tripRequest.getToLocationId())
+            .tripRequestId(tripRequest.getId()));
+  }
+
   @PreAuthorize("@accessControl.canAccessTripRequest(#tripId) and @accessControl.canAccessShift(#shiftId)")
   public ResponseEntity<TripRequest> assignTripToShift(final UUID tripId, final UUID shiftId, @Min(0) @Valid final Integer position) {
     return tripRepository.findById(tripId)
@@ -137,35 +123,20 @@ public class TripApiImpl {
                       .lastUpdated(OffsetDateTime.now());
                   applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, null));
 
-                  final var trips = ObjectUtils.getOrDefault(shift.getTrips(), new ArrayList<UUID>());
-
-                  if (position != null && position >= 0 && position <= trips.size()) {
-                    trips.add(position, tripId);
-                  } else {
-                    trips.add(tripId);
-                  }
+                  shiftRepository.update(shiftId, assignedShift -> {
+                        final var trips = ObjectUtils.getOrDefault(assignedShift.getTrips(), new ArrayList<UUID>());
 
-                  shift.setTrips(trips);
+                        if (position != null && position >= 0 && position <= trips.size()) {
+                          trips.add(position, tripId);
+                        } else {
+                          trips.add(tripId);
+                        }
 
-                  SchedulingUtils.addOrUpdateEvent(shift, new Event()
-                          .action(EventAction.PICKUP)
-                          .riderId(tripRequest.getRiderId())
-                          .passengerDelta(ObjectUtils.getOrDefault(tripRequest.getPassengerCount(), 1))
-                          .placeId(tripRequest.getFromLocationId())
-                          .leftFloat(tripRequest.getLeftFloat())
-                          .rightFloat(tripRequest.getRightFloat())
-                          .tripRequestId(tripId),
-                      null);
+                        assignedShift.setTrips(trips);
 
-                  SchedulingUtils.addOrUpdateEvent(shift, new Event()
-                          .action(EventAction.DROPOFF)
-                          .riderId(tripRequest.getRiderId())
-                          .passengerDelta(-ObjectUtils.getOrDefault(tripRequest.getPassengerCount(), 1))
-                          .placeId(tripRequest.getToLocationId())
-                          .tripRequestId(tripId),
-                      null);
-                  shiftRepository.save(shift);
-                  applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
+                        return SchedulingUtils.addOrUpdateEvents(assignedShift, getAssignmentEvents(tripRequest));
+                      })
+                      .ifPresent(assignedShift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(assignedShift, tripRequest, null, false)));
 
                   return ResponseEntity.ok(tripRequest);
                 })
@@ -174,6 +145,203 @@ public class TripApiImpl {
         .orElseThrow(() -> new EntityNotFoundException("Trip not found"));
   }
 
+  /**
+   * Put trips that couldn't be moved back on the shifts they were taken off, where they were and with the events they
+   * had, leaving them on no shift (but still recorded against their previous one) if that fails too
+   */
+  private void restoreTrips(final List<UUID> tripIds, final Map<UUID, TripRequest> tripRequests, final Map<UUID, Shift> previousShifts, final Map<UUID, Shift> modifiedShifts) {
+    tripIds.stream()
+        .map(tripRequests::get)
+        .filter(tripRequest -> previousShifts.containsKey(tripRequest.getShiftId()))
+        .collect(Collectors.groupingBy(TripRequest::getShiftId, LinkedHashMap::new,
+            Collectors.mapping(TripRequest::getId, Collectors.toSet())))
+        .forEach((shiftId, restoredTripIds) -> {
+          final var previousShift = previousShifts.get(shiftId);
+          final var previousTrips = ObjectUtils.getOrDefault(previousShift.getTrips(), Collections.<UUID>emptyList());
+
+          try {
+            shiftRepository.update(shiftId, shift -> {
+                  final var trips = ObjectUtils.getOrDefault(shift.getTrips(), new ArrayList<UUID>());
+
+                  previousTrips.stream()
+                      .filter(restoredTripIds::contains)
+                      .filter(tripId -> !trips.contains(tripId))
+                      .forEach(tripId -> trips.add(Math.min(previousTrips.indexOf(tripId), trips.size()), tripId));
+
+                  return SchedulingUtils.addOrUpdateEvents(shift.trips(trips), StreamUtils.safeStream(previousShift.getEvents())
+                      .filter(event -> restoredTripIds.contains(event.getTripRequestId()))
+                      .collect(Collectors.toList()));
+                })
+                .ifPresent(shift -> modifiedShifts.put(shiftId, shift));
+          } catch (final EntityUpdateConflictException e) {
+            log.error("Trips " + restoredTripIds + " not restored to shift " + shiftId + ": " + e.getMessage());
+          }
+        });
+  }
+
+  /**
+   * Assign many trips to shifts at once. Each affected shift is updated once, with all of its new trips and their
+   * events applied in a single pass, and each driver and rider gets one notification rather than one per trip.
+   * Trips already assigned to their target shift are left as they are.
+   * <p>
+   * Trips are taken off their previous shifts before they are added to their target shifts, so a trip is never on two
+   * shifts at once; if its target shift then can't be updated, it is put back on its previous shift. Trips are only
+   * saved once they are on their target shift. If any shift is still being modified concurrently, the other
+   * assignments are made and a conflict listing the trips that weren't moved is returned. As trips already on their
+   * target shift are left alone, the same request can simply be retried.
+   */
+  @PreAuthorize("@accessControl.canAccessTripRequests() and @accessControl.canAccessShifts()")
+  public ResponseEntity<List<TripRequest>> assignTripsToShifts(final List<TripAssignment> assignments) {
+    if (StreamUtils.safeStream(assignments)
+        .anyMatch(assignment -> assignment.getTripId() == null || assignment.getShiftId() == null)) {
+      return ResponseEntity.badRequest()
+          .build();
+    }
+
+    // If a trip is listed more than once, its last assignment wins
+    final var assignmentsByTripId = StreamUtils.safeStream(assignments)
+        .collect(Collectors.toMap(TripAssignment::getTripId, Function.identity(), (a, b) -> b, LinkedHashMap::new));
+
+    final var tripRequests = StreamUtils.streamIterable(tripRepository.findAllById(assignmentsByTripId.keySet()))
+        .collect(Collectors.toMap(TripRequest::getId, Function.identity()));
+
+    assignmentsByTripId.keySet().stream()
+        .filter(tripId -> !tripRequests.containsKey(tripId))
+        .findFirst()
+        .ifPresent(tripId -> {
+          throw new EntityNotFoundException("Trip " + tripId + " not found");
+        });
+
+    final var targetShiftIds = assignmentsByTripId.values().stream()
+        .map(TripAssignment::getShiftId)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    final var existingShiftIds = StreamUtils.streamIterable(shiftRepository.findAllById(targetShiftIds))
+        .map(Shift::getId)
+        .collect(Collectors.toSet());
+
+    targetShiftIds.stream()
+        .filter(shiftId -> !existingShiftIds.contains(shiftId))
+        .findFirst()
+        .ifPresent(shiftId -> {
+          throw new EntityNotFoundException("Shift " + shiftId + " not found");
+        });
+
+    final var changedAssignments = assignmentsByTripId.values().stream()
+        .filter(assignment -> !assignment.getShiftId().equals(tripRequests.get(assignment.getTripId()).getShiftId()))
+        .collect(Collectors.toList());
+
+    // Shifts the trips are moving from, as they were before the move, so trips can be put back if the move fails
+    final var previousShiftTripIds = changedAssignments.stream()
+        .map(assignment -> tripRequests.get(assignment.getTripId()))
+        .filter(tripRequest -> tripRequest.getShiftId() != null)
+        .collect(Collectors.groupingBy(TripRequest::getShiftId, LinkedHashMap::new,
+            Collectors.mapping(TripRequest::getId, Collectors.toSet())));
+    final var previousShifts = StreamUtils.streamIterable(shiftRepository.findAllById(previousShiftTripIds.keySet()))
+        .collect(Collectors.toMap(Shift::getId, Function.identity()));
+
+    final var modifiedShifts = new LinkedHashMap<UUID, Shift>();
+    final var failedTripIds = new LinkedHashSet<UUID>();
+
+    // Take trips off the shifts they are moving from, one update per shift
+    previousShiftTripIds.forEach((shiftId, tripIds) -> {
+      try {
+        shiftRepository.update(shiftId, shift -> shift
+                .trips(StreamUtils.safeStream(shift.getTrips())
+                    .filter(tripId -> !tripIds.contains(tripId))
+                    .collect(Collectors.toList()))
+                .events(StreamUtils.safeStream(shift.getEvents())
+                    .filter(event -> !tripIds.contains(event.getTripRequestId()))
+                    .collect(Collectors.toList())))
+            .ifPresent(shift -> modifiedShifts.put(shiftId, shift));
+      } catch (final EntityUpdateConflictException e) {
+        log.warn("Trips not taken off shift " + shiftId + ": " + e.getMessage());
+        failedTripIds.addAll(tripIds);
+      }
+    });
+
+    // Add trips to their new shifts, in the order they were listed so positions apply as they would one at a time
+    changedAssignments.stream()
+        .filter(assignment -> !failedTripIds.contains(assignment.getTripId()))
+        .collect(Collectors.groupingBy(TripAssignment::getShiftId, LinkedHashMap::new, Collectors.toList()))
+        .forEach((shiftId, shiftAssignments) -> {
+          Optional<Shift> assignedShift;
+
+          try {
+            assignedShift = shiftRepository.update(shiftId, shift -> {
+              final var trips = ObjectUtils.getOrDefault(shift.getTrips(), new ArrayList<UUID>());
+              final var events = new ArrayList<Event>();
+
+              shiftAssignments.forEach(assignment -> {
+                final var position = assignment.getPosition();
+
+                if (position != null && position >= 0 && position <= trips.size()) {
+                  trips.add(position, assignment.getTripId());
+                } else {
+                  trips.add(assignment.getTripId());
+                }
+
+                events.addAll(getAssignmentEvents(tripRequests.get(assignment.getTripId())));
+              });
+
+              return SchedulingUtils.addOrUpdateEvents(shift.trips(trips), events);
+            });
+          } catch (final EntityUpdateConflictException e) {
+            log.warn("Trips not assigned to shift " + shiftId + ": " + e.getMessage());
+            assignedShift = Optional.empty();
+          }
+
+          assignedShift.ifPresentOrElse(
+              shift -> modifiedShifts.put(shiftId, shift),
+              () -> {
+                final var tripIds = shiftAssignments.stream()
+                    .map(TripAssignment::getTripId)
+                    .collect(Collectors.toList());
+
+                failedTripIds.addAll(tripIds);
+                restoreTrips(tripIds, tripRequests, previousShifts, modifiedShifts);
+              });
+        });
+
+    final var assignedTripRequests = changedAssignments.stream()
+        .filter(assignment -> !failedTripIds.contains(assignment.getTripId()))
+        .map(assignment -> tripRequests.get(assignment.getTripId()))
+        .collect(Collectors.toList());
+
+    final var now = OffsetDateTime.now();
+
+    tripRepository.saveAll(assignedTripRequests.stream()
+        .map(tripRequest -> tripRequest
+            .status(TripRequestStatus.DRIVER_ASSIGNED)
+            .shiftId(assignmentsByTripId.get(tripRequest.getId()).getShiftId())
+            .lastUpdated(now))
+        .collect(Collectors.toList()));
+
+    // Riders are notified about their earliest reassigned trip; their other trips are updated silently
+    assignedTripRequests.stream()
+        .filter(tripRequest -> tripRequest.getRiderId() != null)
+        .collect(Collectors.groupingBy(TripRequest::getRiderId, LinkedHashMap::new, Collectors.toList()))
+        .values()
+        .forEach(riderTripRequests -> {
+          riderTripRequests.sort(Comparator.comparing(tripUtils::getPrimaryTimeConstraint));
+
+          for (var i = 0; i < riderTripRequests.size(); i++) {
+            applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(riderTripRequests.get(i), null, i > 0));
+          }
+        });
+
+    modifiedShifts.values()
+        .forEach(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, null, null, false)));
+
+    if (!failedTripIds.isEmpty()) {
+      throw new EntityUpdateConflictException("Trips " + failedTripIds + " were not reassigned as their shifts are " +
+          "being modified concurrently; the other trips were reassigned, please retry");
+    }
+
+    return ResponseEntity.ok(assignmentsByTripId.keySet().stream()
+        .map(tripRequests::get)
+        .collect(Collectors.toList()));
+  }
+
   @PreAuthorize("@accessControl.canAccessTripRequest(#tripId)")
   public ResponseEntity<TripRequest> cancelTripById(final UUID tripId, final TripRequestStatus reason) {
     if (!List
@@ -195,19 +363,21 @@ public class TripApiImpl {
 
           if (tripRequest.getShiftId() != null) {
             // delete any incomplete events associated with this trip request
-            shiftRepository.findById(tripRequest.getShiftId())
+            shiftRepository.update(tripRequest.getShiftId(), shift -> {
+                  final var events = ObjectUtils.getOrDefault(shift.getEvents(), new ArrayList<Event>());
+
+                  events.removeIf(event ->
+                      org.springframework.util.ObjectUtils.nullSafeEquals(tripId, event.getTripRequestId()) &&
+                          !Boolean.TRUE.equals(event.getComplete()));
+
+                  return shift.events(events);
+                })
                 .ifPresent(shift -> {
                   final boolean dataOnly = List.of(
                       TripRequestStatus.CANCEL_BY_DRIVER_RIDER_NOT_PRESENT,
                       TripRequestStatus.CANCEL_BY_DRIVER_RIDER_LATE)
                       .contains(reason);
 
-                  final var events = ObjectUtils.getOrDefault(shift.getEvents(), new ArrayList<Event>());
-
-                  events.removeIf(event ->
-                      org.springframework.util.ObjectUtils.nullSafeEquals(tripId, event.getTripRequestId()) &&
-                          !Boolean.TRUE.equals(event.getComplete()));
-                  shiftRepository.save(shift.events(events));
                   applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, dataOnly));
                 });
           }
@@ -232,17 +402,14 @@ public class TripApiImpl {
 
           if (shiftId != null) {
             // remove trip request and associated events from assigned shift
-            shiftRepository.findById(tripRequest.getShiftId())
-                .ifPresent(shift -> {
-                  shiftRepository.save(shift
-                      .events(StreamUtils.safeStream(shift.getEvents())
-                          .filter(event -> !tripId.equals(event.getTripRequestId()))
-                          .collect(Collectors.toList()))
-                      .trips(StreamUtils.safeStream(shift.getTrips())
-                          .filter(assignedTripId -> !tripId.equals(assignedTripId))
-                          .collect(Collectors.toList())));
-                  applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest.status(TripRequestStatus.CANCEL_BY_RIDER), null, false));
-                });
+            shiftRepository.update(tripRequest.getShiftId(), shift -> shift
+                    .events(StreamUtils.safeStream(shift.getEvents())
+                        .filter(event -> !tripId.equals(event.getTripRequestId()))
+                        .collect(Collectors.toList()))
+                    .trips(StreamUtils.safeStream(shift.getTrips())
+                        .filter(assignedTripId -> !tripId.equals(assignedTripId))
+                        .collect(Collectors.toList())))
+                .ifPresent(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest.status(TripRequestStatus.CANCEL_BY_RIDER), null, false)));
           }
 
           updateAssociatedPartnerTransportationRequest(tripRequest, PartnerTransportationRequestStatus.CANCELLED);
@@ -255,60 +422,83 @@ public class TripApiImpl {
   }
 
   public ResponseEntity<List<TripRequest>> getAllTrips() {
-    return ResponseEntity.ok(StreamUtils.streamIterable(tripRepository.findAll())
-        .filter(tripRequest -> accessControl.canAccessTripRequest(tripRequest.getId()))
-        .collect(Collectors.toList()));
+    return ResponseEntity.ok(accessControl.filterAccessibleTripRequests(tripRepository.findAll()));
   }
 
-  public ResponseEntity<List<TripRequest>> getArchivedTrips(final LocalDate from, final LocalDate to, final UUID zoneId, final UUID riderId) {
+  public ResponseEntity<StreamingResponseBody> streamAllTrips() {
+    return streamingResponseUtils.toNdjson(accessControl.filterAccessibleTripRequests(
+        tripRepository.streamAllById(tripTimeIndex.findTripIds(null, null))));
+  }
+
+  private Stream<TripRequest> getArchivedTripStream(final LocalDate from, final LocalDate to, final UUID zoneId, final UUID riderId) {
     final var dates = DateUtils.getMinMaxDates(from, to);
+    final var timeRange = DateUtils.getTimeRange(dates);
+    final var queryRange = DateUtils.getQueryRange(timeRange);
     final Stream<TripRequest> tripRequests;
 
     if (riderId != null) {
       tripRequests = userRepository.findById(riderId)
           .map(user -> {
             if (zoneId != null) {
-              return zoneRepository.findById(zoneId)
-                  .map(zone -> StreamUtils.merge(tripRepository.findByRiderId(user.getId()).stream(),
-                      tripArchiveRepository.findByRiderId(user.getId()).stream())
-                      .filter(tripRequest -> tripRequest.getFromZoneId().equals(zone.getId()) ||
-                          tripRequest.getToZoneId().equals(zone.getId())))
+              return referenceDataCache.getZones().findById(zoneId)
+                  .map(zone -> StreamUtils.merge(tripRepository.streamAllById(tripTimeIndex.findTripIdsForRider(user.getId(), timeRange.getFirst(), timeRange.getSecond())),
+                      tripArchiveRepository.findByRiderIdAndPrimaryTimeConstraintTimeBetween(user.getId(), queryRange))
+                      .filter(tripRequest -> zone.getId().equals(tripRequest.getFromZoneId()) ||
+                          zone.getId().equals(tripRequest.getToZoneId())))
                   .orElseThrow(() -> new EntityNotFoundException("Zone not found"));
             } else {
-              return StreamUtils.merge(tripRepository.findByRiderId(user.getId()).stream(),
-                  tripArchiveRepository.findByRiderId(user.getId()).stream());
+              return StreamUtils.merge(tripRepository.streamAllById(tripTimeIndex.findTripIdsForRider(user.getId(), timeRange.getFirst(), timeRange.getSecond())),
+                  tripArchiveRepository.findByRiderIdAndPrimaryTimeConstraintTimeBetween(user.getId(), queryRange));
             }
           })
           .orElseThrow(() -> new EntityNotFoundException("Rider not found"));
     } else {
       if (zoneId != null) {
-        tripRequests = zoneRepository.findById(zoneId)
-            .map(zone -> StreamUtils.merge(tripRepository.findByFromZoneId(zone.getId()).stream(),
-                tripRepository.findByToZoneId(zone.getId()).stream(),
-                tripArchiveRepository.findByFromZoneId(zone.getId()).stream(),
-                tripArchiveRepository.findByToZoneId(zone.getId()).stream()))
+        tripRequests = referenceDataCache.getZones().findById(zoneId)
+            .map(zone -> StreamUtils.merge(tripRepository.streamAllById(tripTimeIndex.findTripIdsForZone(zone.getId(), timeRange.getFirst(), timeRange.getSecond())),
+                tripArchiveRepository.findByFromZoneIdAndPrimaryTimeConstraintTimeBetween(zone.getId(), queryRange),
+                tripArchiveRepository.findByToZoneIdAndPrimaryTimeConstraintTimeBetween(zone.getId(), queryRange)
+                    .filter(tripRequest -> !zone.getId().equals(tripRequest.getFromZoneId()))))
             .orElseThrow(() -> new EntityNotFoundException("Zone not found"));
       } else {
-        tripRequests = StreamUtils.merge(StreamUtils.streamIterable(tripRepository.findAll()),
-            StreamUtils.streamIterable(tripArchiveRepository.findAll()));
+        tripRequests = StreamUtils.merge(tripRepository.streamAllById(tripTimeIndex.findTripIds(timeRange.getFirst(), timeRange.getSecond())),
+            tripArchiveRepository.findByPrimaryTimeConstraintTimeBetween(queryRange));
       }
     }
 
-    return ResponseEntity.ok(tripRequests
-        .distinct()
-        .filter(tripRequest -> accessControl.canAccessTripRequest(tripRequest.getId()))
+    return tripRequests
         .filter(request -> {
           final var requestDate = tripUtils.getPrimaryTimeConstraint(request).toLocalDate();
           return dates.getFirst().compareTo(requestDate) <= 0 &&
               dates.getSecond().compareTo(requestDate) > 0;
-        })
-        .sorted(Comparator.comparing(tripUtils::getPrimaryTimeConstraint))
-        .collect(Collectors.toList()));
+        });
+  }
+
+  public ResponseEntity<List<TripRequest>> getArchivedTrips(final LocalDate from, final LocalDate to, final UUID zoneId, final UUID riderId) {
+    try (final var tripRequests = getArchivedTripStream(from, to, zoneId, riderId)) {
+      return ResponseEntity.ok(accessControl.filterAccessibleTripRequests(tripRequests
+          .distinct()
+          .collect(Collectors.toList()))
+          .stream()
+          .sorted(Comparator.comparing(tripUtils::getPrimaryTimeConstraint))
+          .collect(Collectors.toList()));
+    }
+  }
+
+  /**
+   * Stream archived trips as NDJSON as they are read, rather than collecting and sorting them first; trips are
+   * therefore not returned in time order. A trip being archived can be read from both Redis and Mongo, so duplicates
+   * are dropped as in {@link #getArchivedTrips(LocalDate, LocalDate, UUID, UUID)}.
+   */
+  public ResponseEntity<StreamingResponseBody> streamArchivedTrips(final LocalDate from, final LocalDate to, final UUID zoneId, final UUID riderId) {
+    return streamingResponseUtils.toNdjson(accessControl.filterAccessibleTripRequests(
+        getArchivedTripStream(from, to, zoneId, riderId)
+            .distinct()));
   }
 
   @PreAuthorize("@accessControl.canReadUser(#riderId)")
   public ResponseEntity<TripRequestWithLocationsAndDriverDetails> getActiveTrip(final UUID riderId) {
-    return ResponseEntity.of(Optional.ofNullable(withLocationsAndDriverDetails(tripUtils.getActiveTripForRider(riderId, OffsetDateTime.now()))));
+    return ResponseEntity.of(tripDetailsService.withLocationsAndDriverDetails(tripUtils.getActiveTripForRider(riderId, OffsetDateTime.now())));
   }
 
   @PreAuthorize("@accessControl.canReadUser(#riderId)")
@@ -317,57 +507,22 @@ public class TripApiImpl {
     final var activeTripId = Optional.ofNullable(tripUtils.getActiveTripForRider(riderId, now))
         .map(TripRequest::getId);
 
-    return ResponseEntity.ok(StreamUtils.streamIterable(tripRepository.findByRiderId(riderId))
+    return ResponseEntity.ok(tripDetailsService.withLocationsAndDriverDetails(tripRepository.streamAllById(tripTimeIndex.findTripIdsForRider(riderId, now, null))
         .filter(tripRequest -> !Optional.of(tripRequest.getId()).equals(activeTripId))
         .filter(tripRequest -> tripUtils.getPrimaryTimeConstraint(tripRequest).isAfter(now))
         .filter(tripRequest -> tripRequest.getStatus() != TripRequestStatus.TRIP_COMPLETE)
         .sorted(Comparator.nullsLast(Comparator.comparing(tripUtils::getPrimaryTimeConstraint)))
-        .map(this::withLocationsAndDriverDetails)
-        .collect(Collectors.toList()));
+        .collect(Collectors.toList())));
   }
 
   public ResponseEntity<List<TripRequest>> getTrip(final List<UUID> tripId) {
-    return ResponseEntity.ok(StreamUtils.streamIterable(tripRepository.findAllById(tripId))
-        .filter(tripRequest -> accessControl.canAccessTripRequest(tripRequest.getId()))
-        .collect(Collectors.toList()));
-  }
-
-  private Optional<DriverDetails> getDriverDetails(final TripRequest tripRequest) {
-    return shiftRepository.findById(ObjectUtils.getOrDefault(tripRequest.getShiftId(), UUID.randomUUID()))
-        .map(shift -> {
-          final var driver = Optional.ofNullable(driverRepository.findByUserId(ObjectUtils.getOrDefault(shift.getDriverId(), UUID.randomUUID())))
-              .orElse(new Driver());
-
-          return userRepository.findById(ObjectUtils.getOrDefault(driver.getUserId(), ObjectUtils.getOrDefault(shift.getDriverId(), UUID.randomUUID())))
-              .map(user -> {
-                final var vehicle = vehicleRepository.findById(ObjectUtils.getOrDefault(driver.getVehicle(), UUID.randomUUID()))
-                    .orElse(new Vehicle());
-
-                return Optional.of(new DriverDetails()
-                    .firstName(user.getFirstName())
-                    .lastName(user.getLastName())
-                    .phoneNumber(user.getPrimaryPhone())
-                    .image(driver.getImage())
-                    .hireDate(driver.getHireDate())
-                    .vaccinationStatus(driver.getVaccinationStatus())
-                    .vehicle(vehicle
-                        .id(null)
-                        .registrationType(null)
-                        .registrationExpiration(null)
-                        .insuranceType(null)
-                        .insuranceExpiration(null)
-                        .insuranceNamed(null)
-                        .vin(null)));
-              })
-              .orElse(Optional.empty());
-        })
-        .orElse(Optional.empty());
+    return ResponseEntity.ok(accessControl.filterAccessibleTripRequests(tripRepository.findAllById(tripId)));
   }
 
   @PreAuthorize("@accessControl.canAccessTripRequest(#tripId)")
   public ResponseEntity<DriverDetails> getTripDriverDetails(final UUID tripId) {
     return ResponseEntity.of(tripRepository.findById(tripId)
-        .flatMap(this::getDriverDetails));
+        .flatMap(tripDetailsService::getDriverDetails));
   }
 
   @PreAuthorize("@accessControl.canReadUser(#driverId)")
@@ -413,15 +568,28 @@ public class TripApiImpl {
 
   @PreAuthorize("@accessControl.canAccessTripRequests()")
   public ResponseEntity<List<TripRequest>> getTripsForZone(final UUID zoneId, final LocalDate date) {
-    return zoneRepository.findById(zoneId)
-        .map(zone -> ResponseEntity.ok(
-            StreamUtils.merge(tripRepository.findByFromZoneId(zone.getId()).stream(),
+    return referenceDataCache.getZones().findById(zoneId)
+        .map(zone -> {
+          final Stream<TripRequest> tripRequests;
+
+          if (date != null) {
+            // Only read trips whose primary time falls on the requested day in the zone's time zone
+            final var startOfDay = date.atStartOfDay()
+                .atOffset(ZoneOffset.ofHours(zone.getTimeZone()));
+
+            tripRequests = tripRepository.streamAllById(tripTimeIndex.findTripIdsForZone(zone.getId(), startOfDay, startOfDay.plusDays(1L)));
+          } else {
+            tripRequests = StreamUtils.merge(tripRepository.findByFromZoneId(zone.getId()).stream(),
                 tripRepository.findByToZoneId(zone.getId()).stream())
                 .unordered()
-                .distinct()
-                .filter(trip -> date == null || (
-                    date.compareTo(tripUtils.getPrimaryTimeConstraint(trip).atZoneSameInstant(ZoneOffset.ofHours(zone.getTimeZone())).toLocalDate()) == 0))
-                .collect(Collectors.toList())))
+                .distinct();
+          }
+
+          return ResponseEntity.ok(tripRequests
+              .filter(trip -> date == null || (
+                  date.compareTo(tripUtils.getPrimaryTimeConstraint(trip).atZoneSameInstant(ZoneOffset.ofHours(zone.getTimeZone())).toLocalDate()) == 0))
+              .collect(Collectors.toList()));
+        })
         .orElseThrow(() -> new EntityNotFoundException("Zone not found"));
   }
 
@@ -457,18 +625,15 @@ public class TripApiImpl {
           applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, null));
 
           Optional.ofNullable(tripRequest.getShiftId())
-              .ifPresentOrElse(shiftId -> shiftRepository.findById(shiftId)
-                  .ifPresentOrElse(shift -> {
-                    shiftRepository.save(SchedulingUtils.addOrUpdateEvent(shift, new Event()
-                        .action(EventAction.DRIVER_EN_ROUTE)
-                        .time(OffsetDateTime.now())
-                        .riderId(tripRequest.getRiderId())
-                        .placeId(tripRequest.getFromLocationId())
-                        .tripRequestId(tripId)
-                        .location(location)
-                        .complete(true), null));
-                    applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, true));
-                  }, () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
+              .ifPresentOrElse(shiftId -> shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+                          .action(EventAction.DRIVER_EN_ROUTE)
+                          .time(OffsetDateTime.now())
+                          .riderId(tripRequest.getRiderId())
+                          .placeId(tripRequest.getFromLocationId())
+                          .tripRequestId(tripId)
+                          .location(location)
+                          .complete(true), null))
+                  .ifPresentOrElse(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, true)), () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/trips/" + tripRequest.getId().toString()))
@@ -487,18 +652,15 @@ public class TripApiImpl {
           applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, EventAction.PICKUP_ARRIVAL));
 
           Optional.ofNullable(tripRequest.getShiftId())
-              .ifPresentOrElse(shiftId -> shiftRepository.findById(shiftId)
-                  .ifPresentOrElse(shift -> {
-                    shiftRepository.save(SchedulingUtils.addOrUpdateEvent(shift, new Event()
-                        .action(EventAction.PICKUP_ARRIVAL)
-                        .time(OffsetDateTime.now())
-                        .riderId(tripRequest.getRiderId())
-                        .placeId(tripRequest.getFromLocationId())
-                        .tripRequestId(tripId)
-                        .location(location)
-                        .complete(true), null));
-                    applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
-                  }, () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
+              .ifPresentOrElse(shiftId -> shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+                          .action(EventAction.PICKUP_ARRIVAL)
+                          .time(OffsetDateTime.now())
+                          .riderId(tripRequest.getRiderId())
+                          .placeId(tripRequest.getFromLocationId())
+                          .tripRequestId(tripId)
+                          .location(location)
+                          .complete(true), null))
+                  .ifPresentOrElse(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false)), () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/trips/" + tripRequest.getId().toString()))
@@ -517,8 +679,7 @@ public class TripApiImpl {
           applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, EventAction.PICKUP));
 
           Optional.ofNullable(tripRequest.getShiftId())
-              .ifPresentOrElse(shiftId -> shiftRepository.findById(shiftId)
-                  .ifPresentOrElse(shift -> {
+              .ifPresentOrElse(shiftId -> shiftRepository.update(shiftId, shift -> {
                     StreamUtils.safeStream(shift.getEvents())
                         .filter(event -> event.getTripRequestId() != null &&
                             tripId.equals(event.getTripRequestId()) &&
@@ -529,9 +690,9 @@ public class TripApiImpl {
                           event.setComplete(true);
                         });
 
-                    shiftRepository.save(SchedulingUtils.sortEvents(shift));
-                    applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
-                  }, () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
+                    return SchedulingUtils.sortEvents(shift);
+                  })
+                  .ifPresentOrElse(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false)), () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/trips/" + tripRequest.getId().toString()))
@@ -550,20 +711,15 @@ public class TripApiImpl {
           applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, EventAction.DROPOFF_ARRIVAL));
 
           Optional.ofNullable(tripRequest.getShiftId())
-              .ifPresentOrElse(shiftId -> shiftRepository.findById(shiftId)
-                  .ifPresentOrElse(shift -> {
-                    shiftRepository.save(SchedulingUtils.addOrUpdateEvent(shift, new Event()
-                        .action(EventAction.DROPOFF_ARRIVAL)
-                        .time(OffsetDateTime.now())
-                        .riderId(tripRequest.getRiderId())
-                        .placeId(tripRequest.getToLocationId())
-                        .tripRequestId(tripId)
-                        .location(location)
-                        .complete(true), null));
-
-                    shiftRepository.save(SchedulingUtils.sortEvents(shift));
-                    applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
-                  }, () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
+              .ifPresentOrElse(shiftId -> shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+                          .action(EventAction.DROPOFF_ARRIVAL)
+                          .time(OffsetDateTime.now())
+                          .riderId(tripRequest.getRiderId())
+                          .placeId(tripRequest.getToLocationId())
+                          .tripRequestId(tripId)
+                          .location(location)
+                          .complete(true), null))
+                  .ifPresentOrElse(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false)), () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")), () -> log.warn("No shift associated with trip ID " + tripId));
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/trips/" + tripRequest.getId().toString()))
@@ -582,8 +738,7 @@ public class TripApiImpl {
           applicationEventPublisher.publishEvent(new ModifyTripRequestEvent(tripRequest, EventAction.DROPOFF));
 
           Optional.ofNullable(tripRequest.getShiftId())
-              .ifPresentOrElse(shiftId -> shiftRepository.findById(shiftId)
-                      .ifPresentOrElse(shift -> {
+              .ifPresentOrElse(shiftId -> shiftRepository.update(shiftId, shift -> {
                             StreamUtils.safeStream(shift.getEvents())
                                 .filter(event -> event.getTripRequestId() != null &&
                                     tripId.equals(event.getTripRequestId()) &&
@@ -594,9 +749,9 @@ public class TripApiImpl {
                                   event.setComplete(true);
                                 });
 
-                            shiftRepository.save(SchedulingUtils.sortEvents(shift));
-                            applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false));
-                          },
+                            return SchedulingUtils.sortEvents(shift);
+                          })
+                      .ifPresentOrElse(shift -> applicationEventPublisher.publishEvent(new ModifyShiftEvent(shift, tripRequest, null, false)),
                           () -> log.warn("Shift " + shiftId + " associated with trip request " + tripId + " not found")),
                   () -> log.warn("No shift associated with trip ID " + tripId));
 
@@ -2,9 +2,16 @@ package com.rubyride.tripmanager.api;
 
 import com.rubyride.api.TripApi;
 import com.rubyride.model.*;
+import com.rubyride.tripmanager.model.TripAssignment;
+import com.rubyride.tripmanager.utility.StreamingResponseUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -116,4 +123,19 @@ public class TripApiProxy implements TripApi {
   public ResponseEntity<TripRequest> setNeedsAssigned(final UUID tripId) {
     return tripApiImpl.setTripNeedsAssigned(tripId);
   }
+
+  @PostMapping("/trips/assignments")
+  public ResponseEntity<List<TripRequest>> assignTripsToShifts(@RequestBody final List<TripAssignment> assignments) {
+    return tripApiImpl.assignTripsToShifts(assignments);
+  }
+
+  @GetMapping(value = "/trips/stream", produces = StreamingResponseUtils.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAllTrips() {
+    return tripApiImpl.streamAllTrips();
+  }
+
+  @GetMapping(value = "/trips/archived/stream", produces = StreamingResponseUtils.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamArchivedTrips(@NotNull @RequestParam final LocalDate from, @NotNull @RequestParam final LocalDate to, @RequestParam(required = false) final UUID zoneId, @RequestParam(required = false) final UUID riderId) {
+    return tripApiImpl.streamArchivedTrips(from, to, zoneId, riderId);
+  }
 }
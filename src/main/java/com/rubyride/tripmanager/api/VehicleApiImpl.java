@@ -3,6 +3,7 @@ package com.rubyride.tripmanager.api;
 import com.rubyride.api.VehicleApi;
 import com.rubyride.model.Vehicle;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.VehicleRepository;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,9 +15,11 @@ import java.util.UUID;
 @RestController
 public class VehicleApiImpl implements VehicleApi {
   private final VehicleRepository vehicleRepository;
+  private final ReferenceDataCache referenceDataCache;
 
-  public VehicleApiImpl(final VehicleRepository vehicleRepository) {
+  public VehicleApiImpl(final VehicleRepository vehicleRepository, final ReferenceDataCache referenceDataCache) {
     this.vehicleRepository = vehicleRepository;
+    this.referenceDataCache = referenceDataCache;
   }
 
   @Override
@@ -32,6 +35,7 @@ public class VehicleApiImpl implements VehicleApi {
   @Override
   public ResponseEntity<Void> deleteVehicle(final UUID vehicleId) {
     vehicleRepository.deleteById(vehicleId);
+    referenceDataCache.getVehicles().evict(vehicleId);
 
     return ResponseEntity.noContent()
         .build();
@@ -110,6 +114,7 @@ public class VehicleApiImpl implements VehicleApi {
           }
 
           vehicleRepository.save(existingVehicle);
+          referenceDataCache.getVehicles().evict(existingVehicle.getId());
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/vehicles/" + existingVehicle.getId().toString()))
@@ -3,7 +3,9 @@ package com.rubyride.tripmanager.api;
 import com.rubyride.api.ZoneApi;
 import com.rubyride.model.Zone;
 import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
+import com.rubyride.tripmanager.service.ZoneIndexService;
 import com.rubyride.tripmanager.utility.GeoUtils;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
@@ -17,10 +19,14 @@ import java.util.UUID;
 public class ZoneApiImpl implements ZoneApi {
   private final ZoneRepository zoneRepository;
   private final GeoUtils geoUtils;
+  private final ZoneIndexService zoneIndexService;
+  private final ReferenceDataCache referenceDataCache;
 
-  public ZoneApiImpl(final ZoneRepository zoneRepository, final GeoUtils geoUtils) {
+  public ZoneApiImpl(final ZoneRepository zoneRepository, final GeoUtils geoUtils, final ZoneIndexService zoneIndexService, final ReferenceDataCache referenceDataCache) {
     this.zoneRepository = zoneRepository;
     this.geoUtils = geoUtils;
+    this.zoneIndexService = zoneIndexService;
+    this.referenceDataCache = referenceDataCache;
   }
 
   @Override
@@ -28,6 +34,7 @@ public class ZoneApiImpl implements ZoneApi {
     zone.setId(UUID.randomUUID());
 
     zoneRepository.insert(zone);
+    zoneIndexService.invalidate(zone.getId());
 
     return ResponseEntity.created(URI.create("/v1/zones/" + zone.getId().toString()))
         .body(zone);
@@ -36,6 +43,8 @@ public class ZoneApiImpl implements ZoneApi {
   @Override
   public ResponseEntity<Void> deleteZone(final UUID zoneId) {
     zoneRepository.deleteById(zoneId);
+    zoneIndexService.invalidate(zoneId);
+    referenceDataCache.getZones().evict(zoneId);
 
     return ResponseEntity.noContent()
         .build();
@@ -83,6 +92,8 @@ public class ZoneApiImpl implements ZoneApi {
           }
 
           zoneRepository.save(existingZone);
+          zoneIndexService.invalidate(existingZone.getId());
+          referenceDataCache.getZones().evict(existingZone.getId());
 
           return ResponseEntity.ok()
               .location(URI.create("/v1/zones/" + existingZone.getId().toString()))
@@ -0,0 +1,60 @@
+package com.rubyride.tripmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor for notification handlers, which block on Mongo lookups and Twilio calls and so must not run on the
+ * common fork-join pool.
+ * <p>
+ * The pool and its queue are bounded. When both are full the publishing thread runs the handler itself, which slows
+ * down whatever is producing the burst of events rather than dropping notifications. Pool size, queue depth and task
+ * wait and run times are published under the "notifications" executor name.
+ * <p>
+ * Boot only provides its own application task executor when there is no other {@link java.util.concurrent.Executor}
+ * bean, so it is declared here as Boot would, still configured from the spring.task.execution properties.
+ */
+@Configuration
+public class NotificationExecutorConfig {
+  @Value("${NOTIFICATION_THREADS:8}")
+  private int threads;
+
+  @Value("${NOTIFICATION_QUEUE_CAPACITY:1000}")
+  private int queueCapacity;
+
+  @Bean
+  public ExecutorService notificationExecutor(final MeterRegistry meterRegistry) {
+    final var executor = new ThreadPoolExecutor(threads,
+        threads,
+        60L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(queueCapacity),
+        new CustomizableThreadFactory("notification-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+
+    return ExecutorServiceMetrics.monitor(meterRegistry, executor, "notifications", List.of());
+  }
+
+  @Lazy
+  @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+      AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+  public ThreadPoolTaskExecutor applicationTaskExecutor(final TaskExecutorBuilder taskExecutorBuilder) {
+    return taskExecutorBuilder.build();
+  }
+}
@@ -0,0 +1,26 @@
+package com.rubyride.tripmanager.config;
+
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.ScheduledAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Scheduler for the {@link org.springframework.scheduling.annotation.Scheduled} jobs.
+ * <p>
+ * The one second location broadcast and location history flush share this scheduler with jobs that can run for
+ * minutes (archiving, track compaction, geocoding), so it needs more than Boot's default single thread or the
+ * frequent jobs stall behind the long ones. Its size is set by the spring.task.scheduling properties.
+ * <p>
+ * Boot only provides its own scheduler when there is no other {@link org.springframework.scheduling.TaskScheduler}
+ * bean, and the STOMP broker declares one for its heartbeats, so it is declared here as Boot would.
+ */
+@Configuration
+public class SchedulingConfig {
+  // Picked out by name from the other schedulers, so it must keep this name
+  @Bean(name = ScheduledAnnotationBeanPostProcessor.DEFAULT_TASK_SCHEDULER_BEAN_NAME)
+  public ThreadPoolTaskScheduler taskScheduler(final TaskSchedulerBuilder taskSchedulerBuilder) {
+    return taskSchedulerBuilder.build();
+  }
+}
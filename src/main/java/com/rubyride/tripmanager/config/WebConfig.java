@@ -1,18 +1,44 @@
 package com.rubyride.tripmanager.config;
 
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.format.FormatterRegistry;
 import org.springframework.format.datetime.standard.DateTimeFormatterRegistrar;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebConfig extends WebMvcConfigurationSupport {
+  @Value("${MVC_ASYNC_THREADS:16}")
+  private int asyncThreads;
+
+  @Value("${MVC_ASYNC_QUEUE_CAPACITY:100}")
+  private int asyncQueueCapacity;
+
+  private final MeterRegistry meterRegistry;
+  private ExecutorService asyncExecutor;
+
+  public WebConfig(final MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
   @Override
   public void addFormatters(final FormatterRegistry registry) {
     final var registrar = new DateTimeFormatterRegistrar();
@@ -22,6 +48,39 @@ public class WebConfig extends WebMvcConfigurationSupport {
     registrar.registerFormatters(registry);
   }
 
+  @Override
+  public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+    // Streamed (NDJSON) exports of large date ranges can take well over the container's default async timeout
+    configurer.setDefaultTimeout(Duration.ofMinutes(10L).toMillis());
+    configurer.setTaskExecutor(getAsyncTaskExecutor());
+  }
+
+  // Extending WebMvcConfigurationSupport turns off Boot's MVC auto-configuration, which would otherwise leave streamed
+  // responses on a thread-per-request executor. This one is bounded; when it is saturated, the request thread writes
+  // the response itself, so concurrent streams are still capped by the container's thread pool. It isn't exposed as a
+  // bean, since an Executor bean makes Boot back off from its own application task executor.
+  private AsyncTaskExecutor getAsyncTaskExecutor() {
+    final var executor = new ThreadPoolExecutor(asyncThreads,
+        asyncThreads,
+        60L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(asyncQueueCapacity),
+        new CustomizableThreadFactory("mvc-async-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+
+    asyncExecutor = ExecutorServiceMetrics.monitor(meterRegistry, executor, "mvc-async", List.of());
+
+    return new ConcurrentTaskExecutor(asyncExecutor);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+    }
+  }
+
   @Override
   public void extendMessageConverters(final List<HttpMessageConverter<?>> converters) {
     converters.stream()
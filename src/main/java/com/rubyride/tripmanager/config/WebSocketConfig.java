@@ -2,14 +2,16 @@ package com.rubyride.tripmanager.config;
 
 import com.rubyride.tripmanager.security.SecurityConstants;
 import com.rubyride.tripmanager.security.TokenAuthentication;
+import com.rubyride.tripmanager.utility.SpringContext;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
@@ -23,10 +25,12 @@ import java.util.Map;
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+  private final SpringContext springContext;
   private final TokenAuthentication tokenAuthentication;
   private final WebSocketHandshakeInterceptor webSocketHandshakeInterceptor;
 
-  public WebSocketConfig(final TokenAuthentication tokenAuthentication, final WebSocketHandshakeInterceptor webSocketHandshakeInterceptor) {
+  public WebSocketConfig(final SpringContext springContext, final TokenAuthentication tokenAuthentication, final WebSocketHandshakeInterceptor webSocketHandshakeInterceptor) {
+    this.springContext = springContext;
     this.tokenAuthentication = tokenAuthentication;
     this.webSocketHandshakeInterceptor = webSocketHandshakeInterceptor;
   }
@@ -60,7 +64,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
   @Override
   public void configureClientInboundChannel(final ChannelRegistration registration) {
-    registration.interceptors(new ChannelInterceptor() {
+    registration.interceptors(new ExecutorChannelInterceptor() {
       @Override
       public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
         final StompHeaderAccessor accessor =
@@ -76,6 +80,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
         return message;
       }
+
+      @Override
+      public void afterMessageHandled(final Message<?> message, final MessageChannel channel, final MessageHandler handler, final Exception ex) {
+        // Session principals are reused across messages, so don't carry the resolved user over to the next one
+        springContext.clearAuthenticatedUser();
+      }
     });
   }
 }
@@ -19,6 +19,7 @@ public class WebSocketSecurityConfig extends AbstractSecurityWebSocketMessageBro
         .simpSubscribeDestMatchers("/topic/processingExceptions").access("@accessControl.canAccessTripSchedulingExceptions()")
         .simpSubscribeDestMatchers("/topic/shifts").access("@accessControl.canAccessShifts()")
         .simpSubscribeDestMatchers("/topic/shifts/{shiftId:[0-9a-fA-F\\-]+}").access("@accessControl.canAccessShift(#shiftId)")
+        .simpSubscribeDestMatchers("/topic/shiftDelta/{shiftId:[0-9a-fA-F\\-]+}").access("@accessControl.canAccessShift(#shiftId)")
         .simpSubscribeDestMatchers("/topic/trips").access("@accessControl.canAccessTripRequests()")
         .simpSubscribeDestMatchers("/topic/trips/{tripId:[0-9a-fA-F\\-]+}").access("@accessControl.canAccessTripRequest(#tripId)");
   }
@@ -6,10 +6,16 @@ import com.rubyride.model.TripRequest;
 public class ModifyTripRequestEvent {
   private final TripRequest tripRequest;
   private final EventAction eventAction;
+  private final boolean dataOnly;
 
   public ModifyTripRequestEvent(final TripRequest tripRequest, final EventAction eventAction) {
+    this(tripRequest, eventAction, false);
+  }
+
+  public ModifyTripRequestEvent(final TripRequest tripRequest, final EventAction eventAction, final boolean dataOnly) {
     this.tripRequest = tripRequest;
     this.eventAction = eventAction;
+    this.dataOnly = dataOnly;
   }
 
   public TripRequest getTripRequest() {
@@ -19,4 +25,8 @@ public class ModifyTripRequestEvent {
   public EventAction getEventAction() {
     return eventAction;
   }
+
+  public boolean isDataOnly() {
+    return dataOnly;
+  }
 }
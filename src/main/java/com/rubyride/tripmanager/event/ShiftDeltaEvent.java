@@ -0,0 +1,15 @@
+package com.rubyride.tripmanager.event;
+
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+
+public class ShiftDeltaEvent {
+  private final ShiftEventDelta delta;
+
+  public ShiftDeltaEvent(final ShiftEventDelta delta) {
+    this.delta = delta;
+  }
+
+  public ShiftEventDelta getDelta() {
+    return delta;
+  }
+}
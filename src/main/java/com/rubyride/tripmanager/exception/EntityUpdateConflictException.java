@@ -0,0 +1,11 @@
+package com.rubyride.tripmanager.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class EntityUpdateConflictException extends RuntimeException {
+  public EntityUpdateConflictException(final String reason) {
+    super(reason);
+  }
+}
@@ -0,0 +1,41 @@
+package com.rubyride.tripmanager.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.rubyride.model.LatitudeLongitude;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Last reported location of an on-duty driver, with its distance in metres from the point searched from, if any
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DriverLocation {
+  private final UUID driverId;
+  private final LatitudeLongitude location;
+  private final OffsetDateTime updatedAt;
+  private final Double distance;
+
+  public DriverLocation(final UUID driverId, final LatitudeLongitude location, final OffsetDateTime updatedAt, final Double distance) {
+    this.driverId = driverId;
+    this.location = location;
+    this.updatedAt = updatedAt;
+    this.distance = distance;
+  }
+
+  public UUID getDriverId() {
+    return driverId;
+  }
+
+  public LatitudeLongitude getLocation() {
+    return location;
+  }
+
+  public OffsetDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public Double getDistance() {
+    return distance;
+  }
+}
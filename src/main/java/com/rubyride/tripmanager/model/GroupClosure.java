@@ -0,0 +1,74 @@
+package com.rubyride.tripmanager.model;
+
+import com.rubyride.model.Group;
+import org.springframework.data.annotation.Id;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Materialized position of a group in the group hierarchy: its ancestors, nearest first, and the origin zone it takes
+ * effect in - its own, or else that of its nearest ancestor that has one. A group's descendants are the groups whose
+ * closures list it among their ancestors.
+ */
+public class GroupClosure {
+  @Id
+  private final UUID id;
+  private final UUID parentGroupId;
+  private final List<UUID> ancestorIds;
+  private final int depth;
+  private final UUID originZoneId;
+
+  public GroupClosure(final UUID id, final UUID parentGroupId, final List<UUID> ancestorIds, final int depth, final UUID originZoneId) {
+    this.id = id;
+    this.parentGroupId = parentGroupId;
+    this.ancestorIds = ancestorIds;
+    this.depth = depth;
+    this.originZoneId = originZoneId;
+  }
+
+  /**
+   * Closure of a group given that of its parent
+   *
+   * @param parent closure of the group's parent, or null if it has none
+   */
+  public static GroupClosure of(final Group group, final GroupClosure parent) {
+    if (parent == null) {
+      return new GroupClosure(group.getId(), null, Collections.emptyList(), 0, group.getOriginZoneId());
+    }
+
+    final var ancestorIds = new ArrayList<UUID>(parent.getAncestorIds().size() + 1);
+    ancestorIds.add(parent.getId());
+    ancestorIds.addAll(parent.getAncestorIds());
+
+    return new GroupClosure(group.getId(),
+        parent.getId(),
+        ancestorIds,
+        ancestorIds.size(),
+        group.getOriginZoneId() != null ?
+            group.getOriginZoneId() :
+            parent.getOriginZoneId());
+  }
+
+  public UUID getId() {
+    return id;
+  }
+
+  public UUID getParentGroupId() {
+    return parentGroupId;
+  }
+
+  public List<UUID> getAncestorIds() {
+    return ancestorIds;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public UUID getOriginZoneId() {
+    return originZoneId;
+  }
+}
@@ -0,0 +1,54 @@
+package com.rubyride.tripmanager.model;
+
+import org.springframework.data.annotation.Id;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A run of consecutive points from a driver's location history, encoded by
+ * {@link com.rubyride.tripmanager.utility.TrackCodec}
+ */
+public class LocationTrackChunk {
+  @Id
+  private final String id;
+  private final UUID driverId;
+  private final OffsetDateTime startTime;
+  private final OffsetDateTime endTime;
+  private final int count;
+  private final byte[] data;
+
+  public LocationTrackChunk(final String id, final UUID driverId, final OffsetDateTime startTime, final OffsetDateTime endTime,
+                            final int count, final byte[] data) {
+    this.id = id;
+    this.driverId = driverId;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.count = count;
+    this.data = data;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public UUID getDriverId() {
+    return driverId;
+  }
+
+  public OffsetDateTime getStartTime() {
+    return startTime;
+  }
+
+  public OffsetDateTime getEndTime() {
+    return endTime;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+}
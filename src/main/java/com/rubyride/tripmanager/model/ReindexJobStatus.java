@@ -0,0 +1,89 @@
+package com.rubyride.tripmanager.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Progress of a background reindex job, per repository in the order they are reindexed
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReindexJobStatus {
+  private final UUID jobId;
+  private final State state;
+  private final OffsetDateTime startedAt;
+  private final OffsetDateTime finishedAt;
+  private final String error;
+  private final Map<String, RepositoryProgress> repositories;
+
+  public ReindexJobStatus(final UUID jobId, final State state, final OffsetDateTime startedAt, final OffsetDateTime finishedAt,
+                          final String error, final Map<String, RepositoryProgress> repositories) {
+    this.jobId = jobId;
+    this.state = state;
+    this.startedAt = startedAt;
+    this.finishedAt = finishedAt;
+    this.error = error;
+    this.repositories = repositories;
+  }
+
+  public UUID getJobId() {
+    return jobId;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public OffsetDateTime getStartedAt() {
+    return startedAt;
+  }
+
+  public OffsetDateTime getFinishedAt() {
+    return finishedAt;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public Map<String, RepositoryProgress> getRepositories() {
+    return repositories;
+  }
+
+  public enum State {
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  /**
+   * Number of entities found in a repository when its reindex started, and how many have been reindexed or failed
+   * so far; the total is absent until the repository is reached
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class RepositoryProgress {
+    private final Long total;
+    private final long processed;
+    private final long failed;
+
+    public RepositoryProgress(final Long total, final long processed, final long failed) {
+      this.total = total;
+      this.processed = processed;
+      this.failed = failed;
+    }
+
+    public Long getTotal() {
+      return total;
+    }
+
+    public long getProcessed() {
+      return processed;
+    }
+
+    public long getFailed() {
+      return failed;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.rubyride.tripmanager.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.rubyride.model.Event;
+import com.rubyride.model.Shift;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A single change to a shift, relative to the state with the previous sequence number.
+ * <p>
+ * Changed and added events carry their complete state and replace any event with the same ID. Added events are
+ * placed after the event given in {@link #getInsertedAfter()} (or first, if that is null). When events have been
+ * reordered in a way that can't be expressed like that, {@link #getOrder()} holds every event ID in the new order.
+ * Trips and the remaining shift properties are only included when they have changed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ShiftEventDelta {
+  private final UUID shiftId;
+  private final long sequence;
+  private final List<UUID> removedEventIds;
+  private final List<Event> events;
+  private final Map<UUID, UUID> insertedAfter;
+  private final List<UUID> order;
+  private final List<UUID> trips;
+  private final Shift properties;
+
+  @JsonCreator
+  public ShiftEventDelta(@JsonProperty("shiftId") final UUID shiftId,
+                         @JsonProperty("sequence") final long sequence,
+                         @JsonProperty("removedEventIds") final List<UUID> removedEventIds,
+                         @JsonProperty("events") final List<Event> events,
+                         @JsonProperty("insertedAfter") final Map<UUID, UUID> insertedAfter,
+                         @JsonProperty("order") final List<UUID> order,
+                         @JsonProperty("trips") final List<UUID> trips,
+                         @JsonProperty("properties") final Shift properties) {
+    this.shiftId = shiftId;
+    this.sequence = sequence;
+    this.removedEventIds = removedEventIds;
+    this.events = events;
+    this.insertedAfter = insertedAfter;
+    this.order = order;
+    this.trips = trips;
+    this.properties = properties;
+  }
+
+  public UUID getShiftId() {
+    return shiftId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public List<UUID> getRemovedEventIds() {
+    return removedEventIds;
+  }
+
+  public List<Event> getEvents() {
+    return events;
+  }
+
+  public Map<UUID, UUID> getInsertedAfter() {
+    return insertedAfter;
+  }
+
+  public List<UUID> getOrder() {
+    return order;
+  }
+
+  public List<UUID> getTrips() {
+    return trips;
+  }
+
+  public Shift getProperties() {
+    return properties;
+  }
+}
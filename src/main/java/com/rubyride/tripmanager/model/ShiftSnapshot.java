@@ -0,0 +1,24 @@
+package com.rubyride.tripmanager.model;
+
+import com.rubyride.model.Shift;
+
+/**
+ * A shift along with the sequence number of the last delta applied to it
+ */
+public class ShiftSnapshot {
+  private final long sequence;
+  private final Shift shift;
+
+  public ShiftSnapshot(final long sequence, final Shift shift) {
+    this.sequence = sequence;
+    this.shift = shift;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Shift getShift() {
+    return shift;
+  }
+}
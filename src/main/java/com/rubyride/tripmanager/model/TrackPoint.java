@@ -0,0 +1,30 @@
+package com.rubyride.tripmanager.model;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A location a driver reported, and when
+ */
+public class TrackPoint {
+  private final double latitude;
+  private final double longitude;
+  private final OffsetDateTime time;
+
+  public TrackPoint(final double latitude, final double longitude, final OffsetDateTime time) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.time = time;
+  }
+
+  public double getLatitude() {
+    return latitude;
+  }
+
+  public double getLongitude() {
+    return longitude;
+  }
+
+  public OffsetDateTime getTime() {
+    return time;
+  }
+}
@@ -0,0 +1,36 @@
+package com.rubyride.tripmanager.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.UUID;
+
+/**
+ * Assignment of a trip request to a position in a shift's trip list; trips without a position are added at the end
+ */
+public class TripAssignment {
+  private final UUID tripId;
+  private final UUID shiftId;
+  private final Integer position;
+
+  @JsonCreator
+  public TripAssignment(@JsonProperty("tripId") final UUID tripId,
+                        @JsonProperty("shiftId") final UUID shiftId,
+                        @JsonProperty("position") final Integer position) {
+    this.tripId = tripId;
+    this.shiftId = shiftId;
+    this.position = position;
+  }
+
+  public UUID getTripId() {
+    return tripId;
+  }
+
+  public UUID getShiftId() {
+    return shiftId;
+  }
+
+  public Integer getPosition() {
+    return position;
+  }
+}
@@ -0,0 +1,72 @@
+package com.rubyride.tripmanager.model;
+
+import com.rubyride.model.TripRequestScheduleType;
+import com.rubyride.model.TripRequestStatus;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDate;
+
+/**
+ * Number of trip requests with a given status and schedule type whose primary time falls on a date, either for a zone
+ * (trips from or to it, on the zone's local date) or for all zones. Stored in Mongo for archived trips; counts for
+ * live trips are kept in Redis.
+ */
+public class TripCount {
+  @Id
+  private final String id;
+  private final String scope;
+  private final String date;
+  private final TripRequestStatus status;
+  private final TripRequestScheduleType scheduleType;
+  private final long count;
+
+  public TripCount(final String id, final String scope, final String date, final TripRequestStatus status,
+                   final TripRequestScheduleType scheduleType, final long count) {
+    this.id = id;
+    this.scope = scope;
+    this.date = date;
+    this.status = status;
+    this.scheduleType = scheduleType;
+    this.count = count;
+  }
+
+  public static TripCount of(final String scope, final LocalDate date, final TripRequestStatus status,
+                             final TripRequestScheduleType scheduleType, final long count) {
+    return new TripCount(scope + "|" + date + "|" + status + "|" + scheduleType, scope, date.toString(), status, scheduleType, count);
+  }
+
+  /**
+   * Combine with another count of the same bucket
+   */
+  public TripCount add(final TripCount other) {
+    return new TripCount(id, scope, date, status, scheduleType, count + other.count);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getScope() {
+    return scope;
+  }
+
+  public String getDate() {
+    return date;
+  }
+
+  public LocalDate getLocalDate() {
+    return LocalDate.parse(date);
+  }
+
+  public TripRequestStatus getStatus() {
+    return status;
+  }
+
+  public TripRequestScheduleType getScheduleType() {
+    return scheduleType;
+  }
+
+  public long getCount() {
+    return count;
+  }
+}
@@ -4,6 +4,7 @@ import com.rubyride.model.Driver;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -11,6 +12,8 @@ import java.util.UUID;
 public interface DriverRepository extends MongoRepository<Driver, UUID> {
   Driver findByUserId(UUID userId);
 
+  List<Driver> findByUserIdIn(Collection<UUID> userIds);
+
   List<Driver> findByHomeZone(UUID zoneId);
 
   List<Driver> findByAssignedZone(UUID zoneId);
@@ -0,0 +1,13 @@
+package com.rubyride.tripmanager.repository.mongo;
+
+import com.rubyride.tripmanager.model.GroupClosure;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface GroupClosureRepository extends MongoRepository<GroupClosure, UUID> {
+  List<GroupClosure> findByAncestorIdsContainingAndDepthLessThanEqual(UUID groupId, int maxDepth);
+}
@@ -0,0 +1,14 @@
+package com.rubyride.tripmanager.repository.mongo;
+
+import com.rubyride.tripmanager.model.LocationTrackChunk;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface LocationTrackChunkRepository extends MongoRepository<LocationTrackChunk, String> {
+  List<LocationTrackChunk> findByDriverIdAndStartTimeLessThanEqualAndEndTimeGreaterThanEqualOrderByStartTime(UUID driverId, OffsetDateTime to, OffsetDateTime from);
+}
@@ -1,6 +1,9 @@
 package com.rubyride.tripmanager.repository.mongo;
 
 import com.rubyride.model.*;
+import com.rubyride.tripmanager.model.GroupClosure;
+import com.rubyride.tripmanager.model.LocationTrackChunk;
+import com.rubyride.tripmanager.model.TripCount;
 import com.rubyride.tripmanager.utility.StreamUtils;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +41,9 @@ public class MongoIndexConfiguration {
     buildIndexes(Driver.class, "userId", "homeZone", "assignedZone");
     buildIndexes(TripReview.class, "driverId", "riderId", "tripId");
     buildIndexes(Group.class, "parentGroupId", "originZoneId");
+    buildIndexes(GroupClosure.class).ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("ancestorIds", 1)
+        .append("depth", 1)));
 
     final var placeIndexes = buildIndexes
         (Place.class, "groups", "zoneId");
@@ -46,8 +52,19 @@ public class MongoIndexConfiguration {
         .append("zoneId", 1)));
     placeIndexes.ensureIndex(new GeospatialIndex("location"));
 
-    buildIndexes(Shift.class, "driverId");
-    buildIndexes(TripRequest.class, "fromZoneId", "toZoneId", "riderId");
+    buildIndexes(Shift.class, "driverId").ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("driverId", 1)
+        .append("startTime", 1)));
+    final var tripRequestIndexes = buildIndexes(TripRequest.class, "fromZoneId", "toZoneId", "riderId", "primaryTimeConstraint.time");
+    tripRequestIndexes.ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("fromZoneId", 1)
+        .append("primaryTimeConstraint.time", 1)));
+    tripRequestIndexes.ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("toZoneId", 1)
+        .append("primaryTimeConstraint.time", 1)));
+    tripRequestIndexes.ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("riderId", 1)
+        .append("primaryTimeConstraint.time", 1)));
     buildIndexes(User.class, "zones", "roles", "email", "userName");
 
     buildIndexes(Vehicle.class);
@@ -61,5 +78,13 @@ public class MongoIndexConfiguration {
     buildIndexes(TripSchedulingException.class, "time");
 
     buildIndexes(DataBlob.class, "references");
+
+    buildIndexes(LocationTrackChunk.class).ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("driverId", 1)
+        .append("startTime", 1)));
+
+    buildIndexes(TripCount.class).ensureIndex(new CompoundIndexDefinition(new Document()
+        .append("scope", 1)
+        .append("date", 1)));
   }
 }
@@ -0,0 +1,250 @@
+package com.rubyride.tripmanager.repository.mongo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.rubyride.model.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Near cache of reference data - zones, places, groups, vehicles and partners - which is read on most trip, shift and
+ * notification paths but rarely written.
+ * <p>
+ * Entities returned from here are shared between callers, so they must not be modified; anything that updates an
+ * entity loads it from its repository and then calls {@link EntityCache#evict(UUID)}, which drops it on this node and,
+ * via Redis pub/sub, on every other node. Entries also expire after a while, in case an eviction message is missed.
+ * <p>
+ * Misses are loaded through each cache's loader, so concurrent misses for the same entity share one load. A load that
+ * overlapped an eviction may have read the entity before it changed, so its entries are dropped again once it
+ * finishes.
+ */
+@Component
+public class ReferenceDataCache {
+  private static final Logger log = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+  // Redis channel used to tell every node to drop a cached entity (message is "type:id")
+  private static final String INVALIDATION_CHANNEL = ReferenceDataCache.class.getName() + ":invalidate";
+
+  private static final Duration ENTRY_TTL = Duration.ofMinutes(10L);
+
+  private final StringRedisTemplate redisTemplate;
+  private final MeterRegistry meterRegistry;
+  private final Map<String, EntityCache<?>> cachesByType = new ConcurrentHashMap<>();
+
+  private final EntityCache<Zone> zones;
+  private final EntityCache<Place> places;
+  private final EntityCache<Group> groups;
+  private final EntityCache<Vehicle> vehicles;
+  private final EntityCache<Partner> partners;
+
+  // Partner owning each facility; empty if none. Dropped whenever any partner changes, since a change to one partner's
+  // facilities can affect any entry
+  private final LoadingCache<UUID, Optional<Partner>> partnersByFacility;
+  private final AtomicLong partnersByFacilityInvalidations = new AtomicLong();
+
+  public ReferenceDataCache(final ZoneRepository zoneRepository, final PlaceRepository placeRepository, final GroupRepository groupRepository,
+                            final VehicleRepository vehicleRepository, final PartnerRepository partnerRepository,
+                            final StringRedisTemplate redisTemplate, final RedisMessageListenerContainer redisMessageListenerContainer,
+                            final MeterRegistry meterRegistry) {
+    this.redisTemplate = redisTemplate;
+    this.meterRegistry = meterRegistry;
+
+    this.zones = new EntityCache<>("zones", 1_000L, zoneRepository, Zone::getId);
+    this.places = new EntityCache<>("places", 50_000L, placeRepository, Place::getId);
+    this.groups = new EntityCache<>("groups", 5_000L, groupRepository, Group::getId);
+    this.vehicles = new EntityCache<>("vehicles", 5_000L, vehicleRepository, Vehicle::getId);
+    this.partners = new EntityCache<>("partners", 1_000L, partnerRepository, Partner::getId);
+
+    this.partnersByFacility = monitor("partnersByFacility", CacheBuilder.newBuilder()
+        .maximumSize(10_000L)
+        .expireAfterWrite(ENTRY_TTL)
+        .recordStats()
+        .build(CacheLoader.from(partnerRepository::findByFacilitiesContains)));
+
+    redisMessageListenerContainer.addMessageListener(
+        (message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(INVALIDATION_CHANNEL));
+  }
+
+  private <C extends Cache<?, ?>> C monitor(final String name, final C cache) {
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "reference." + name);
+    return cache;
+  }
+
+  private void onInvalidation(final String message) {
+    final var separator = message.indexOf(':');
+
+    try {
+      Optional.ofNullable(cachesByType.get(message.substring(0, separator)))
+          .ifPresent(cache -> cache.invalidateLocally(UUID.fromString(message.substring(separator + 1))));
+    } catch (final RuntimeException e) {
+      log.error("Invalid reference data invalidation message " + message, e);
+    }
+  }
+
+  public EntityCache<Zone> getZones() {
+    return zones;
+  }
+
+  public EntityCache<Place> getPlaces() {
+    return places;
+  }
+
+  public EntityCache<Group> getGroups() {
+    return groups;
+  }
+
+  public EntityCache<Vehicle> getVehicles() {
+    return vehicles;
+  }
+
+  public EntityCache<Partner> getPartners() {
+    return partners;
+  }
+
+  /**
+   * Find the partner a facility belongs to
+   */
+  public Optional<Partner> findPartnerByFacility(final UUID facilityId) {
+    if (facilityId == null) {
+      return Optional.empty();
+    }
+
+    final var invalidations = partnersByFacilityInvalidations.get();
+    final var partner = partnersByFacility.getUnchecked(facilityId);
+
+    if (partnersByFacilityInvalidations.get() != invalidations) {
+      partnersByFacility.invalidate(facilityId);
+    }
+
+    return partner;
+  }
+
+  /**
+   * Cache of one type of entity, read through to its repository. Entities that don't exist aren't cached.
+   */
+  public final class EntityCache<T> {
+    private final String type;
+    private final LoadingCache<UUID, Optional<T>> cache;
+
+    // Bumped before an entity is dropped, so a load that overlapped the eviction isn't left cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private EntityCache(final String type, final long maximumSize, final CrudRepository<T, UUID> repository, final Function<T, UUID> idGetter) {
+      this.type = type;
+      this.cache = monitor(type, CacheBuilder.newBuilder()
+          .maximumSize(maximumSize)
+          .expireAfterWrite(ENTRY_TTL)
+          .recordStats()
+          .build(new CacheLoader<UUID, Optional<T>>() {
+            @Override
+            public Optional<T> load(final UUID id) {
+              return repository.findById(id);
+            }
+
+            @Override
+            public Map<UUID, Optional<T>> loadAll(final Iterable<? extends UUID> ids) {
+              final var idList = new ArrayList<UUID>();
+              ids.forEach(idList::add);
+
+              final var loaded = new HashMap<UUID, Optional<T>>();
+              idList.forEach(id -> loaded.put(id, Optional.empty()));
+
+              repository.findAllById(idList)
+                  .forEach(entity -> loaded.put(idGetter.apply(entity), Optional.of(entity)));
+
+              return loaded;
+            }
+          }));
+
+      cachesByType.put(type, this);
+    }
+
+    public Optional<T> findById(final UUID id) {
+      if (id == null) {
+        return Optional.empty();
+      }
+
+      return Optional.ofNullable(findAllById(List.of(id)).get(id));
+    }
+
+    /**
+     * Find a set of entities, loading any not already cached with a single query
+     *
+     * @return entities by ID; IDs that don't exist are omitted
+     */
+    public Map<UUID, T> findAllById(final Collection<UUID> ids) {
+      final var uniqueIds = ids.stream()
+          .filter(Objects::nonNull)
+          .collect(Collectors.toSet());
+
+      if (uniqueIds.isEmpty()) {
+        return new HashMap<>();
+      }
+
+      final var invalidations = this.invalidations.get();
+      final Map<UUID, Optional<T>> loaded;
+
+      try {
+        loaded = cache.getAll(uniqueIds);
+      } catch (final ExecutionException e) {
+        throw new UncheckedExecutionException(e.getCause());
+      }
+
+      final var found = new HashMap<UUID, T>();
+      final var missingIds = new ArrayList<UUID>();
+
+      loaded.forEach((id, entity) -> entity.ifPresentOrElse(value -> found.put(id, value), () -> missingIds.add(id)));
+
+      // Missing entities are dropped so they are found once created
+      cache.invalidateAll(missingIds);
+
+      if (this.invalidations.get() != invalidations) {
+        cache.invalidateAll(uniqueIds);
+      }
+
+      return found;
+    }
+
+    /**
+     * Drop an entity that has been changed or deleted, on this node and every other
+     */
+    public void evict(final UUID id) {
+      if (id == null) {
+        return;
+      }
+
+      invalidateLocally(id);
+      redisTemplate.convertAndSend(INVALIDATION_CHANNEL, type + ":" + id);
+    }
+
+    private void invalidateLocally(final UUID id) {
+      invalidations.incrementAndGet();
+      cache.invalidate(id);
+
+      if (this == partners) {
+        partnersByFacilityInvalidations.incrementAndGet();
+        partnersByFacility.invalidateAll();
+      }
+    }
+  }
+}
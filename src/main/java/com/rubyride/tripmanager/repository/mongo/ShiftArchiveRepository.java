@@ -6,8 +6,13 @@ import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ShiftArchiveRepository extends MongoRepository<Shift, UUID> {
   List<Shift> findByDriverId(UUID driverId);
+
+  Stream<Shift> streamAllBy();
+
+  Stream<Shift> streamByDriverId(UUID driverId);
 }
@@ -1,11 +1,14 @@
 package com.rubyride.tripmanager.repository.mongo;
 
 import com.rubyride.model.TripRequest;
+import org.springframework.data.domain.Range;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface TripArchiveRepository extends MongoRepository<TripRequest, UUID> {
@@ -14,4 +17,12 @@ public interface TripArchiveRepository extends MongoRepository<TripRequest, UUID
   List<TripRequest> findByFromZoneId(UUID zoneId);
 
   List<TripRequest> findByToZoneId(UUID zoneId);
+
+  Stream<TripRequest> findByPrimaryTimeConstraintTimeBetween(Range<OffsetDateTime> time);
+
+  Stream<TripRequest> findByRiderIdAndPrimaryTimeConstraintTimeBetween(UUID id, Range<OffsetDateTime> time);
+
+  Stream<TripRequest> findByFromZoneIdAndPrimaryTimeConstraintTimeBetween(UUID zoneId, Range<OffsetDateTime> time);
+
+  Stream<TripRequest> findByToZoneIdAndPrimaryTimeConstraintTimeBetween(UUID zoneId, Range<OffsetDateTime> time);
 }
@@ -0,0 +1,14 @@
+package com.rubyride.tripmanager.repository.mongo;
+
+import com.rubyride.tripmanager.model.TripCount;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TripCountRepository extends MongoRepository<TripCount, String> {
+  List<TripCount> findByScopeAndDateGreaterThanEqualAndDateLessThan(String scope, String from, String to);
+
+  void deleteByScopeAndDate(String scope, String date);
+}
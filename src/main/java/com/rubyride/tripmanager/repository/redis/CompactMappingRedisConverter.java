@@ -0,0 +1,139 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rubyride.model.Shift;
+import com.rubyride.model.TripRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.core.convert.IndexResolver;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.PathIndexResolver;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.index.IndexDefinition;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Stores trip requests and shifts as a single Smile-encoded field instead of one hash field per nested property.
+ * The indexed properties are also kept as plain hash fields so they can still be read with HGET, and secondary
+ * indexes, keyspaces and IDs are resolved exactly as for the hash mapping.
+ * <p>
+ * Entries in either format can always be read, so compact writes can be switched on once every instance runs this
+ * version. Existing entries are rewritten in the configured format when they're next saved, or all at once by
+ * reindexing the repositories. Other entity types, and partial updates, use the standard hash mapping.
+ */
+public class CompactMappingRedisConverter extends MappingRedisConverter {
+  private static final String CODEC_FIELD = "_codec";
+  private static final String DATA_FIELD = "_data";
+  private static final byte[] SMILE_V1 = "smile/1".getBytes(StandardCharsets.UTF_8);
+
+  private static final Set<Class<?>> COMPACT_TYPES = Set.of(TripRequest.class, Shift.class);
+
+  private final boolean compactWrites;
+  private final ObjectMapper smileMapper;
+  private final IndexResolver indexResolver;
+  private final MeterRegistry meterRegistry;
+  private final Map<Class<?>, List<String>> indexedPaths;
+
+  /**
+   * @param compactWrites Whether trip requests and shifts are written in the compact format
+   * @param smileMapper   Mapper used for the compact format, configured to read and write Smile
+   */
+  public CompactMappingRedisConverter(final RedisMappingContext mappingContext, final ReferenceResolver referenceResolver,
+                                      final boolean compactWrites, final ObjectMapper smileMapper, final MeterRegistry meterRegistry) {
+    super(mappingContext, null, referenceResolver);
+
+    this.compactWrites = compactWrites;
+    this.smileMapper = smileMapper;
+    this.indexResolver = new PathIndexResolver(mappingContext);
+    this.meterRegistry = meterRegistry;
+    this.indexedPaths = COMPACT_TYPES.stream()
+        .collect(Collectors.toMap(type -> type, type -> mappingContext.getMappingConfiguration()
+            .getIndexConfiguration()
+            .getIndexDefinitionsFor(type.getName())
+            .stream()
+            .map(IndexDefinition::getIndexName)
+            .distinct()
+            .collect(Collectors.toList())));
+  }
+
+  @Override
+  public void write(final Object source, final RedisData sink) {
+    if (source == null || !COMPACT_TYPES.contains(source.getClass())) {
+      super.write(source, sink);
+      return;
+    }
+
+    if (compactWrites) {
+      writeCompact(source, sink);
+    } else {
+      super.write(source, sink);
+    }
+
+    meterRegistry.summary("tripmanager.redis.entity.size",
+        "type", source.getClass().getSimpleName(),
+        "codec", compactWrites ? "smile" : "hash")
+        .record(sink.getBucket().asMap().entrySet().stream()
+            .mapToInt(entry -> entry.getKey().length() + entry.getValue().length)
+            .sum());
+  }
+
+  private void writeCompact(final Object source, final RedisData sink) {
+    final RedisPersistentEntity<?> entity = getMappingContext().getRequiredPersistentEntity(source.getClass());
+    final var accessor = entity.getPropertyAccessor(source);
+
+    sink.setKeyspace(entity.getKeySpace());
+    sink.setId(getConversionService().convert(entity.getIdentifierAccessor(source).getRequiredIdentifier(), String.class));
+    Optional.ofNullable(entity.getTimeToLiveAccessor().getTimeToLive(source))
+        .ifPresent(sink::setTimeToLive);
+    indexResolver.resolveIndexesFor(entity.getTypeInformation(), source)
+        .forEach(sink::addIndexedData);
+
+    sink.getBucket().put(CODEC_FIELD, SMILE_V1);
+    sink.getBucket().put(DATA_FIELD, toSmile(source));
+
+    indexedPaths.get(source.getClass())
+        .forEach(path -> Optional.ofNullable(accessor.getProperty(entity.getRequiredPersistentProperty(path)))
+            .ifPresent(value -> sink.getBucket().put(path, getConversionService().convert(value, byte[].class))));
+  }
+
+  @Override
+  public <R> R read(final Class<R> type, final RedisData source) {
+    final var codec = source.getBucket().get(CODEC_FIELD);
+
+    if (codec == null) {
+      return COMPACT_TYPES.contains(type) ?
+          meterRegistry.timer("tripmanager.redis.entity.read", "type", type.getSimpleName(), "codec", "hash")
+              .record(() -> super.read(type, source)) :
+          super.read(type, source);
+    } else if (Arrays.equals(codec, SMILE_V1)) {
+      return meterRegistry.timer("tripmanager.redis.entity.read", "type", type.getSimpleName(), "codec", "smile")
+          .record(() -> fromSmile(source.getBucket().get(DATA_FIELD), type));
+    } else {
+      throw new IllegalStateException("Unsupported storage codec " + new String(codec, StandardCharsets.UTF_8) +
+          " for " + source.getKeyspace() + ":" + source.getId());
+    }
+  }
+
+  private byte[] toSmile(final Object source) {
+    try {
+      return smileMapper.writeValueAsBytes(source);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private <R> R fromSmile(final byte[] data, final Class<R> type) {
+    try {
+      return smileMapper.readValue(data, type);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,269 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.LatitudeLongitude;
+import com.rubyride.tripmanager.model.DriverLocation;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.springframework.data.geo.*;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Redis GEO index of the last reported location of each on-duty driver, shared by every instance. Locations are kept
+ * in one GEO set for all drivers and one per zone, so nearest-driver and drivers-in-zone queries only look at the
+ * drivers in that zone. The time of each driver's last report is kept alongside, so stale locations can be ignored
+ * and pruned.
+ */
+@Component
+public class DriverLocationIndex {
+  private static final String KEY_PREFIX = "driverLocation:";
+  private static final String ALL_KEY = KEY_PREFIX + "geo:all";
+  private static final String ZONE_KEY_PREFIX = KEY_PREFIX + "geo:zone:";
+  private static final String TIME_KEY = KEY_PREFIX + "time";
+  private static final String ZONE_MEMBERSHIP_KEY = KEY_PREFIX + "zone";
+
+  // Returned by the scripts below when the driver's zone has changed since it was read
+  private static final long ZONE_CHANGED = -1L;
+
+  // Locations are filtered for staleness after the radius search, so searches fetch this many times the count wanted
+  private static final int NEAREST_OVERFETCH = 4;
+
+  // Record a location, moving the driver between zone sets. KEYS[4] is the new zone set if ARGV[5] is '1', followed by
+  // the previous zone set if it is a different one. ARGV: driver, longitude, latitude, time, whether there is a zone,
+  // previous zone set as read beforehand or ''.
+  private static final RedisScript<Long> SET_LOCATION = new DefaultRedisScript<>(
+      "if (redis.call('HGET', KEYS[3], ARGV[1]) or '') ~= ARGV[6] then return -1 end " +
+          "local zone = nil " +
+          "local previous = 4 " +
+          "if ARGV[5] == '1' then zone = KEYS[4] previous = 5 end " +
+          "if ARGV[6] ~= '' and ARGV[6] ~= zone then redis.call('ZREM', KEYS[previous], ARGV[1]) end " +
+          "redis.call('GEOADD', KEYS[1], ARGV[2], ARGV[3], ARGV[1]) " +
+          "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1]) " +
+          "if zone then " +
+          "redis.call('GEOADD', zone, ARGV[2], ARGV[3], ARGV[1]) " +
+          "redis.call('HSET', KEYS[3], ARGV[1], zone) " +
+          "else redis.call('HDEL', KEYS[3], ARGV[1]) end " +
+          "return 1",
+      Long.class);
+
+  // Remove a driver's location unless it has been reported again since the given time. KEYS[4] is the driver's zone
+  // set, if any. ARGV: driver, time, zone set as read beforehand or ''.
+  private static final RedisScript<Long> REMOVE_LOCATION = new DefaultRedisScript<>(
+      "local time = redis.call('ZSCORE', KEYS[2], ARGV[1]) " +
+          "if time and tonumber(time) > tonumber(ARGV[2]) then return 0 end " +
+          "if (redis.call('HGET', KEYS[3], ARGV[1]) or '') ~= ARGV[3] then return -1 end " +
+          "if ARGV[3] ~= '' then redis.call('ZREM', KEYS[4], ARGV[1]) end " +
+          "redis.call('ZREM', KEYS[1], ARGV[1]) " +
+          "redis.call('ZREM', KEYS[2], ARGV[1]) " +
+          "redis.call('HDEL', KEYS[3], ARGV[1]) " +
+          "return 1",
+      Long.class);
+
+  private static final List<String> KEYS = List.of(ALL_KEY, TIME_KEY, ZONE_MEMBERSHIP_KEY);
+
+  private final StringRedisTemplate redisTemplate;
+
+  public DriverLocationIndex(final StringRedisTemplate redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  private static String getZoneKey(final UUID zoneId) {
+    return ZONE_KEY_PREFIX + zoneId;
+  }
+
+  private static LatitudeLongitude toLocation(final Point point) {
+    return new LatitudeLongitude()
+        .latitude(point.getY())
+        .longitude(point.getX());
+  }
+
+  private static OffsetDateTime toTime(final Double score) {
+    return Instant.ofEpochMilli(score.longValue()).atOffset(ZoneOffset.UTC);
+  }
+
+  // The fixed keys followed by the given zone sets, skipping missing and repeated ones
+  private static List<String> getKeys(final String... zoneKeys) {
+    final var keys = new ArrayList<>(KEYS);
+
+    Arrays.stream(zoneKeys)
+        .filter(Objects::nonNull)
+        .distinct()
+        .forEach(keys::add);
+
+    return keys;
+  }
+
+  private Optional<String> findZoneKey(final String driverId) {
+    return Optional.ofNullable(redisTemplate.<String, String>opsForHash().get(ZONE_MEMBERSHIP_KEY, driverId));
+  }
+
+  /**
+   * Record a driver's location
+   *
+   * @param zoneId zone containing the location, if any
+   */
+  public void setLocation(final UUID driverId, final LatitudeLongitude location, final UUID zoneId, final OffsetDateTime time) {
+    final var zoneKey = zoneId != null ? getZoneKey(zoneId) : null;
+    Long result;
+
+    // The previous zone is read first so the script can declare its key, and the script retried if it has changed since
+    do {
+      final var previousZoneKey = findZoneKey(driverId.toString());
+
+      result = redisTemplate.execute(SET_LOCATION, getKeys(zoneKey, previousZoneKey.orElse(null)),
+          driverId.toString(),
+          String.valueOf(location.getLongitude()),
+          String.valueOf(location.getLatitude()),
+          String.valueOf(time.toInstant().toEpochMilli()),
+          zoneKey != null ? "1" : "0",
+          previousZoneKey.orElse(""));
+    } while (Long.valueOf(ZONE_CHANGED).equals(result));
+  }
+
+  public void removeLocation(final UUID driverId) {
+    removeLocation(driverId.toString(), String.valueOf(Long.MAX_VALUE));
+  }
+
+  // Whether the location was removed, rather than reported again since the given time
+  private boolean removeLocation(final String driverId, final String time) {
+    Long result;
+
+    do {
+      final var zoneKey = findZoneKey(driverId);
+
+      result = redisTemplate.execute(REMOVE_LOCATION, getKeys(zoneKey.orElse(null)), driverId, time, zoneKey.orElse(""));
+    } while (Long.valueOf(ZONE_CHANGED).equals(result));
+
+    return Long.valueOf(1L).equals(result);
+  }
+
+  /**
+   * Remove locations not reported since a given time
+   *
+   * @return number of locations removed
+   */
+  public long removeLocationsBefore(final OffsetDateTime time) {
+    final var cutoff = String.valueOf(time.toInstant().toEpochMilli());
+
+    return StreamUtils.safeStream(redisTemplate.opsForZSet().rangeByScore(TIME_KEY, Double.NEGATIVE_INFINITY, Double.parseDouble(cutoff)))
+        .filter(driverId -> removeLocation(driverId, cutoff))
+        .count();
+  }
+
+  /**
+   * Find a driver's location, if reported since a given time
+   */
+  public Optional<DriverLocation> findLocation(final UUID driverId, final OffsetDateTime since) {
+    return findLocations(ALL_KEY, List.of(driverId.toString()), since).stream()
+        .findFirst();
+  }
+
+  /**
+   * Find locations of drivers in a zone, reported since a given time
+   */
+  public List<DriverLocation> findLocationsInZone(final UUID zoneId, final OffsetDateTime since) {
+    final var zoneKey = getZoneKey(zoneId);
+
+    return findLocations(zoneKey, new ArrayList<>(Optional.ofNullable(redisTemplate.opsForZSet().range(zoneKey, 0L, -1L))
+        .orElse(Collections.emptySet())), since);
+  }
+
+  private List<DriverLocation> findLocations(final String key, final List<String> driverIds, final OffsetDateTime since) {
+    if (driverIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final var results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      stringConnection.geoPos(key, driverIds.toArray(new String[0]));
+      driverIds.forEach(driverId -> stringConnection.zScore(TIME_KEY, driverId));
+
+      return null;
+    });
+
+    @SuppressWarnings("unchecked") final var points = (List<Point>) results.get(0);
+
+    return IntStream.range(0, driverIds.size())
+        .filter(i -> points.get(i) != null && results.get(i + 1) != null)
+        .mapToObj(i -> new DriverLocation(UUID.fromString(driverIds.get(i)),
+            toLocation(points.get(i)),
+            toTime((Double) results.get(i + 1)),
+            null))
+        .filter(driverLocation -> !driverLocation.getUpdatedAt().isBefore(since))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Find the nearest drivers in a zone to a location, reported since a given time, nearest first
+   */
+  public List<DriverLocation> findNearestInZone(final UUID zoneId, final LatitudeLongitude location, final Distance radius,
+                                                final int count, final OffsetDateTime since) {
+    if (count <= 0) {
+      return Collections.emptyList();
+    }
+
+    final var area = new Circle(new Point(location.getLongitude(), location.getLatitude()), radius);
+    var limit = (long) count * NEAREST_OVERFETCH;
+
+    // Widened until enough fresh locations are found, or every driver in range has been looked at
+    while (true) {
+      final var results = redisTemplate.opsForGeo().radius(getZoneKey(zoneId), area,
+          RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs()
+              .includeCoordinates()
+              .includeDistance()
+              .sortAscending()
+              .limit(limit));
+      final var content = results != null ?
+          results.getContent() :
+          Collections.<GeoResult<RedisGeoCommands.GeoLocation<String>>>emptyList();
+      final var locations = toDriverLocations(content, since);
+
+      if (locations.size() >= count || content.size() < limit) {
+        return locations.stream()
+            .limit(count)
+            .collect(Collectors.toList());
+      }
+
+      limit *= 2L;
+    }
+  }
+
+  private List<DriverLocation> toDriverLocations(final List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results, final OffsetDateTime since) {
+    if (results.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final var driverIds = results.stream()
+        .map(result -> result.getContent().getName())
+        .collect(Collectors.toList());
+
+    final var times = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      driverIds.forEach(driverId -> stringConnection.zScore(TIME_KEY, driverId));
+
+      return null;
+    });
+
+    return IntStream.range(0, driverIds.size())
+        .filter(i -> times.get(i) != null)
+        .mapToObj(i -> new DriverLocation(UUID.fromString(driverIds.get(i)),
+            toLocation(results.get(i).getContent().getPoint()),
+            toTime((Double) times.get(i)),
+            results.get(i).getDistance().in(Metrics.KILOMETERS).getValue() * 1_000D))
+        .filter(driverLocation -> !driverLocation.getUpdatedAt().isBefore(since))
+        .collect(Collectors.toList());
+  }
+}
@@ -1,9 +1,14 @@
 package com.rubyride.tripmanager.repository.redis;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import io.lettuce.core.ClientOptions;
 import io.lettuce.core.resource.ClientResources;
 import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -18,10 +23,15 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.ReferenceResolverImpl;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 import java.util.List;
 
@@ -38,6 +48,9 @@ public class RedisConfiguration {
   @Value("${REDIS_PASSWORD}")
   private String redisPassword;
 
+  @Value("${REDIS_COMPACT_ENTITIES:false}")
+  private boolean compactEntities;
+
   public String getRedisHost() {
     return redisHost;
   }
@@ -102,9 +115,43 @@ public class RedisConfiguration {
     return template;
   }
 
+  @Bean
+  public StringRedisTemplate stringRedisTemplate(final RedisConnectionFactory redisConnectionFactory) {
+    return new StringRedisTemplate(redisConnectionFactory);
+  }
+
+  @Bean
+  public RedisMessageListenerContainer redisMessageListenerContainer(final RedisConnectionFactory redisConnectionFactory) {
+    final var container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+
+    return container;
+  }
+
   @Bean
   public RedisCustomConversions redisCustomConversions(final OffsetDateTimeToBytesConverter offsetToBytes,
                                                        final BytesToOffsetDateTimeConverter bytesToOffset) {
     return new RedisCustomConversions(List.of(offsetToBytes, bytesToOffset));
   }
+
+  // Replaces the converter registered for the repositories, so it must keep this name
+  @Bean
+  public CompactMappingRedisConverter redisConverter(final RedisMappingContext mappingContext,
+                                                     final RedisCustomConversions redisCustomConversions,
+                                                     final StringRedisTemplate stringRedisTemplate,
+                                                     final Jackson2ObjectMapperBuilder objectMapperBuilder,
+                                                     final MeterRegistry meterRegistry) {
+    // Offsets are kept as written rather than adjusted to UTC, matching the hash mapping
+    final ObjectMapper smileMapper = objectMapperBuilder
+        .factory(new SmileFactory())
+        .serializationInclusion(JsonInclude.Include.NON_NULL)
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE)
+        .build();
+
+    final var converter = new CompactMappingRedisConverter(mappingContext, new ReferenceResolverImpl(stringRedisTemplate),
+        compactEntities, smileMapper, meterRegistry);
+    converter.setCustomConversions(redisCustomConversions);
+
+    return converter;
+  }
 }
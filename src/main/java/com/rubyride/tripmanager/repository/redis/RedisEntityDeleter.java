@@ -0,0 +1,80 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Batched deletes of entities stored by the Redis key-value repositories.
+ * <p>
+ * Removes the same keys as a repository delete (the entity hash, its keyspace membership and its secondary index
+ * memberships), but for a whole batch in two pipelined round trips. The usual after-delete events are then published
+ * for each entity so the other indexes kept alongside the repositories are cleaned up too. Only suitable for types
+ * whose secondary indexes are all simple (set) indexes.
+ */
+@Component
+public class RedisEntityDeleter {
+  private final StringRedisTemplate redisTemplate;
+  private final RedisConverter redisConverter;
+  private final ApplicationEventPublisher applicationEventPublisher;
+
+  public RedisEntityDeleter(final StringRedisTemplate redisTemplate, final RedisConverter redisConverter, final ApplicationEventPublisher applicationEventPublisher) {
+    this.redisTemplate = redisTemplate;
+    this.redisConverter = redisConverter;
+    this.applicationEventPublisher = applicationEventPublisher;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> void deleteAll(final Class<T> type, final Iterable<? extends T> entities) {
+    final var persistentEntity = redisConverter.getMappingContext().getRequiredPersistentEntity(type);
+    final var keySpace = persistentEntity.getKeySpace();
+    final var entitiesById = new LinkedHashMap<String, T>();
+
+    StreamUtils.streamIterable(entities)
+        .filter(Objects::nonNull)
+        .forEach(entity -> Optional.ofNullable(persistentEntity.getIdentifierAccessor(entity).getIdentifier())
+            .map(id -> redisConverter.getConversionService().convert(id, String.class))
+            .ifPresent(id -> entitiesById.put(id, entity)));
+
+    if (entitiesById.isEmpty()) {
+      return;
+    }
+
+    final var ids = new ArrayList<>(entitiesById.keySet());
+
+    // Each entity's index memberships, as recorded by the repositories' index writer
+    final var indexKeys = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      ids.forEach(id -> stringConnection.sMembers(keySpace + ":" + id + ":idx"));
+
+      return null;
+    });
+
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      for (var i = 0; i < ids.size(); i++) {
+        final var id = ids.get(i);
+        final var key = keySpace + ":" + id;
+
+        StreamUtils.safeStream((Collection<String>) indexKeys.get(i))
+            .forEach(indexKey -> stringConnection.sRem(indexKey, id));
+
+        stringConnection.del(key, key + ":idx", key + ":phantom");
+        stringConnection.sRem(keySpace, id);
+      }
+
+      return null;
+    });
+
+    entitiesById.forEach((id, entity) -> applicationEventPublisher.publishEvent(KeyValueEvent.afterDelete(id, keySpace, type, entity)));
+  }
+}
@@ -0,0 +1,162 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Batched reads of entities stored by the Redis key-value repositories.
+ * <p>
+ * Spring Data's finders resolve the matching IDs and then load each entity with its own HGETALL, one round trip at a
+ * time. These read the same hashes and secondary index sets, but send the HGETALLs in pipelined batches and convert
+ * the results with the converter the repositories use, so reading a few hundred entities takes a handful of round
+ * trips. Entities removed between resolving IDs and loading them are skipped.
+ */
+@Component
+public class RedisEntityReader {
+  private static final int BATCH_SIZE = 250;
+
+  private final StringRedisTemplate redisTemplate;
+  private final RedisConverter redisConverter;
+
+  public RedisEntityReader(final StringRedisTemplate redisTemplate, final RedisConverter redisConverter) {
+    this.redisTemplate = redisTemplate;
+    this.redisConverter = redisConverter;
+  }
+
+  private static String toString(final byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] toBytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String getKeySpace(final Class<?> type) {
+    return redisConverter.getMappingContext()
+        .getRequiredPersistentEntity(type)
+        .getKeySpace();
+  }
+
+  private String getId(final Object id) {
+    return redisConverter.getConversionService().convert(id, String.class);
+  }
+
+  // Converted the same way the repositories' index writer does, so the key matches the one it wrote
+  byte[] getIndexValue(final Object value) {
+    final var conversionService = redisConverter.getConversionService();
+
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    } else if (conversionService.canConvert(value.getClass(), byte[].class)) {
+      return conversionService.convert(value, byte[].class);
+    } else {
+      return toBytes(getId(value));
+    }
+  }
+
+  /**
+   * Load entities by ID, in the order given
+   */
+  public <T> List<T> findAllById(final Class<T> type, final Iterable<?> ids) {
+    final var idList = StreamUtils.streamIterable(ids)
+        .filter(Objects::nonNull)
+        .map(this::getId)
+        .distinct()
+        .collect(Collectors.toList());
+
+    return streamAllById(type, idList)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Load entities by ID, in the order given, one batch at a time as the stream is consumed
+   */
+  public <T> Stream<T> streamAllById(final Class<T> type, final List<?> ids) {
+    final var keySpace = getKeySpace(type);
+
+    return IntStream.range(0, (ids.size() + BATCH_SIZE - 1) / BATCH_SIZE)
+        .mapToObj(batch -> ids.subList(batch * BATCH_SIZE, Math.min(ids.size(), (batch + 1) * BATCH_SIZE)))
+        .flatMap(batchIds -> readBatch(type, keySpace, batchIds).stream());
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> List<T> readBatch(final Class<T> type, final String keySpace, final List<?> ids) {
+    final var stringIds = ids.stream()
+        .map(this::getId)
+        .collect(Collectors.toList());
+
+    // Pipelined on the connection itself: executePipelined would deserialize the hashes with the template's string
+    // serializers, which would corrupt binary fields such as compact entities' Smile data
+    final var hashes = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+      connection.openPipeline();
+      stringIds.forEach(id -> connection.hGetAll(toBytes(keySpace + ":" + id)));
+
+      return connection.closePipeline();
+    });
+
+    final var entities = new ArrayList<T>(stringIds.size());
+
+    for (var i = 0; i < stringIds.size(); i++) {
+      final var hash = hashes != null ? (Map<byte[], byte[]>) hashes.get(i) : null;
+
+      if (hash != null && !hash.isEmpty()) {
+        final var data = new RedisData(hash);
+        data.setId(stringIds.get(i));
+        data.setKeyspace(keySpace);
+
+        Optional.ofNullable(redisConverter.read(type, data))
+            .ifPresent(entities::add);
+      }
+    }
+
+    return entities;
+  }
+
+  /**
+   * Load every entity of a type
+   */
+  public <T> List<T> findAll(final Class<T> type) {
+    final var keySpace = getKeySpace(type);
+
+    return findAllById(type, findMembers(toBytes(keySpace)));
+  }
+
+  /**
+   * List the IDs of every entity of a type, without loading the entities
+   */
+  public <ID> List<ID> findIds(final Class<?> type, final Class<ID> idType) {
+    return findMembers(toBytes(getKeySpace(type))).stream()
+        .map(id -> redisConverter.getConversionService().convert(id, idType))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Load the entities whose indexed property has the given value
+   *
+   * @param type  Entity type
+   * @param path  Name of a property with a secondary index
+   * @param value Value to match, converted the same way as when the index was written
+   */
+  public <T> List<T> findByIndex(final Class<T> type, final String path, final Object value) {
+    final var indexKey = ByteUtils.concat(toBytes(getKeySpace(type) + ":" + path + ":"), getIndexValue(value));
+
+    return findAllById(type, findMembers(indexKey));
+  }
+
+  private List<String> findMembers(final byte[] key) {
+    return StreamUtils.safeStream(redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection.sMembers(key)))
+        .map(RedisEntityReader::toString)
+        .collect(Collectors.toList());
+  }
+}
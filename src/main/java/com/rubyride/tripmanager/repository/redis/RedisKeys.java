@@ -0,0 +1,48 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+
+final class RedisKeys {
+  private static final long BATCH_SIZE = 1_000L;
+
+  private RedisKeys() {
+  }
+
+  /**
+   * Delete every key matching a pattern, found with SCAN rather than KEYS so Redis isn't blocked while a large
+   * keyspace is walked
+   *
+   * @return number of keys deleted
+   */
+  static long deleteMatching(final StringRedisTemplate redisTemplate, final String pattern) {
+    final var deleted = redisTemplate.execute((RedisCallback<Long>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+      final var batch = new ArrayList<String>();
+      var count = 0L;
+
+      try (final var cursor = stringConnection.scan(ScanOptions.scanOptions().match(pattern).count(BATCH_SIZE).build())) {
+        while (cursor.hasNext()) {
+          batch.add(cursor.next());
+
+          if (batch.size() >= BATCH_SIZE) {
+            count += stringConnection.del(batch.toArray(new String[0]));
+            batch.clear();
+          }
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        count += stringConnection.del(batch.toArray(new String[0]));
+      }
+
+      return count;
+    });
+
+    return deleted != null ? deleted : 0L;
+  }
+}
@@ -0,0 +1,263 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.rubyride.model.Event;
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.event.ShiftDeltaEvent;
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+import com.rubyride.tripmanager.utility.ObjectUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only log of changes made to each shift saved through the {@link ShiftRepository}, numbered with a per-shift
+ * sequence. Subscribers apply the deltas published on the shift delta topic to a snapshot, and can catch up after
+ * a gap from the retained log, or fetch a new snapshot if the log no longer reaches back far enough.
+ * <p>
+ * Only the most recent deltas for each shift are retained, for a day after the last change. The sequence itself is
+ * kept until the shift is deleted so it never goes backwards.
+ */
+@Component
+public class ShiftDeltaLog {
+  private static final String KEY_PREFIX = Shift.class.getName() + ":";
+  private static final String SEQUENCE_KEY_SUFFIX = ":sequence";
+  private static final String LOG_KEY_SUFFIX = ":deltas";
+
+  static final int MAX_RETAINED_DELTAS = 200;
+  static final long RETENTION_MILLIS = Duration.ofDays(1L).toMillis();
+
+  private final StringRedisTemplate redisTemplate;
+  private final ObjectMapper objectMapper;
+  private final ApplicationEventPublisher applicationEventPublisher;
+
+  public ShiftDeltaLog(final StringRedisTemplate redisTemplate, final ObjectMapper objectMapper, final ApplicationEventPublisher applicationEventPublisher) {
+    this.redisTemplate = redisTemplate;
+    this.objectMapper = objectMapper;
+    this.applicationEventPublisher = applicationEventPublisher;
+  }
+
+  static String getSequenceKey(final UUID shiftId) {
+    return KEY_PREFIX + shiftId + SEQUENCE_KEY_SUFFIX;
+  }
+
+  static String getLogKey(final UUID shiftId) {
+    return KEY_PREFIX + shiftId + LOG_KEY_SUFFIX;
+  }
+
+  /**
+   * Capture the state of a shift before it is modified, as mutations change its events in place
+   */
+  State capture(final Shift shift) {
+    return new State(
+        StreamUtils.safeStream(shift.getEvents())
+            .filter(event -> event.getId() != null)
+            .collect(Collectors.toMap(Event::getId, event -> (JsonNode) objectMapper.valueToTree(event), (a, b) -> b, LinkedHashMap::new)),
+        new ArrayList<>(ObjectUtils.getOrDefault(shift.getTrips(), Collections.emptyList())),
+        getProperties(shift));
+  }
+
+  private ObjectNode getProperties(final Shift shift) {
+    final ObjectNode properties = objectMapper.valueToTree(shift);
+    properties.remove(List.of("events", "trips"));
+
+    return properties;
+  }
+
+  /**
+   * Describe the change between a captured state and the shift about to be saved. Nothing is recorded here: the
+   * repository writes the entry in the same atomic step as the shift, then publishes it with {@link #publish}, so
+   * deltas are numbered and published in the order the shifts were saved.
+   *
+   * @param before          State of the shift as it was read, or null for a new shift
+   * @param after           Shift about to be saved
+   * @param currentSequence Sequence number of the shift as it was read
+   * @return the entry to record; a new shift or one that hasn't changed keeps its current sequence number
+   */
+  Entry prepare(final State before, final Shift after, final long currentSequence) {
+    if (before == null) {
+      return new Entry(currentSequence, null, null);
+    }
+
+    final var events = ObjectUtils.getOrDefault(after.getEvents(), Collections.<Event>emptyList());
+
+    if (events.stream().anyMatch(event -> event.getId() == null)) {
+      // Events without IDs can't be addressed by a delta; skip a sequence number so subscribers fetch a new snapshot
+      return new Entry(currentSequence + 1L, null, null);
+    }
+
+    final var eventIds = events.stream()
+        .map(Event::getId)
+        .collect(Collectors.toList());
+    final var eventIdSet = new HashSet<>(eventIds);
+
+    final var removedEventIds = before.events.keySet().stream()
+        .filter(eventId -> !eventIdSet.contains(eventId))
+        .collect(Collectors.toList());
+    final var changedEvents = events.stream()
+        .filter(event -> !objectMapper.valueToTree(event).equals(before.events.get(event.getId())))
+        .collect(Collectors.toList());
+    final var trips = ObjectUtils.getOrDefault(after.getTrips(), Collections.<UUID>emptyList());
+    final var properties = getProperties(after);
+
+    // Added events can be positioned relative to their predecessor as long as the surviving events kept their order
+    final var orderKept = before.events.keySet().stream()
+        .filter(eventIdSet::contains)
+        .collect(Collectors.toList())
+        .equals(eventIds.stream()
+            .filter(before.events::containsKey)
+            .collect(Collectors.toList()));
+
+    if (removedEventIds.isEmpty() && changedEvents.isEmpty() && orderKept &&
+        trips.equals(before.trips) && properties.equals(before.properties)) {
+      return new Entry(currentSequence, null, null);
+    }
+
+    final Map<UUID, UUID> insertedAfter;
+
+    if (orderKept) {
+      insertedAfter = new HashMap<>();
+
+      for (var i = 0; i < eventIds.size(); i++) {
+        if (!before.events.containsKey(eventIds.get(i))) {
+          insertedAfter.put(eventIds.get(i), i > 0 ? eventIds.get(i - 1) : null);
+        }
+      }
+    } else {
+      insertedAfter = null;
+    }
+
+    final var delta = new ShiftEventDelta(after.getId(),
+        currentSequence + 1L,
+        removedEventIds.isEmpty() ? null : removedEventIds,
+        changedEvents.isEmpty() ? null : changedEvents,
+        insertedAfter == null || insertedAfter.isEmpty() ? null : insertedAfter,
+        orderKept ? null : eventIds,
+        trips.equals(before.trips) ? null : trips,
+        properties.equals(before.properties) ? null : toShift(properties));
+
+    return new Entry(delta.getSequence(), delta, toJson(delta));
+  }
+
+  /**
+   * Publish a recorded entry to subscribers, once the shift and entry have been saved
+   */
+  void publish(final Entry entry) {
+    if (entry.delta != null) {
+      applicationEventPublisher.publishEvent(new ShiftDeltaEvent(entry.delta));
+    }
+  }
+
+  /**
+   * Sequence number of the last change made to a shift, or 0 if it hasn't been changed since it was created
+   */
+  public long getSequence(final UUID shiftId) {
+    return Long.parseLong(ObjectUtils.getOrDefault(redisTemplate.opsForValue().get(getSequenceKey(shiftId)), "0"));
+  }
+
+  /**
+   * Find the changes made to a shift after a given sequence number
+   *
+   * @param shiftId  ID of shift
+   * @param sequence Sequence number of the last delta the caller has applied
+   * @return deltas in sequence order, or empty if they are no longer all retained and a new snapshot is needed
+   */
+  public Optional<List<ShiftEventDelta>> findSince(final UUID shiftId, final long sequence) {
+    final var currentSequence = getSequence(shiftId);
+
+    if (sequence > currentSequence) {
+      return Optional.empty();
+    } else if (sequence == currentSequence) {
+      return Optional.of(Collections.emptyList());
+    }
+
+    final var deltas = StreamUtils.safeStream(redisTemplate.opsForList().range(getLogKey(shiftId), 0, -1))
+        .map(this::fromJson)
+        .filter(delta -> delta.getSequence() > sequence)
+        .collect(Collectors.toList());
+
+    if (deltas.isEmpty() || deltas.get(0).getSequence() != sequence + 1) {
+      return Optional.empty();
+    }
+
+    for (var i = 1; i < deltas.size(); i++) {
+      if (deltas.get(i).getSequence() != deltas.get(i - 1).getSequence() + 1) {
+        return Optional.empty();
+      }
+    }
+
+    return Optional.of(deltas);
+  }
+
+  private Shift toShift(final JsonNode properties) {
+    try {
+      return objectMapper.treeToValue(properties, Shift.class);
+    } catch (final JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private String toJson(final ShiftEventDelta delta) {
+    try {
+      return objectMapper.writeValueAsString(delta);
+    } catch (final JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private ShiftEventDelta fromJson(final String value) {
+    try {
+      return objectMapper.readValue(value, ShiftEventDelta.class);
+    } catch (final JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @EventListener
+  public void onDelete(final KeyValueEvent.AfterDeleteEvent<?> event) {
+    if (Shift.class.equals(event.getType()) && event.getKey() != null) {
+      final var shiftId = event.getKey() instanceof UUID ?
+          (UUID) event.getKey() :
+          UUID.fromString(event.getKey().toString());
+
+      redisTemplate.delete(List.of(getSequenceKey(shiftId), getLogKey(shiftId)));
+    }
+  }
+
+  static final class State {
+    private final Map<UUID, JsonNode> events;
+    private final List<UUID> trips;
+    private final ObjectNode properties;
+
+    private State(final Map<UUID, JsonNode> events, final List<UUID> trips, final ObjectNode properties) {
+      this.events = events;
+      this.trips = trips;
+      this.properties = properties;
+    }
+  }
+
+  static final class Entry {
+    // Sequence number of the shift once the entry is recorded
+    final long sequence;
+    // Delta to append to the log, or null if there is nothing to append
+    final ShiftEventDelta delta;
+    final String value;
+
+    private Entry(final long sequence, final ShiftEventDelta delta, final String value) {
+      this.sequence = sequence;
+      this.delta = delta;
+      this.value = value;
+    }
+  }
+}
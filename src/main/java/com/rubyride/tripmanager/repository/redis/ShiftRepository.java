@@ -4,14 +4,8 @@ import com.rubyride.model.Shift;
 import org.springframework.data.keyvalue.repository.KeyValueRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface ShiftRepository extends KeyValueRepository<Shift, UUID> {
-  List<Shift> findByDriverId(UUID driverId);
-
-  List<Shift> findByActive(boolean active);
-
-  List<Shift> findByZoneId(UUID zoneId);
+public interface ShiftRepository extends KeyValueRepository<Shift, UUID>, ShiftRepositoryCustom {
 }
@@ -0,0 +1,62 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.model.ShiftSnapshot;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+public interface ShiftRepositoryCustom {
+  Iterable<Shift> findAll();
+
+  Iterable<Shift> findAllById(Iterable<UUID> shiftIds);
+
+  List<Shift> findByDriverId(UUID driverId);
+
+  List<Shift> findByActive(boolean active);
+
+  List<Shift> findByZoneId(UUID zoneId);
+
+  void deleteAll(Iterable<? extends Shift> shifts);
+
+  /**
+   * Look up the driver assigned to each of a set of shifts in a single round trip, without loading the shifts
+   *
+   * @param shiftIds IDs of shifts to look up
+   * @return driver ID by shift ID; shifts that don't exist or have no driver are omitted
+   */
+  Map<UUID, UUID> findDriverIdsById(Collection<UUID> shiftIds);
+
+  /**
+   * Save a shift as given, replacing any stored version, and record the change in the shift's delta log
+   *
+   * @throws com.rubyride.tripmanager.exception.EntityUpdateConflictException if the shift is still being modified
+   *                                                                          concurrently after several attempts
+   */
+  <S extends Shift> S save(S shift);
+
+  /**
+   * Load, modify and save a shift, retrying if another update to the same shift is committed in between
+   *
+   * @param shiftId  ID of shift to update
+   * @param mutation Modification to apply to the current shift; may be applied more than once so it must not have
+   *                 side effects other than on the shift it is given
+   * @return the updated shift, or empty if the shift doesn't exist
+   * @throws com.rubyride.tripmanager.exception.EntityUpdateConflictException if the shift is still being modified
+   *                                                                          concurrently after several attempts
+   */
+  Optional<Shift> update(UUID shiftId, UnaryOperator<Shift> mutation);
+
+  /**
+   * Load a shift along with the sequence number of the last delta recorded for it, so the shift can be kept up to date
+   * from the deltas that follow
+   *
+   * @param shiftId ID of shift to load
+   * @return the shift and its sequence number, or empty if the shift doesn't exist
+   */
+  Optional<ShiftSnapshot> findSnapshotById(UUID shiftId);
+}
@@ -0,0 +1,388 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.exception.EntityUpdateConflictException;
+import com.rubyride.tripmanager.model.ShiftSnapshot;
+import com.rubyride.tripmanager.utility.ObjectUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Shifts are saved here rather than by the key-value adapter, so that every save can be made conditional on the shift
+ * not having changed since it was read. A per-shift version counter is kept alongside the shift hash, and a single
+ * script checks the version is still the one that was read, writes the hash and its secondary index memberships,
+ * records the change in the {@link ShiftDeltaLog} and moves the version on, all in one atomic step. If the version has
+ * moved, another save got there first and the whole read-modify-write is retried against the new state.
+ * <p>
+ * The hash and its indexes are laid out as the adapter would write them, using the same converter, so the finders read
+ * them as usual. The after-insert and after-update events, then the recorded delta, are only published once the save
+ * has been committed. The version never expires, and is only dropped when the shift is deleted.
+ */
+public class ShiftRepositoryCustomImpl implements ShiftRepositoryCustom {
+  private static final String KEY_SPACE = Shift.class.getName();
+  private static final String KEY_PREFIX = KEY_SPACE + ":";
+  private static final String VERSION_KEY_SUFFIX = ":version";
+  private static final String INDEX_KEY_SUFFIX = ":idx";
+
+  private static final int MAX_UPDATE_ATTEMPTS = 10;
+
+  // Save a shift, provided its version (KEYS[2]) is still the one it was read at (ARGV[1]):
+  //  - leave the index sets in KEYS[7] to KEYS[6 + ARGV[3]] and join the rest, recording them in the index helper
+  //    (KEYS[3]), and add the ID (ARGV[2]) to the keyspace set (KEYS[4])
+  //  - set the ARGV[8] values' worth of field/value pairs that follow in the hash (KEYS[1]) and delete the remaining
+  //    fields
+  //  - set the delta sequence (KEYS[5]) to ARGV[4] and append ARGV[5] to the delta log (KEYS[6]), unless empty,
+  //    trimming it to the last ARGV[6] entries and expiring it after ARGV[7] milliseconds
+  // Returns the new version, or 0 if another save got there first.
+  private static final RedisScript<Long> COMMIT = new DefaultRedisScript<>(
+      "local version = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+          "if version ~= tonumber(ARGV[1]) then return 0 end " +
+          "local leaving = 6 + tonumber(ARGV[3]) " +
+          "for i = 7, leaving do " +
+          "redis.call('SREM', KEYS[i], ARGV[2]) " +
+          "redis.call('SREM', KEYS[3], KEYS[i]) " +
+          "end " +
+          "for i = leaving + 1, #KEYS do " +
+          "redis.call('SADD', KEYS[i], ARGV[2]) " +
+          "redis.call('SADD', KEYS[3], KEYS[i]) " +
+          "end " +
+          "redis.call('SADD', KEYS[4], ARGV[2]) " +
+          // in chunks, as unpack is limited by the size of the Lua stack
+          "local setting = 8 + tonumber(ARGV[8]) " +
+          "for i = 9, setting, 200 do redis.call('HMSET', KEYS[1], unpack(ARGV, i, math.min(i + 199, setting))) end " +
+          "for i = setting + 1, #ARGV, 200 do redis.call('HDEL', KEYS[1], unpack(ARGV, i, math.min(i + 199, #ARGV))) end " +
+          "if ARGV[4] ~= '' then redis.call('SET', KEYS[5], ARGV[4]) end " +
+          "if ARGV[5] ~= '' then " +
+          "redis.call('RPUSH', KEYS[6], ARGV[5]) " +
+          "redis.call('LTRIM', KEYS[6], -tonumber(ARGV[6]), -1) " +
+          "redis.call('PEXPIRE', KEYS[6], ARGV[7]) " +
+          "end " +
+          "redis.call('SET', KEYS[2], version + 1) " +
+          "return version + 1",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final RedisConverter redisConverter;
+  private final ShiftDeltaLog shiftDeltaLog;
+  private final RedisEntityReader entityReader;
+  private final RedisEntityDeleter entityDeleter;
+  private final ApplicationEventPublisher applicationEventPublisher;
+  private final Counter conflictCounter;
+
+  public ShiftRepositoryCustomImpl(final StringRedisTemplate redisTemplate, final RedisConverter redisConverter, final ShiftDeltaLog shiftDeltaLog, final RedisEntityReader entityReader, final RedisEntityDeleter entityDeleter, final ApplicationEventPublisher applicationEventPublisher, final MeterRegistry meterRegistry) {
+    this.redisTemplate = redisTemplate;
+    this.redisConverter = redisConverter;
+    this.shiftDeltaLog = shiftDeltaLog;
+    this.entityReader = entityReader;
+    this.entityDeleter = entityDeleter;
+    this.applicationEventPublisher = applicationEventPublisher;
+    this.conflictCounter = meterRegistry.counter("tripmanager.shift.update.conflicts");
+  }
+
+  @Override
+  public Iterable<Shift> findAll() {
+    return entityReader.findAll(Shift.class);
+  }
+
+  @Override
+  public Iterable<Shift> findAllById(final Iterable<UUID> shiftIds) {
+    return entityReader.findAllById(Shift.class, shiftIds);
+  }
+
+  @Override
+  public List<Shift> findByDriverId(final UUID driverId) {
+    return entityReader.findByIndex(Shift.class, "driverId", driverId);
+  }
+
+  @Override
+  public List<Shift> findByActive(final boolean active) {
+    return entityReader.findByIndex(Shift.class, "active", active);
+  }
+
+  @Override
+  public List<Shift> findByZoneId(final UUID zoneId) {
+    return entityReader.findByIndex(Shift.class, "zoneId", zoneId);
+  }
+
+  @Override
+  public void deleteAll(final Iterable<? extends Shift> shifts) {
+    entityDeleter.deleteAll(Shift.class, shifts);
+  }
+
+  @Override
+  public Map<UUID, UUID> findDriverIdsById(final Collection<UUID> shiftIds) {
+    final var ids = new ArrayList<>(new LinkedHashSet<>(shiftIds));
+    ids.remove(null);
+
+    if (ids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    final var driverIds = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      ids.forEach(shiftId -> stringConnection.hGet(KEY_PREFIX + shiftId, "driverId"));
+
+      return null;
+    });
+
+    final var driverIdsByShiftId = new HashMap<UUID, UUID>();
+
+    for (var i = 0; i < ids.size(); i++) {
+      final var shiftId = ids.get(i);
+
+      Optional.ofNullable(driverIds.get(i))
+          .map(Object::toString)
+          .map(UUID::fromString)
+          .ifPresent(driverId -> driverIdsByShiftId.put(shiftId, driverId));
+    }
+
+    return driverIdsByShiftId;
+  }
+
+  private static String getVersionKey(final UUID shiftId) {
+    return KEY_PREFIX + shiftId + VERSION_KEY_SUFFIX;
+  }
+
+  private static byte[] toBytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String toString(final byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @SuppressWarnings("unchecked")
+  private StoredShift read(final UUID shiftId) {
+    final var key = KEY_PREFIX + shiftId;
+
+    // In a transaction so the version, sequence, hash and index memberships all belong to the same save
+    final var results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+      connection.multi();
+      connection.get(toBytes(getVersionKey(shiftId)));
+      connection.get(toBytes(ShiftDeltaLog.getSequenceKey(shiftId)));
+      connection.hGetAll(toBytes(key));
+      connection.sMembers(toBytes(key + INDEX_KEY_SUFFIX));
+
+      return connection.exec();
+    });
+
+    if (results == null || results.size() != 4) {
+      throw new EntityUpdateConflictException("Shift " + shiftId + " could not be read, please retry");
+    }
+
+    final var version = (byte[]) results.get(0);
+    final var sequence = (byte[]) results.get(1);
+    final var hash = ObjectUtils.getOrDefault((Map<byte[], byte[]>) results.get(2), Collections.<byte[], byte[]>emptyMap());
+    final var fields = new HashMap<String, byte[]>();
+
+    hash.forEach((field, value) -> fields.put(toString(field), value));
+
+    final Shift shift;
+
+    if (hash.isEmpty()) {
+      shift = null;
+    } else {
+      final var data = new RedisData(hash);
+      data.setId(shiftId.toString());
+      data.setKeyspace(KEY_SPACE);
+
+      shift = redisConverter.read(Shift.class, data);
+    }
+
+    return new StoredShift(
+        version != null ? Long.parseLong(toString(version)) : 0L,
+        sequence != null ? Long.parseLong(toString(sequence)) : 0L,
+        shift,
+        fields,
+        StreamUtils.safeStream((Set<byte[]>) results.get(3))
+            .map(ShiftRepositoryCustomImpl::toString)
+            .collect(Collectors.toSet()));
+  }
+
+  // Index keys as the adapter's index writer builds them
+  private Set<String> getIndexKeys(final RedisData data) {
+    return data.getIndexedData().stream()
+        .filter(SimpleIndexedPropertyValue.class::isInstance)
+        .map(SimpleIndexedPropertyValue.class::cast)
+        .filter(indexedData -> indexedData.getValue() != null)
+        .map(indexedData -> indexedData.getKeyspace() + ":" + indexedData.getIndexName() + ":" +
+            toString(entityReader.getIndexValue(indexedData.getValue())))
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  /**
+   * Save a shift and record the change, provided it hasn't been saved again since it was read. Only the hash fields
+   * that differ from the stored ones are written, so a change to one event leaves the rest of the shift alone.
+   *
+   * @return true if the shift was saved, false if another save got there first
+   */
+  private boolean commit(final StoredShift stored, final Shift shift, final ShiftDeltaLog.Entry entry) {
+    final var data = new RedisData();
+    redisConverter.write(shift, data);
+
+    final var key = KEY_PREFIX + data.getId();
+    final var fields = data.getBucket().rawMap();
+    final var indexKeys = getIndexKeys(data);
+    final var leavingIndexKeys = stored.indexKeys.stream()
+        .filter(indexKey -> !indexKeys.contains(indexKey))
+        .collect(Collectors.toList());
+
+    // Every current index is joined again, which costs nothing if already a member, so resaving repairs the indexes
+    final var keys = new ArrayList<>(List.of(key, getVersionKey(shift.getId()), key + INDEX_KEY_SUFFIX, KEY_SPACE,
+        ShiftDeltaLog.getSequenceKey(shift.getId()), ShiftDeltaLog.getLogKey(shift.getId())));
+    keys.addAll(leavingIndexKeys);
+    keys.addAll(indexKeys);
+
+    final var changedFields = new ArrayList<byte[]>();
+
+    fields.forEach((field, value) -> {
+      if (!Arrays.equals(value, stored.fields.get(field))) {
+        changedFields.add(toBytes(field));
+        changedFields.add(value);
+      }
+    });
+
+    final var args = new ArrayList<byte[]>(List.of(
+        toBytes(String.valueOf(stored.version)),
+        toBytes(data.getId()),
+        toBytes(String.valueOf(leavingIndexKeys.size())),
+        toBytes(entry.sequence != stored.sequence ? String.valueOf(entry.sequence) : ""),
+        toBytes(ObjectUtils.getOrDefault(entry.value, "")),
+        toBytes(String.valueOf(ShiftDeltaLog.MAX_RETAINED_DELTAS)),
+        toBytes(String.valueOf(ShiftDeltaLog.RETENTION_MILLIS)),
+        toBytes(String.valueOf(changedFields.size()))));
+    args.addAll(changedFields);
+
+    stored.fields.keySet().stream()
+        .filter(field -> !fields.containsKey(field))
+        .map(ShiftRepositoryCustomImpl::toBytes)
+        .forEach(args::add);
+
+    final var version = redisTemplate.execute(COMMIT, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class), keys, args.toArray());
+
+    return ObjectUtils.getOrDefault(version, 0L) != 0L;
+  }
+
+  private void publish(final StoredShift stored, final Shift shift, final ShiftDeltaLog.Entry entry) {
+    // The adapter reports the saved shift as the previous value too, so listeners only ever look at the payload
+    applicationEventPublisher.publishEvent(stored.shift == null ?
+        KeyValueEvent.afterInsert(shift.getId(), KEY_SPACE, Shift.class, shift) :
+        KeyValueEvent.afterUpdate(shift.getId(), KEY_SPACE, Shift.class, shift, shift));
+
+    shiftDeltaLog.publish(entry);
+  }
+
+  @Override
+  public <S extends Shift> S save(final S shift) {
+    if (shift.getId() == null) {
+      shift.setId(UUID.randomUUID());
+    }
+
+    for (var attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+      final var stored = read(shift.getId());
+      final var entry = shiftDeltaLog.prepare(stored.shift != null ? shiftDeltaLog.capture(stored.shift) : null, shift, stored.sequence);
+
+      if (commit(stored, shift, entry)) {
+        publish(stored, shift, entry);
+        return shift;
+      }
+
+      conflictCounter.increment();
+      backOff(attempt);
+    }
+
+    throw new EntityUpdateConflictException("Shift " + shift.getId() + " is being modified concurrently, please retry");
+  }
+
+  @Override
+  public Optional<Shift> update(final UUID shiftId, final UnaryOperator<Shift> mutation) {
+    for (var attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+      final var stored = read(shiftId);
+
+      if (stored.shift == null) {
+        return Optional.empty();
+      }
+
+      final var previousState = shiftDeltaLog.capture(stored.shift);
+      final var updatedShift = mutation.apply(stored.shift);
+      final var entry = shiftDeltaLog.prepare(previousState, updatedShift, stored.sequence);
+
+      if (commit(stored, updatedShift, entry)) {
+        publish(stored, updatedShift, entry);
+        return Optional.of(updatedShift);
+      }
+
+      conflictCounter.increment();
+      backOff(attempt);
+    }
+
+    throw new EntityUpdateConflictException("Shift " + shiftId + " is being modified concurrently, please retry");
+  }
+
+  @Override
+  public Optional<ShiftSnapshot> findSnapshotById(final UUID shiftId) {
+    final var stored = read(shiftId);
+
+    return Optional.ofNullable(stored.shift)
+        .map(shift -> new ShiftSnapshot(stored.sequence, shift));
+  }
+
+  @EventListener
+  public void onDelete(final KeyValueEvent.AfterDeleteEvent<?> event) {
+    if (Shift.class.equals(event.getType()) && event.getKey() != null) {
+      final var shiftId = event.getKey() instanceof UUID ?
+          (UUID) event.getKey() :
+          UUID.fromString(event.getKey().toString());
+
+      redisTemplate.delete(getVersionKey(shiftId));
+    }
+  }
+
+  // Randomized exponential backoff, capped at 64ms
+  private static void backOff(final int attempt) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(1L, 2L << Math.min(attempt, 5)));
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EntityUpdateConflictException("Interrupted while waiting to update shift");
+    }
+  }
+
+  private static final class StoredShift {
+    private final long version;
+    private final long sequence;
+    // Null if the shift doesn't exist
+    private final Shift shift;
+    private final Map<String, byte[]> fields;
+    private final Set<String> indexKeys;
+
+    private StoredShift(final long version, final long sequence, final Shift shift, final Map<String, byte[]> fields, final Set<String> indexKeys) {
+      this.version = version;
+      this.sequence = sequence;
+      this.shift = shift;
+      this.fields = fields;
+      this.indexKeys = indexKeys;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.utility.ObjectUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Sorted-set index of live shifts scored by end time (epoch milliseconds), so shifts that ended before a given time
+ * can be found without loading every shift. Shifts without an end time aren't indexed.
+ * <p>
+ * Like {@link TripTimeIndex}, the index is maintained from the key-value events published by the Redis repository.
+ */
+@Component
+public class ShiftTimeIndex {
+  private static final Logger log = LoggerFactory.getLogger(ShiftTimeIndex.class);
+
+  private static final String END_TIME_KEY = Shift.class.getName() + ":time:end";
+
+  private final StringRedisTemplate redisTemplate;
+  private final ShiftRepository shiftRepository;
+
+  public ShiftTimeIndex(final StringRedisTemplate redisTemplate, final ShiftRepository shiftRepository) {
+    this.redisTemplate = redisTemplate;
+    this.shiftRepository = shiftRepository;
+  }
+
+  // Computed from epoch seconds so far-future sentinel times don't overflow
+  private static double getScore(final OffsetDateTime time) {
+    return time.toEpochSecond() * 1_000D + time.getNano() / 1_000_000;
+  }
+
+  /**
+   * Find up to a given number of IDs of live shifts that ended before a time, earliest first
+   */
+  public List<UUID> findShiftIdsEndingBefore(final OffsetDateTime to, final int limit) {
+    return StreamUtils.safeStream(redisTemplate.opsForZSet().rangeByScore(END_TIME_KEY, Double.NEGATIVE_INFINITY, Math.nextDown(getScore(to)), 0L, limit))
+        .map(UUID::fromString)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Count live shifts that ended before a time
+   */
+  public long countShiftsEndingBefore(final OffsetDateTime to) {
+    return ObjectUtils.getOrDefault(redisTemplate.opsForZSet().count(END_TIME_KEY, Double.NEGATIVE_INFINITY, Math.nextDown(getScore(to))), 0L);
+  }
+
+  public void index(final Shift shift) {
+    if (shift == null || shift.getId() == null) {
+      return;
+    }
+
+    if (shift.getEndTime() != null) {
+      redisTemplate.opsForZSet().add(END_TIME_KEY, shift.getId().toString(), getScore(shift.getEndTime()));
+    } else {
+      remove(shift.getId());
+    }
+  }
+
+  public void remove(final UUID shiftId) {
+    if (shiftId != null) {
+      redisTemplate.opsForZSet().remove(END_TIME_KEY, shiftId.toString());
+    }
+  }
+
+  /**
+   * Drop and rebuild the whole index from the shift repository
+   */
+  public void rebuild() {
+    redisTemplate.delete(END_TIME_KEY);
+
+    final var count = StreamUtils.streamIterable(shiftRepository.findAll())
+        .peek(this::index)
+        .count();
+
+    log.info("Rebuilt shift time index for " + count + " shifts");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void initialize() {
+    if (!Boolean.TRUE.equals(redisTemplate.hasKey(END_TIME_KEY)) && shiftRepository.count() > 0) {
+      rebuild();
+    }
+  }
+
+  @EventListener
+  public void onInsert(final KeyValueEvent.AfterInsertEvent<?> event) {
+    if (event.getPayload() instanceof Shift) {
+      index((Shift) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onUpdate(final KeyValueEvent.AfterUpdateEvent<?> event) {
+    if (event.getPayload() instanceof Shift) {
+      index((Shift) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onDelete(final KeyValueEvent.AfterDeleteEvent<?> event) {
+    if (Shift.class.equals(event.getType()) && event.getKey() != null) {
+      remove(event.getKey() instanceof UUID ?
+          (UUID) event.getKey() :
+          UUID.fromString(event.getKey().toString()));
+    }
+  }
+
+  @EventListener
+  public void onDropKeySpace(final KeyValueEvent.AfterDropKeySpaceEvent<?> event) {
+    if (Shift.class.getName().equals(event.getKeyspace())) {
+      redisTemplate.delete(END_TIME_KEY);
+    }
+  }
+}
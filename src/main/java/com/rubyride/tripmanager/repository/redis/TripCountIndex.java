@@ -0,0 +1,226 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.TripRequest;
+import com.rubyride.model.TripRequestScheduleType;
+import com.rubyride.model.TripRequestStatus;
+import com.rubyride.tripmanager.model.TripCount;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.utility.TripUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Counts of live trip requests per zone (trips from or to it, by the zone's local date) and across all zones, broken
+ * down by date, status and schedule type. Each scope is a hash of counters, so a date range of counts is read with a
+ * single HGETALL instead of by loading every trip.
+ * <p>
+ * Like {@link TripTimeIndex}, the counts are maintained from the key-value events published by the Redis repository.
+ * Each trip keeps a set of the counters it contributes to, and a script moves it between counters atomically when it
+ * changes, so a trip is never counted twice or left behind in a counter it has moved out of. A trip whose hash no
+ * longer exists contributes to nothing, so an update event handled after the trip's delete event can't count it
+ * again. Events for concurrent saves of the same trip may still be handled out of order, leaving the trip counted as
+ * of the earlier save until it is next saved or the counts are rebuilt.
+ */
+@Component
+public class TripCountIndex {
+  private static final Logger log = LoggerFactory.getLogger(TripCountIndex.class);
+
+  public static final String ALL_SCOPE = "all";
+
+  private static final String KEY_PREFIX = TripRequest.class.getName() + ":counts:";
+  private static final String SCOPE_KEY_PREFIX = KEY_PREFIX + "scope:";
+  private static final String MEMBERSHIP_KEY_PREFIX = KEY_PREFIX + "trip:";
+  private static final String TRIP_KEY_PREFIX = TripRequest.class.getName() + ":";
+
+  // Replace the counters a trip contributes to (KEYS[1]) with those given as "key field" arguments, or with none if the
+  // trip's hash (KEYS[2]) has been deleted
+  private static final RedisScript<Long> MOVE_CONTRIBUTIONS = new DefaultRedisScript<>(
+      "local function split(contribution) " +
+          "local separator = string.find(contribution, ' ', 1, true) " +
+          "return string.sub(contribution, 1, separator - 1), string.sub(contribution, separator + 1) " +
+          "end " +
+          "local contributions = ARGV " +
+          "if redis.call('EXISTS', KEYS[2]) == 0 then contributions = {} end " +
+          "local current = {} " +
+          "for _, contribution in ipairs(contributions) do current[contribution] = true end " +
+          "local previous = {} " +
+          "for _, contribution in ipairs(redis.call('SMEMBERS', KEYS[1])) do " +
+          "previous[contribution] = true " +
+          "if not current[contribution] then " +
+          "local key, field = split(contribution) " +
+          "if redis.call('HINCRBY', key, field, -1) <= 0 then redis.call('HDEL', key, field) end " +
+          "end " +
+          "end " +
+          "for _, contribution in ipairs(contributions) do " +
+          "if not previous[contribution] then " +
+          "local key, field = split(contribution) " +
+          "redis.call('HINCRBY', key, field, 1) " +
+          "end " +
+          "end " +
+          "redis.call('DEL', KEYS[1]) " +
+          "if #contributions > 0 then redis.call('SADD', KEYS[1], unpack(contributions)) end " +
+          "return 1",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final TripRepository tripRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final TripUtils tripUtils;
+
+  public TripCountIndex(final StringRedisTemplate redisTemplate, final TripRepository tripRepository, final ReferenceDataCache referenceDataCache, final TripUtils tripUtils) {
+    this.redisTemplate = redisTemplate;
+    this.tripRepository = tripRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.tripUtils = tripUtils;
+  }
+
+  private static String getField(final LocalDate date, final TripRequestStatus status, final TripRequestScheduleType scheduleType) {
+    return date + "|" + (status != null ? status.name() : "") + "|" + (scheduleType != null ? scheduleType.name() : "");
+  }
+
+  private static TripCount toTripCount(final String scope, final String field, final String count) {
+    final var parts = field.split("\\|", -1);
+
+    return TripCount.of(scope,
+        LocalDate.parse(parts[0]),
+        parts[1].isEmpty() ? null : TripRequestStatus.valueOf(parts[1]),
+        parts[2].isEmpty() ? null : TripRequestScheduleType.valueOf(parts[2]),
+        Long.parseLong(count));
+  }
+
+  private Optional<ZoneOffset> findZoneOffset(final UUID zoneId) {
+    return referenceDataCache.getZones().findById(zoneId)
+        .map(zone -> ZoneOffset.ofHours(zone.getTimeZone()));
+  }
+
+  /**
+   * The date a trip is counted on in each scope it is counted in: each zone it goes from or to, on the zone's local
+   * date, and all zones, on the date of its primary time
+   *
+   * @param zoneOffsets offsets of zones looked up so far, added to as other zones are looked up
+   */
+  public Map<String, LocalDate> getDatesByScope(final TripRequest tripRequest, final Map<UUID, Optional<ZoneOffset>> zoneOffsets) {
+    final var time = tripUtils.getPrimaryTimeConstraint(tripRequest);
+    final var datesByScope = new HashMap<String, LocalDate>();
+
+    datesByScope.put(ALL_SCOPE, time.toLocalDate());
+
+    StreamUtils.safeStream(Arrays.asList(tripRequest.getFromZoneId(), tripRequest.getToZoneId()))
+        .filter(Objects::nonNull)
+        .distinct()
+        .forEach(zoneId -> zoneOffsets.computeIfAbsent(zoneId, this::findZoneOffset)
+            .ifPresent(offset -> datesByScope.put(zoneId.toString(), time.atZoneSameInstant(offset).toLocalDate())));
+
+    return datesByScope;
+  }
+
+  /**
+   * Live trip counts in a scope for dates in [from, to)
+   *
+   * @param scope Zone ID, or {@link #ALL_SCOPE}
+   * @param dates min and max dates, as returned by {@link com.rubyride.tripmanager.utility.DateUtils#getMinMaxDates(LocalDate, LocalDate)}
+   */
+  public List<TripCount> getCounts(final String scope, final Pair<LocalDate, LocalDate> dates) {
+    return redisTemplate.<String, String>opsForHash().entries(SCOPE_KEY_PREFIX + scope)
+        .entrySet()
+        .stream()
+        .map(entry -> toTripCount(scope, entry.getKey(), entry.getValue()))
+        .filter(tripCount -> dates.getFirst().compareTo(tripCount.getLocalDate()) <= 0 &&
+            dates.getSecond().compareTo(tripCount.getLocalDate()) > 0)
+        .collect(Collectors.toList());
+  }
+
+  public void index(final TripRequest tripRequest) {
+    index(tripRequest, new HashMap<>());
+  }
+
+  private void index(final TripRequest tripRequest, final Map<UUID, Optional<ZoneOffset>> zoneOffsets) {
+    if (tripRequest == null || tripRequest.getId() == null) {
+      return;
+    }
+
+    moveContributions(tripRequest.getId(), getDatesByScope(tripRequest, zoneOffsets).entrySet().stream()
+        .map(entry -> SCOPE_KEY_PREFIX + entry.getKey() + " " + getField(entry.getValue(), tripRequest.getStatus(), tripRequest.getScheduleType()))
+        .toArray(String[]::new));
+  }
+
+  public void remove(final UUID tripId) {
+    if (tripId != null) {
+      moveContributions(tripId);
+    }
+  }
+
+  private void moveContributions(final UUID tripId, final String... contributions) {
+    redisTemplate.execute(MOVE_CONTRIBUTIONS, List.of(MEMBERSHIP_KEY_PREFIX + tripId, TRIP_KEY_PREFIX + tripId), (Object[]) contributions);
+  }
+
+  /**
+   * Drop and rebuild all the counts from the trip repository
+   */
+  public void rebuild() {
+    clear();
+
+    final var zoneOffsets = new HashMap<UUID, Optional<ZoneOffset>>();
+
+    final var count = StreamUtils.streamIterable(tripRepository.findAll())
+        .peek(tripRequest -> index(tripRequest, zoneOffsets))
+        .count();
+
+    log.info("Rebuilt trip counts for " + count + " trip requests");
+  }
+
+  private void clear() {
+    RedisKeys.deleteMatching(redisTemplate, KEY_PREFIX + "*");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void initialize() {
+    if (!Boolean.TRUE.equals(redisTemplate.hasKey(SCOPE_KEY_PREFIX + ALL_SCOPE)) && tripRepository.count() > 0) {
+      rebuild();
+    }
+  }
+
+  @EventListener
+  public void onInsert(final KeyValueEvent.AfterInsertEvent<?> event) {
+    if (event.getPayload() instanceof TripRequest) {
+      index((TripRequest) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onUpdate(final KeyValueEvent.AfterUpdateEvent<?> event) {
+    if (event.getPayload() instanceof TripRequest) {
+      index((TripRequest) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onDelete(final KeyValueEvent.AfterDeleteEvent<?> event) {
+    if (TripRequest.class.equals(event.getType()) && event.getKey() != null) {
+      remove(event.getKey() instanceof UUID ?
+          (UUID) event.getKey() :
+          UUID.fromString(event.getKey().toString()));
+    }
+  }
+
+  @EventListener
+  public void onDropKeySpace(final KeyValueEvent.AfterDropKeySpaceEvent<?> event) {
+    if (TripRequest.class.getName().equals(event.getKeyspace())) {
+      clear();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.TripRequest;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Trip lookups and deletes that work on the matching trips in pipelined batches rather than one round trip per trip
+ */
+public interface TripRepositoryCustom {
+  Iterable<TripRequest> findAll();
+
+  Iterable<TripRequest> findAllById(Iterable<UUID> tripIds);
+
+  /**
+   * Load trips by ID, in the order given, one batch at a time as the stream is consumed so large ID ranges can be
+   * streamed without holding every trip in memory. Trips that don't exist are skipped.
+   */
+  Stream<TripRequest> streamAllById(List<UUID> tripIds);
+
+  List<TripRequest> findByRiderId(UUID id);
+
+  List<TripRequest> findByFromZoneId(UUID zoneId);
+
+  List<TripRequest> findByToZoneId(UUID zoneId);
+
+  void deleteAll(Iterable<? extends TripRequest> tripRequests);
+}
@@ -0,0 +1,52 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.TripRequest;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public class TripRepositoryCustomImpl implements TripRepositoryCustom {
+  private final RedisEntityReader entityReader;
+  private final RedisEntityDeleter entityDeleter;
+
+  public TripRepositoryCustomImpl(final RedisEntityReader entityReader, final RedisEntityDeleter entityDeleter) {
+    this.entityReader = entityReader;
+    this.entityDeleter = entityDeleter;
+  }
+
+  @Override
+  public Iterable<TripRequest> findAll() {
+    return entityReader.findAll(TripRequest.class);
+  }
+
+  @Override
+  public Iterable<TripRequest> findAllById(final Iterable<UUID> tripIds) {
+    return entityReader.findAllById(TripRequest.class, tripIds);
+  }
+
+  @Override
+  public Stream<TripRequest> streamAllById(final List<UUID> tripIds) {
+    return entityReader.streamAllById(TripRequest.class, tripIds);
+  }
+
+  @Override
+  public List<TripRequest> findByRiderId(final UUID id) {
+    return entityReader.findByIndex(TripRequest.class, "riderId", id);
+  }
+
+  @Override
+  public List<TripRequest> findByFromZoneId(final UUID zoneId) {
+    return entityReader.findByIndex(TripRequest.class, "fromZoneId", zoneId);
+  }
+
+  @Override
+  public List<TripRequest> findByToZoneId(final UUID zoneId) {
+    return entityReader.findByIndex(TripRequest.class, "toZoneId", zoneId);
+  }
+
+  @Override
+  public void deleteAll(final Iterable<? extends TripRequest> tripRequests) {
+    entityDeleter.deleteAll(TripRequest.class, tripRequests);
+  }
+}
@@ -0,0 +1,209 @@
+package com.rubyride.tripmanager.repository.redis;
+
+import com.rubyride.model.TripRequest;
+import com.rubyride.tripmanager.utility.ObjectUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.utility.TripUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Sorted-set indexes of live trip requests scored by primary time constraint (epoch milliseconds), kept per zone
+ * (both from and to zone), per rider and globally. Spring Data's secondary indexes only support equality, so this
+ * lets date-windowed reads fetch just the IDs in range instead of hydrating every trip for a zone or rider.
+ * <p>
+ * The index is maintained from the key-value events published by the Redis repository on every save and delete.
+ * Each trip also keeps a set of the index keys it is a member of so stale memberships can be removed on update; a
+ * script reads and replaces them atomically, so concurrent saves of the same trip can't leave it in a stale index.
+ */
+@Component
+public class TripTimeIndex {
+  private static final Logger log = LoggerFactory.getLogger(TripTimeIndex.class);
+
+  private static final String KEY_PREFIX = TripRequest.class.getName() + ":time:";
+  private static final String ALL_KEY = KEY_PREFIX + "all";
+  private static final String ZONE_KEY_PREFIX = KEY_PREFIX + "zone:";
+  private static final String RIDER_KEY_PREFIX = KEY_PREFIX + "rider:";
+  private static final String MEMBERSHIP_KEY_PREFIX = KEY_PREFIX + "trip:";
+
+  // Replace the index memberships (KEYS[1]) of a trip (ARGV[1]) with the index keys in KEYS[2..], scored ARGV[2]
+  private static final RedisScript<Long> MOVE_MEMBERSHIPS = new DefaultRedisScript<>(
+      "local current = {} " +
+          "for i = 2, #KEYS do current[KEYS[i]] = true end " +
+          "for _, key in ipairs(redis.call('SMEMBERS', KEYS[1])) do " +
+          "if not current[key] then redis.call('ZREM', key, ARGV[1]) end " +
+          "end " +
+          "redis.call('DEL', KEYS[1]) " +
+          "for i = 2, #KEYS do " +
+          "redis.call('ZADD', KEYS[i], ARGV[2], ARGV[1]) " +
+          "redis.call('SADD', KEYS[1], KEYS[i]) " +
+          "end " +
+          "return 1",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final TripRepository tripRepository;
+  private final TripUtils tripUtils;
+
+  public TripTimeIndex(final StringRedisTemplate redisTemplate, final TripRepository tripRepository, final TripUtils tripUtils) {
+    this.redisTemplate = redisTemplate;
+    this.tripRepository = tripRepository;
+    this.tripUtils = tripUtils;
+  }
+
+  // Computed from epoch seconds so far-future sentinel times don't overflow
+  private static double getScore(final OffsetDateTime time) {
+    return time.toEpochSecond() * 1_000D + time.getNano() / 1_000_000;
+  }
+
+  private static List<UUID> toIds(final Set<String> members) {
+    return StreamUtils.safeStream(members)
+        .map(UUID::fromString)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Find IDs of live trips from or to a zone whose primary time constraint falls in [from, to)
+   */
+  public List<UUID> findTripIdsForZone(final UUID zoneId, final OffsetDateTime from, final OffsetDateTime to) {
+    return findTripIds(ZONE_KEY_PREFIX + zoneId, from, to);
+  }
+
+  /**
+   * Find IDs of live trips for a rider whose primary time constraint falls in [from, to)
+   */
+  public List<UUID> findTripIdsForRider(final UUID riderId, final OffsetDateTime from, final OffsetDateTime to) {
+    return findTripIds(RIDER_KEY_PREFIX + riderId, from, to);
+  }
+
+  /**
+   * Find IDs of all live trips whose primary time constraint falls in [from, to)
+   */
+  public List<UUID> findTripIds(final OffsetDateTime from, final OffsetDateTime to) {
+    return findTripIds(ALL_KEY, from, to);
+  }
+
+  /**
+   * Find up to a given number of IDs of live trips whose primary time constraint is before a time, earliest first
+   */
+  public List<UUID> findTripIdsBefore(final OffsetDateTime to, final int limit) {
+    return toIds(redisTemplate.opsForZSet().rangeByScore(ALL_KEY, Double.NEGATIVE_INFINITY, Math.nextDown(getScore(to)), 0L, limit));
+  }
+
+  /**
+   * Count live trips whose primary time constraint is before a time
+   */
+  public long countTripsBefore(final OffsetDateTime to) {
+    return ObjectUtils.getOrDefault(redisTemplate.opsForZSet().count(ALL_KEY, Double.NEGATIVE_INFINITY, Math.nextDown(getScore(to))), 0L);
+  }
+
+  private List<UUID> findTripIds(final String key, final OffsetDateTime from, final OffsetDateTime to) {
+    final var min = from != null ? getScore(from) : Double.NEGATIVE_INFINITY;
+    final var max = to != null ? Math.nextDown(getScore(to)) : Double.POSITIVE_INFINITY;
+
+    return toIds(redisTemplate.opsForZSet().rangeByScore(key, min, max));
+  }
+
+  private Set<String> getIndexKeys(final TripRequest tripRequest) {
+    final var keys = new HashSet<String>();
+    keys.add(ALL_KEY);
+
+    Optional.ofNullable(tripRequest.getFromZoneId())
+        .ifPresent(zoneId -> keys.add(ZONE_KEY_PREFIX + zoneId));
+    Optional.ofNullable(tripRequest.getToZoneId())
+        .ifPresent(zoneId -> keys.add(ZONE_KEY_PREFIX + zoneId));
+    Optional.ofNullable(tripRequest.getRiderId())
+        .ifPresent(riderId -> keys.add(RIDER_KEY_PREFIX + riderId));
+
+    return keys;
+  }
+
+  public void index(final TripRequest tripRequest) {
+    if (tripRequest == null || tripRequest.getId() == null) {
+      return;
+    }
+
+    moveMemberships(tripRequest.getId(), getIndexKeys(tripRequest), getScore(tripUtils.getPrimaryTimeConstraint(tripRequest)));
+  }
+
+  public void remove(final UUID tripId) {
+    if (tripId == null) {
+      return;
+    }
+
+    moveMemberships(tripId, Collections.emptySet(), 0D);
+  }
+
+  private void moveMemberships(final UUID tripId, final Set<String> keys, final double score) {
+    final var scriptKeys = new ArrayList<String>();
+    scriptKeys.add(MEMBERSHIP_KEY_PREFIX + tripId);
+    scriptKeys.addAll(keys);
+
+    redisTemplate.execute(MOVE_MEMBERSHIPS, scriptKeys, tripId.toString(), Double.toString(score));
+  }
+
+  /**
+   * Drop and rebuild the whole index from the trip repository
+   */
+  public void rebuild() {
+    clear();
+
+    final var count = StreamUtils.streamIterable(tripRepository.findAll())
+        .peek(this::index)
+        .count();
+
+    log.info("Rebuilt trip time index for " + count + " trip requests");
+  }
+
+  private void clear() {
+    RedisKeys.deleteMatching(redisTemplate, KEY_PREFIX + "*");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void initialize() {
+    if (!Boolean.TRUE.equals(redisTemplate.hasKey(ALL_KEY)) && tripRepository.count() > 0) {
+      rebuild();
+    }
+  }
+
+  @EventListener
+  public void onInsert(final KeyValueEvent.AfterInsertEvent<?> event) {
+    if (event.getPayload() instanceof TripRequest) {
+      index((TripRequest) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onUpdate(final KeyValueEvent.AfterUpdateEvent<?> event) {
+    if (event.getPayload() instanceof TripRequest) {
+      index((TripRequest) event.getPayload());
+    }
+  }
+
+  @EventListener
+  public void onDelete(final KeyValueEvent.AfterDeleteEvent<?> event) {
+    if (TripRequest.class.equals(event.getType()) && event.getKey() != null) {
+      remove(event.getKey() instanceof UUID ?
+          (UUID) event.getKey() :
+          UUID.fromString(event.getKey().toString()));
+    }
+  }
+
+  @EventListener
+  public void onDropKeySpace(final KeyValueEvent.AfterDropKeySpaceEvent<?> event) {
+    if (TripRequest.class.getName().equals(event.getKeyspace())) {
+      clear();
+    }
+  }
+}
@@ -1,36 +1,42 @@
 package com.rubyride.tripmanager.security;
 
+import com.google.common.collect.Iterators;
 import com.rubyride.model.*;
 import com.rubyride.tripmanager.exception.UserIdMissingException;
-import com.rubyride.tripmanager.repository.mongo.PartnerRepository;
 import com.rubyride.tripmanager.repository.mongo.PartnerTransportationRequestRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.redis.ShiftRepository;
 import com.rubyride.tripmanager.repository.redis.TripRepository;
 import com.rubyride.tripmanager.utility.SpringContext;
+import com.rubyride.tripmanager.utility.StreamUtils;
 import com.rubyride.tripmanager.utility.TripUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.time.OffsetDateTime;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component("accessControl")
 public class AccessControl {
+  // Number of streamed trip requests whose shift drivers are looked up together
+  private static final int TRIP_REQUEST_BATCH_SIZE = 500;
+
   private final SpringContext springContext;
-  private final PartnerRepository partnerRepository;
   private final PartnerTransportationRequestRepository partnerTransportationRequestRepository;
+  private final ReferenceDataCache referenceDataCache;
   private final ShiftRepository shiftRepository;
   private final TripRepository tripRepository;
   private final TripUtils tripUtils;
 
   @Autowired
-  public AccessControl(final SpringContext springContext, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final ShiftRepository shiftRepository, final TripRepository tripRepository, final PartnerRepository partnerRepository, final TripUtils tripUtils) {
+  public AccessControl(final SpringContext springContext, final PartnerTransportationRequestRepository partnerTransportationRequestRepository, final ShiftRepository shiftRepository, final TripRepository tripRepository, final ReferenceDataCache referenceDataCache, final TripUtils tripUtils) {
     this.springContext = springContext;
     this.partnerTransportationRequestRepository = partnerTransportationRequestRepository;
-    this.partnerRepository = partnerRepository;
+    this.referenceDataCache = referenceDataCache;
     this.shiftRepository = shiftRepository;
     this.tripRepository = tripRepository;
     this.tripUtils = tripUtils;
@@ -91,6 +97,70 @@ public class AccessControl {
             .orElse(false);
   }
 
+  /**
+   * Filter a stream of trip requests down to those the authenticated user can access as it is read. Roles and the
+   * authenticated user are resolved once, and the drivers of assigned shifts are looked up a batch of trips at a time,
+   * at most once per shift.
+   */
+  public Stream<TripRequest> filterAccessibleTripRequests(final Stream<TripRequest> tripRequests) {
+    if (canAccessTripRequests()) {
+      return tripRequests;
+    }
+
+    final var userId = springContext.getAuthenticatedUserId();
+
+    if (userId.isEmpty()) {
+      tripRequests.close();
+      return Stream.empty();
+    }
+
+    final var driverIds = new HashMap<UUID, Optional<UUID>>();
+
+    return StreamUtils.streamIterator(Iterators.partition(tripRequests.iterator(), TRIP_REQUEST_BATCH_SIZE))
+        .flatMap(batch -> filterAccessibleTripRequests(batch, userId.get(), driverIds).stream())
+        .onClose(tripRequests::close);
+  }
+
+  /**
+   * Filter already-loaded trip requests down to those the authenticated user can access, looking up the drivers of
+   * all their assigned shifts in a single round trip
+   */
+  public List<TripRequest> filterAccessibleTripRequests(final Iterable<TripRequest> tripRequests) {
+    if (canAccessTripRequests()) {
+      return StreamUtils.streamIterable(tripRequests)
+          .collect(Collectors.toList());
+    }
+
+    return springContext.getAuthenticatedUserId()
+        .map(userId -> filterAccessibleTripRequests(StreamUtils.streamIterable(tripRequests)
+            .collect(Collectors.toList()), userId, new HashMap<>()))
+        .orElse(Collections.emptyList());
+  }
+
+  /**
+   * @param driverIds drivers of the shifts looked up so far, by shift ID (empty if unassigned or not found), added to
+   *                  as the remaining shifts are looked up
+   */
+  private List<TripRequest> filterAccessibleTripRequests(final List<TripRequest> tripRequests, final UUID userId, final Map<UUID, Optional<UUID>> driverIds) {
+    final var shiftIds = tripRequests.stream()
+        .filter(tripRequest -> !userId.equals(tripRequest.getRiderId()))
+        .map(TripRequest::getShiftId)
+        .filter(Objects::nonNull)
+        .filter(shiftId -> !driverIds.containsKey(shiftId))
+        .collect(Collectors.toSet());
+
+    final var foundDriverIds = shiftRepository.findDriverIdsById(shiftIds);
+    shiftIds.forEach(shiftId -> driverIds.put(shiftId, Optional.ofNullable(foundDriverIds.get(shiftId))));
+
+    return tripRequests.stream()
+        .filter(tripRequest -> userId.equals(tripRequest.getRiderId()) ||
+            (tripRequest.getShiftId() != null &&
+                driverIds.get(tripRequest.getShiftId())
+                    .filter(userId::equals)
+                    .isPresent()))
+        .collect(Collectors.toList());
+  }
+
   public boolean canAccessShifts() {
     return CollectionUtils.containsAny(springContext.getAuthenticatedUserRoles(),
         List.of(Role.ADMIN, Role.DISPATCHER));
@@ -103,11 +173,48 @@ public class AccessControl {
             .map(Shift::getDriverId));
   }
 
+  /**
+   * Build a predicate for shift visibility, for filtering shifts that have already been loaded
+   */
+  public Predicate<Shift> getShiftAccessFilter() {
+    if (canAccessShifts()) {
+      return shift -> true;
+    }
+
+    final var userId = springContext.getAuthenticatedUserId();
+
+    return shift -> userId.isPresent() && userId.equals(Optional.ofNullable(shift.getDriverId()));
+  }
+
+  /**
+   * Narrow the drivers a shift query is for to those whose shifts the caller may see, so a query is never run over
+   * other drivers' shifts only to be filtered out afterwards
+   *
+   * @param driverIds drivers requested, or empty for all drivers
+   * @return drivers to query, or empty for all drivers; nothing if the caller may see none of the requested drivers
+   */
+  public Optional<List<UUID>> restrictShiftDriverIds(final List<UUID> driverIds) {
+    if (canAccessShifts()) {
+      return Optional.of(driverIds);
+    }
+
+    return springContext.getAuthenticatedUserId()
+        .filter(userId -> driverIds.isEmpty() || driverIds.contains(userId))
+        .map(List::of);
+  }
+
   public boolean canAccessLocations() {
     return CollectionUtils.containsAny(springContext.getAuthenticatedUserRoles(),
         List.of(Role.ADMIN, Role.DISPATCHER));
   }
 
+  // Only the driver, or a dispatcher, may report a driver's location; unlike reads this never needs a trip lookup
+  public boolean canSetLocation(final UUID driverId) {
+    return isUser(driverId) ||
+        CollectionUtils.containsAny(springContext.getAuthenticatedUserRoles(),
+            List.of(Role.ADMIN, Role.DISPATCHER));
+  }
+
   public boolean canAccessLocation(final UUID driverId) {
     if (CollectionUtils.containsAny(springContext.getAuthenticatedUserRoles(),
         List.of(Role.ADMIN, Role.DISPATCHER))) {
@@ -135,8 +242,7 @@ public class AccessControl {
       return false;
     }
 
-    return springContext.getAuthenticatedUser()
-        .map(User::getPartnerId)
+    return springContext.getAuthenticatedUserPartnerId()
         .equals(Optional.of(partnerId));
   }
 
@@ -151,10 +257,9 @@ public class AccessControl {
       return false;
     }
 
-    return partnerRepository.findByFacilitiesContains(transportationRequest.getFacilityId())
+    return referenceDataCache.findPartnerByFacility(transportationRequest.getFacilityId())
         .map(Partner::getId)
-        .equals(springContext.getAuthenticatedUser()
-            .map(User::getPartnerId));
+        .equals(springContext.getAuthenticatedUserPartnerId());
   }
 
   public boolean canCreatePartnerTransportationRequest(final PartnerTransportationRequest partnerTransportationRequest) {
@@ -166,7 +271,7 @@ public class AccessControl {
 
     return (CollectionUtils.containsAny(authenticatedRoles, List.of(Role.PARTNER, Role.PARTNER_CSR))) &&
         springContext.getAuthenticatedUser()
-            .flatMap(user -> partnerRepository.findByFacilitiesContains(partnerTransportationRequest.getFacilityId())
+            .flatMap(user -> referenceDataCache.findPartnerByFacility(partnerTransportationRequest.getFacilityId())
                 .map(partner -> partner.getId().equals(user.getPartnerId())))
             .orElse(false);
   }
@@ -182,7 +287,7 @@ public class AccessControl {
     return authenticatedRoles.contains(Role.PARTNER_CSR) &&
         partnerTransportationRequestRepository.findById(partnerTransportationRequestId)
             .flatMap(partnerTransportationRequest -> springContext.getAuthenticatedUser()
-                .flatMap(user -> partnerRepository.findByFacilitiesContains(partnerTransportationRequest.getFacilityId())
+                .flatMap(user -> referenceDataCache.findPartnerByFacility(partnerTransportationRequest.getFacilityId())
                     .map(partner -> partner.getId().equals(user.getPartnerId()))))
             .orElse(false);
   }
@@ -197,7 +302,7 @@ public class AccessControl {
     return authenticatedRoles.contains(Role.PARTNER_CSR) &&
         partnerTransportationRequestRepository.findById(partnerTransportationRequestId)
             .flatMap(partnerTransportationRequest -> springContext.getAuthenticatedUser()
-                .flatMap(user -> partnerRepository.findByFacilitiesContains(partnerTransportationRequest.getFacilityId())
+                .flatMap(user -> referenceDataCache.findPartnerByFacility(partnerTransportationRequest.getFacilityId())
                     .map(partner -> partner.getId().equals(user.getPartnerId()))))
             .orElse(false);
   }
@@ -32,7 +32,12 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
       SecurityContextHolder.getContext().setAuthentication(getAuthentication(request));
     }
 
-    chain.doFilter(request, response);
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      // Request threads are pooled, so don't leave this request's user cached for the next one
+      springContext.clearAuthenticatedUser();
+    }
   }
 
   private TokenAuthentication getTokenAuthentication() {
@@ -1,7 +1,10 @@
 package com.rubyride.tripmanager.security;
 
 import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.rubyride.model.User;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
 import com.rubyride.tripmanager.repository.redis.UserTokensRepository;
@@ -9,49 +12,136 @@ import com.rubyride.tripmanager.utility.StreamUtils;
 import com.rubyride.tripmanager.utility.TokenUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component
 public class TokenManager {
   private static final Logger log = LoggerFactory.getLogger(TokenManager.class);
 
+  // Redis channel used to tell every node to drop cached tokens for a user (message is the user ID)
+  private static final String INVALIDATION_CHANNEL = TokenManager.class.getName() + ":invalidate";
+
   private final UserRepository userRepository;
   private final UserTokensRepository tokenRepository;
+  private final StringRedisTemplate redisTemplate;
+
+  // Tokens that have been fully verified, so most requests authenticate without touching Mongo or Redis; entries
+  // are capped well below token lifetime so anything missed by invalidation is re-checked reasonably quickly
+  private final Cache<String, VerifiedToken> verifiedTokens = CacheBuilder.newBuilder()
+      .maximumSize(10_000L)
+      .expireAfterWrite(Duration.ofMinutes(5L))
+      .build();
+
+  // Bumped before cached tokens are invalidated, so a verification that raced with a revocation isn't left cached
+  private final AtomicLong invalidationGeneration = new AtomicLong();
 
-  public TokenManager(final UserRepository userRepository, final UserTokensRepository tokenRepository) {
+  public TokenManager(final UserRepository userRepository, final UserTokensRepository tokenRepository, final StringRedisTemplate redisTemplate, final RedisMessageListenerContainer redisMessageListenerContainer) {
     this.userRepository = userRepository;
     this.tokenRepository = tokenRepository;
+    this.redisTemplate = redisTemplate;
+
+    redisMessageListenerContainer.addMessageListener(
+        (message, pattern) -> invalidateCachedTokens(UUID.fromString(new String(message.getBody(), StandardCharsets.UTF_8))),
+        new ChannelTopic(INVALIDATION_CHANNEL));
   }
 
   public boolean isValid(final String token) {
+    return getVerifiedToken(token).isPresent();
+  }
+
+  /**
+   * Verify a token, using the local cache of previously verified tokens where possible
+   *
+   * @param token JWT, with or without the bearer prefix
+   * @return principal and authorities for the token if it is valid and has not been revoked
+   */
+  Optional<VerifiedToken> getVerifiedToken(final String token) {
+    if (token == null) {
+      return Optional.empty();
+    }
+
     final var strippedToken = token.replaceAll(SecurityConstants.TOKEN_PREFIX, "");
+    final var cachedToken = verifiedTokens.getIfPresent(strippedToken);
+
+    if (cachedToken != null) {
+      if (!cachedToken.isExpired()) {
+        return Optional.of(cachedToken);
+      }
+
+      verifiedTokens.invalidate(strippedToken);
+      return Optional.empty();
+    }
 
+    final var generation = invalidationGeneration.get();
+    final var verifiedToken = verifyToken(strippedToken);
+
+    verifiedToken.ifPresent(value -> {
+      verifiedTokens.put(strippedToken, value);
+
+      // Checked after the put: an invalidation that started since the token was read from Redis either removes the
+      // entry itself or is seen here
+      if (invalidationGeneration.get() != generation) {
+        verifiedTokens.invalidate(strippedToken);
+      }
+    });
+
+    return verifiedToken;
+  }
+
+  private Optional<VerifiedToken> verifyToken(final String strippedToken) {
     try {
-      final var userName = TokenUtils.getUserNameFromToken(strippedToken);
+      final var jwt = TokenUtils.verifyToken(strippedToken);
+      final var userName = jwt.getSubject();
 
       if (userName != null) {
         final var user = userRepository.findByUserName(userName);
 
-        if (user != null) {
-          return tokenRepository.findByUserId(user.getId())
-              .map(userTokens -> userTokens.getSavedTokens().contains(strippedToken))
-              .orElse(false);
+        if (user != null &&
+            tokenRepository.findByUserId(user.getId())
+                .map(userTokens -> userTokens.getSavedTokens().contains(strippedToken))
+                .orElse(false)) {
+          return Optional.of(new VerifiedToken(userName,
+              user.getId(),
+              StreamUtils.safeStream(user.getRoles())
+                  .collect(Collectors.toUnmodifiableList()),
+              Optional.ofNullable(jwt.getExpiresAt())
+                  .map(Date::toInstant)
+                  .orElse(null)));
         }
       }
     } catch (final JWTDecodeException e) {
       log.error("JWTDecodeException caught", e);
-      return false;
     } catch (final TokenExpiredException e) {
       log.error("TokenExpiredException caught", e);
-      return false;
+    } catch (final JWTVerificationException e) {
+      log.error("JWTVerificationException caught", e);
     }
 
-    return false;
+    return Optional.empty();
+  }
+
+  private void invalidateCachedTokens(final UUID userId) {
+    invalidationGeneration.incrementAndGet();
+    verifiedTokens.asMap().values()
+        .removeIf(verifiedToken -> userId.equals(verifiedToken.getUserId()));
+  }
+
+  // Drop cached tokens for a user on this node and, via pub/sub, on every other node
+  private void publishInvalidation(final UUID userId) {
+    invalidateCachedTokens(userId);
+    redisTemplate.convertAndSend(INVALIDATION_CHANNEL, userId.toString());
   }
 
   public void saveToken(final String token) {
@@ -73,6 +163,8 @@ public class TokenManager {
     tokenRepository.findByUserId(userId)
         .map(UserTokens::getId)
         .ifPresent(tokenRepository::deleteById);
+
+    publishInvalidation(userId);
   }
 
   public void revokeTokens(final String userName) {
@@ -86,6 +178,8 @@ public class TokenManager {
     tokenRepository.findById(userId)
         .map(userTokens -> userTokens.replaceToken(oldToken, newToken))
         .ifPresent(tokenRepository::save);
+
+    publishInvalidation(userId);
   }
 
   @Scheduled(cron = "0 0 5 1/1 * ?")
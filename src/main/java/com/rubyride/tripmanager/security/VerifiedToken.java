@@ -0,0 +1,40 @@
+package com.rubyride.tripmanager.security;
+
+import com.rubyride.model.Role;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Principal and authorities for a JWT whose signature, expiry and presence in the token store have been checked
+ */
+final class VerifiedToken {
+  private final String userName;
+  private final UUID userId;
+  private final List<Role> roles;
+  private final Instant expiresAt;
+
+  VerifiedToken(final String userName, final UUID userId, final List<Role> roles, final Instant expiresAt) {
+    this.userName = userName;
+    this.userId = userId;
+    this.roles = roles;
+    this.expiresAt = expiresAt;
+  }
+
+  String getUserName() {
+    return userName;
+  }
+
+  UUID getUserId() {
+    return userId;
+  }
+
+  List<Role> getRoles() {
+    return roles;
+  }
+
+  boolean isExpired() {
+    return expiresAt != null && !Instant.now().isBefore(expiresAt);
+  }
+}
@@ -1,32 +1,331 @@
 package com.rubyride.tripmanager.service;
 
-import com.rubyride.tripmanager.utility.AdminUtils;
+import com.rubyride.model.Shift;
+import com.rubyride.model.TripRequest;
+import com.rubyride.tripmanager.exception.EntityUpdateConflictException;
+import com.rubyride.tripmanager.repository.redis.ShiftRepository;
+import com.rubyride.tripmanager.repository.redis.ShiftTimeIndex;
+import com.rubyride.tripmanager.repository.redis.TripRepository;
+import com.rubyride.tripmanager.repository.redis.TripTimeIndex;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.utility.TripUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Moves shifts and trip requests older than a week from Redis to the Mongo archive.
+ * <p>
+ * Work runs in small slices rather than one nightly scan. Each slice archives up to a fixed number of batches, taking
+ * the earliest eligible entities from the shift and trip time indexes. Each batch is upserted into Mongo with a single
+ * bulk write and then removed from Redis with pipelined deletes. An entity is only removed from its index once it has
+ * been deleted, so the indexes themselves record how far archiving has got. A slice that fails part way through is
+ * picked up again by the next one, and at worst re-archives the batch it was working on, which is idempotent. Trip
+ * counts for the dates of archived trips are frozen into Mongo at the end of each slice.
+ * <p>
+ * The cut-off time and running totals of the current pass are checkpointed in Redis, so a restarted instance
+ * finishes the pass it was working on. A short lease stops several instances from archiving at once.
+ */
 @Component
 public class ArchiveService {
   private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
 
-  private final AdminUtils adminUtils;
+  private static final String CHECKPOINT_KEY = "archive:checkpoint";
+  private static final String LOCK_KEY = "archive:lock";
 
-  public ArchiveService(final AdminUtils adminUtils) {
-    this.adminUtils = adminUtils;
+  private static final int BATCH_SIZE = 250;
+  private static final Duration LOCK_LEASE = Duration.ofMinutes(5L);
+  private static final Duration LOCK_WAIT = Duration.ofMinutes(1L);
+  private static final Duration LOCK_POLL_INTERVAL = Duration.ofSeconds(1L);
+
+  // Extend the lease only if it is still held by this run, so a run whose lease lapsed can't take it back from another
+  private static final RedisScript<Long> EXTEND_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('PEXPIRE', KEYS[1], ARGV[2])",
+      Long.class);
+
+  // Release the lease only if it is still held by this run
+  private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('DEL', KEYS[1])",
+      Long.class);
+
+  private final ShiftRepository shiftRepository;
+  private final TripRepository tripRepository;
+  private final ShiftTimeIndex shiftTimeIndex;
+  private final TripTimeIndex tripTimeIndex;
+  private final TripCountService tripCountService;
+  private final MongoTemplate mongoTemplate;
+  private final StringRedisTemplate redisTemplate;
+  private final TripUtils tripUtils;
+
+  private final Counter archivedShiftCounter;
+  private final Counter archivedTripCounter;
+  private final AtomicLong shiftBacklog;
+  private final AtomicLong tripBacklog;
+
+  @Value("${ARCHIVE_BATCHES_PER_RUN:20}")
+  private int batchesPerRun;
+
+  public ArchiveService(final ShiftRepository shiftRepository, final TripRepository tripRepository, final ShiftTimeIndex shiftTimeIndex, final TripTimeIndex tripTimeIndex, final TripCountService tripCountService, final MongoTemplate mongoTemplate, final StringRedisTemplate redisTemplate, final TripUtils tripUtils, final MeterRegistry meterRegistry) {
+    this.shiftRepository = shiftRepository;
+    this.tripRepository = tripRepository;
+    this.shiftTimeIndex = shiftTimeIndex;
+    this.tripTimeIndex = tripTimeIndex;
+    this.tripCountService = tripCountService;
+    this.mongoTemplate = mongoTemplate;
+    this.redisTemplate = redisTemplate;
+    this.tripUtils = tripUtils;
+
+    this.archivedShiftCounter = meterRegistry.counter("tripmanager.archive.archived", "type", "shift");
+    this.archivedTripCounter = meterRegistry.counter("tripmanager.archive.archived", "type", "trip");
+    this.shiftBacklog = meterRegistry.gauge("tripmanager.archive.backlog", Tags.of("type", "shift"), new AtomicLong());
+    this.tripBacklog = meterRegistry.gauge("tripmanager.archive.backlog", Tags.of("type", "trip"), new AtomicLong());
   }
 
-  @Scheduled(cron = "0 0 5 1/1 * ?")
+  @Scheduled(fixedDelayString = "${ARCHIVE_INTERVAL_MILLIS:300000}", initialDelayString = "${ARCHIVE_INTERVAL_MILLIS:300000}")
   public void archiveShiftsAndTrips() {
-    final var thresholdTime = OffsetDateTime.now()
+    final var locked = tryWithLock(lockToken -> {
+      final var cutoff = getCheckpointedCutoff()
+          .orElseGet(this::startPass);
+
+      if (archive(cutoff, batchesPerRun, true, lockToken)) {
+        finishPass(cutoff);
+      }
+    });
+
+    if (!locked) {
+      log.info("Archiving is already in progress elsewhere");
+    }
+  }
+
+  /**
+   * Archive every shift and trip request older than a given time, without waiting for the scheduled passes. Waits
+   * briefly for a slice already running elsewhere to finish.
+   *
+   * @throws EntityUpdateConflictException if archiving is still in progress elsewhere, or the lease on it was lost
+   *                                       before everything was archived
+   */
+  public void archiveShiftsAndTrips(final OffsetDateTime time) {
+    log.info("Archiving shifts and trip requests older than " + DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time));
+
+    final var deadline = System.nanoTime() + LOCK_WAIT.toNanos();
+
+    while (!tryWithLock(lockToken -> {
+      if (!archive(time, Integer.MAX_VALUE, false, lockToken)) {
+        throw new EntityUpdateConflictException("Lost the archiving lease before everything was archived");
+      }
+    })) {
+      if (System.nanoTime() >= deadline) {
+        throw new EntityUpdateConflictException("Archiving is already in progress elsewhere");
+      }
+
+      try {
+        Thread.sleep(LOCK_POLL_INTERVAL.toMillis());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new EntityUpdateConflictException("Interrupted while waiting for archiving in progress elsewhere");
+      }
+    }
+  }
+
+  /**
+   * Run a task holding the archiving lease, if no other run holds it
+   *
+   * @param task Given the lease's token
+   * @return whether the lease was acquired and the task run
+   */
+  private boolean tryWithLock(final Consumer<String> task) {
+    final var token = UUID.randomUUID().toString();
+
+    if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, LOCK_LEASE))) {
+      return false;
+    }
+
+    try {
+      task.accept(token);
+    } finally {
+      redisTemplate.execute(RELEASE_LOCK, List.of(LOCK_KEY), token);
+    }
+
+    return true;
+  }
+
+  private boolean extendLock(final String token) {
+    final var extended = Long.valueOf(1L).equals(redisTemplate.execute(EXTEND_LOCK, List.of(LOCK_KEY), token, Long.toString(LOCK_LEASE.toMillis())));
+
+    if (!extended) {
+      log.warn("Lost the archiving lease, stopping this run");
+    }
+
+    return extended;
+  }
+
+  private Optional<OffsetDateTime> getCheckpointedCutoff() {
+    return Optional.ofNullable(redisTemplate.opsForHash().get(CHECKPOINT_KEY, "cutoff"))
+        .map(Object::toString)
+        .map(OffsetDateTime::parse);
+  }
+
+  private OffsetDateTime startPass() {
+    final var cutoff = OffsetDateTime.now()
         .minus(1, ChronoUnit.WEEKS);
 
-    log.info("Archiving shifts and trip requests older than " + DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(thresholdTime));
+    redisTemplate.opsForHash().putAll(CHECKPOINT_KEY, Map.of(
+        "cutoff", DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(cutoff),
+        "startedAt", DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(OffsetDateTime.now()),
+        "shifts", "0",
+        "trips", "0"));
+
+    return cutoff;
+  }
+
+  private void finishPass(final OffsetDateTime cutoff) {
+    final var checkpoint = redisTemplate.opsForHash().entries(CHECKPOINT_KEY);
+
+    log.info("Archived " + checkpoint.get("shifts") + " shifts and " + checkpoint.get("trips") +
+        " trip requests older than " + DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(cutoff) +
+        ", in a pass started at " + checkpoint.get("startedAt"));
+
+    redisTemplate.delete(CHECKPOINT_KEY);
+  }
+
+  /**
+   * Archive batches of shifts and then trip requests older than a cut-off
+   *
+   * @return whether everything older than the cut-off has been archived
+   */
+  private boolean archive(final OffsetDateTime cutoff, final int maxBatches, final boolean checkpointed, final String lockToken) {
+    var batches = 0;
+    var drained = false;
+    var leased = true;
+
+    while (!drained && leased && batches < maxBatches) {
+      final var shiftIds = shiftTimeIndex.findShiftIdsEndingBefore(cutoff, BATCH_SIZE);
+
+      if (shiftIds.isEmpty()) {
+        drained = true;
+      } else {
+        record("shifts", archiveShifts(shiftIds, cutoff), archivedShiftCounter, checkpointed);
+        batches++;
+        leased = extendLock(lockToken);
+      }
+    }
+
+    drained = false;
+
+    while (!drained && leased && batches < maxBatches) {
+      final var tripIds = tripTimeIndex.findTripIdsBefore(cutoff, BATCH_SIZE);
+
+      if (tripIds.isEmpty()) {
+        drained = true;
+      } else {
+        record("trips", archiveTrips(tripIds, cutoff), archivedTripCounter, checkpointed);
+        batches++;
+        leased = extendLock(lockToken);
+      }
+    }
+
+    tripCountService.freezeStaleBuckets();
+
+    shiftBacklog.set(shiftTimeIndex.countShiftsEndingBefore(cutoff));
+    tripBacklog.set(tripTimeIndex.countTripsBefore(cutoff));
+
+    return drained;
+  }
+
+  private void record(final String field, final int count, final Counter counter, final boolean checkpointed) {
+    counter.increment(count);
+
+    if (checkpointed) {
+      redisTemplate.opsForHash().increment(CHECKPOINT_KEY, field, count);
+    }
+  }
+
+  private int archiveShifts(final List<UUID> shiftIds, final OffsetDateTime cutoff) {
+    final var shifts = StreamUtils.streamIterable(shiftRepository.findAllById(shiftIds))
+        .collect(Collectors.toMap(Shift::getId, Function.identity()));
+
+    // Drop index entries that no longer match a shift that ended before the cut-off, so they aren't picked up again
+    shiftIds.stream()
+        .filter(shiftId -> !shifts.containsKey(shiftId))
+        .forEach(shiftTimeIndex::remove);
+
+    final var eligibleShifts = new ArrayList<Shift>();
+
+    shifts.values().forEach(shift -> {
+      if (shift.getEndTime() != null && shift.getEndTime().isBefore(cutoff)) {
+        eligibleShifts.add(shift);
+      } else {
+        shiftTimeIndex.index(shift);
+      }
+    });
+
+    if (!eligibleShifts.isEmpty()) {
+      upsertArchive(Shift.class, eligibleShifts, Shift::getId);
+      shiftRepository.deleteAll(eligibleShifts);
+    }
+
+    return eligibleShifts.size();
+  }
+
+  private int archiveTrips(final List<UUID> tripIds, final OffsetDateTime cutoff) {
+    final var tripRequests = StreamUtils.streamIterable(tripRepository.findAllById(tripIds))
+        .collect(Collectors.toMap(TripRequest::getId, Function.identity()));
+
+    // Drop index entries that no longer match a trip before the cut-off, so they aren't picked up again
+    tripIds.stream()
+        .filter(tripId -> !tripRequests.containsKey(tripId))
+        .forEach(tripTimeIndex::remove);
+
+    final var eligibleTripRequests = new ArrayList<TripRequest>();
+
+    tripRequests.values().forEach(tripRequest -> {
+      if (tripUtils.getPrimaryTimeConstraint(tripRequest).isBefore(cutoff)) {
+        eligibleTripRequests.add(tripRequest);
+      } else {
+        tripTimeIndex.index(tripRequest);
+      }
+    });
+
+    if (!eligibleTripRequests.isEmpty()) {
+      tripCountService.markStale(eligibleTripRequests);
+      upsertArchive(TripRequest.class, eligibleTripRequests, TripRequest::getId);
+      tripRepository.deleteAll(eligibleTripRequests);
+    }
+
+    return eligibleTripRequests.size();
+  }
 
-    adminUtils.archiveShiftsAndTrips(thresholdTime);
+  // Replacing rather than just inserting keeps a retried batch from failing on documents archived the first time
+  private <T> void upsertArchive(final Class<T> type, final List<T> entities, final Function<T, UUID> idGetter) {
+    mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, type)
+        .remove(Query.query(Criteria.where("id").in(entities.stream()
+            .map(idGetter)
+            .collect(Collectors.toList()))))
+        .insert(entities)
+        .execute();
   }
 }
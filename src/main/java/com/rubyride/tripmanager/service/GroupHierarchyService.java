@@ -0,0 +1,249 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.model.Group;
+import com.rubyride.tripmanager.exception.CyclicGroupsException;
+import com.rubyride.tripmanager.exception.EntityUpdateConflictException;
+import com.rubyride.tripmanager.model.GroupClosure;
+import com.rubyride.tripmanager.repository.mongo.GroupClosureRepository;
+import com.rubyride.tripmanager.repository.mongo.GroupRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Group hierarchy, materialized as a {@link GroupClosure} per group so that a group's subtree, or the zones a set of
+ * groups take effect in, can be read with a single indexed query instead of walking the tree a level at a time.
+ * <p>
+ * Closures are kept up to date by the group API as groups are added, moved and deleted, and a move that would make a
+ * group its own ancestor is refused there. Those writes hold a lease shared by every instance (see
+ * {@link #withLock(Supplier)}), so the closures a move is checked against can't be changed by another move before it
+ * is saved; {@link #refresh(UUID)} checks again before writing closures all the same. They are rebuilt from the
+ * groups at startup, so a change to the groups that didn't go through the API is picked up.
+ */
+@Service
+public class GroupHierarchyService {
+  private static final Logger log = LoggerFactory.getLogger(GroupHierarchyService.class);
+
+  private static final String LOCK_KEY = "groupHierarchy:lock";
+  private static final Duration LOCK_LEASE = Duration.ofSeconds(30L);
+  private static final Duration LOCK_WAIT = Duration.ofSeconds(10L);
+  private static final Duration LOCK_POLL_INTERVAL = Duration.ofMillis(50L);
+
+  // Release the lease only if it is still held by this writer
+  private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('DEL', KEYS[1])",
+      Long.class);
+
+  private final GroupClosureRepository groupClosureRepository;
+  private final GroupRepository groupRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final StringRedisTemplate redisTemplate;
+
+  public GroupHierarchyService(final GroupClosureRepository groupClosureRepository, final GroupRepository groupRepository, final ReferenceDataCache referenceDataCache, final StringRedisTemplate redisTemplate) {
+    this.groupClosureRepository = groupClosureRepository;
+    this.groupRepository = groupRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.redisTemplate = redisTemplate;
+  }
+
+  /**
+   * Make a change to the group hierarchy - adding, moving or deleting groups and refreshing their closures - while no
+   * other instance is changing it
+   *
+   * @throws EntityUpdateConflictException if another change is still in progress after a short wait
+   */
+  public <T> T withLock(final Supplier<T> change) {
+    final var token = UUID.randomUUID().toString();
+    final var deadline = System.nanoTime() + LOCK_WAIT.toNanos();
+
+    while (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, LOCK_LEASE))) {
+      if (System.nanoTime() >= deadline) {
+        throw new EntityUpdateConflictException("Group hierarchy is being changed elsewhere");
+      }
+
+      try {
+        Thread.sleep(LOCK_POLL_INTERVAL.toMillis());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new EntityUpdateConflictException("Interrupted while waiting to change the group hierarchy");
+      }
+    }
+
+    try {
+      return change.get();
+    } finally {
+      redisTemplate.execute(RELEASE_LOCK, List.of(LOCK_KEY), token);
+    }
+  }
+
+  /**
+   * Make sure a group can be given a parent without creating a cycle
+   *
+   * @throws CyclicGroupsException if the parent is the group itself or one of its descendants
+   */
+  public void checkParent(final UUID groupId, final UUID parentGroupId) {
+    if (parentGroupId == null) {
+      return;
+    }
+
+    if (groupId.equals(parentGroupId) ||
+        groupClosureRepository.findById(parentGroupId)
+            .map(parent -> parent.getAncestorIds().contains(groupId))
+            .orElse(false)) {
+      throw new CyclicGroupsException("Group can't be a descendant of itself");
+    }
+  }
+
+  /**
+   * Recompute the closure of a group that was added, moved or deleted, along with those of its descendants
+   *
+   * @throws CyclicGroupsException if the group's parent is the group itself or one of its descendants; no closures are
+   *                               changed
+   */
+  public void refresh(final UUID groupId) {
+    final var group = groupRepository.findById(groupId);
+
+    if (group.isEmpty()) {
+      groupClosureRepository.deleteById(groupId);
+      return;
+    }
+
+    final var parent = Optional.ofNullable(group.get().getParentGroupId())
+        .flatMap(groupClosureRepository::findById)
+        .orElse(null);
+
+    if (parent != null && (groupId.equals(parent.getId()) || parent.getAncestorIds().contains(groupId))) {
+      log.error("Group " + groupId + " was moved below itself");
+      throw new CyclicGroupsException("Group can't be a descendant of itself");
+    }
+
+    final var descendants = StreamUtils.streamIterable(groupRepository.findAllById(
+            groupClosureRepository.findByAncestorIdsContainingAndDepthLessThanEqual(groupId, Integer.MAX_VALUE).stream()
+                .map(GroupClosure::getId)
+                .collect(Collectors.toList())))
+        .collect(Collectors.toList());
+
+    final var closures = new LinkedHashMap<UUID, GroupClosure>();
+    closures.put(groupId, GroupClosure.of(group.get(), parent));
+
+    addDescendantClosures(closures, descendants);
+
+    groupClosureRepository.saveAll(closures.values());
+  }
+
+  // Work down from the closures already computed, a level at a time
+  private static void addDescendantClosures(final Map<UUID, GroupClosure> closures, final Collection<Group> groups) {
+    final var childrenByParentId = groups.stream()
+        .filter(group -> group.getParentGroupId() != null)
+        .collect(Collectors.groupingBy(Group::getParentGroupId));
+
+    final var pending = new ArrayDeque<>(closures.keySet());
+
+    while (!pending.isEmpty()) {
+      final var parent = closures.get(pending.remove());
+
+      childrenByParentId.getOrDefault(parent.getId(), Collections.emptyList()).stream()
+          .filter(child -> !closures.containsKey(child.getId()))
+          .forEach(child -> {
+            closures.put(child.getId(), GroupClosure.of(child, parent));
+            pending.add(child.getId());
+          });
+    }
+  }
+
+  /**
+   * Find a group's descendants
+   *
+   * @param maxDepth how many levels below the group to look
+   */
+  public List<Group> getDescendants(final GroupClosure closure, final int maxDepth) {
+    final var ids = groupClosureRepository.findByAncestorIdsContainingAndDepthLessThanEqual(closure.getId(),
+            (int) Math.min(Integer.MAX_VALUE, (long) closure.getDepth() + maxDepth)).stream()
+        .map(GroupClosure::getId)
+        .collect(Collectors.toList());
+
+    final var groups = referenceDataCache.getGroups().findAllById(ids);
+
+    return ids.stream()
+        .map(groups::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  public Optional<GroupClosure> getClosure(final UUID groupId) {
+    return groupClosureRepository.findById(groupId);
+  }
+
+  /**
+   * Find the zones a set of groups take effect in
+   *
+   * @return effective origin zone IDs; null for a group with none
+   */
+  public Set<UUID> getOriginZoneIds(final Collection<UUID> groupIds) {
+    return StreamUtils.streamIterable(groupClosureRepository.findAllById(groupIds))
+        .map(GroupClosure::getOriginZoneId)
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Rebuild every closure from the groups. A cycle left over from before closures were kept is broken where it is
+   * found, and reported.
+   */
+  public void rebuild() {
+    final var groups = groupRepository.findAll().stream()
+        .collect(Collectors.toMap(Group::getId, Function.identity()));
+
+    final var closures = new LinkedHashMap<UUID, GroupClosure>();
+
+    groups.values().stream()
+        .filter(group -> group.getParentGroupId() == null || !groups.containsKey(group.getParentGroupId()))
+        .forEach(root -> closures.put(root.getId(), GroupClosure.of(root, null)));
+
+    addDescendantClosures(closures, groups.values());
+
+    // Anything not reached from a root is in or below a cycle; treat the first group found in each as a root
+    groups.values().stream()
+        .filter(group -> !closures.containsKey(group.getId()))
+        .forEach(group -> {
+          log.error("Cycle in group hierarchy at group " + group.getId());
+
+          final var cycleClosures = new LinkedHashMap<UUID, GroupClosure>();
+          cycleClosures.put(group.getId(), GroupClosure.of(group, null));
+          addDescendantClosures(cycleClosures, groups.values());
+          cycleClosures.forEach(closures::putIfAbsent);
+        });
+
+    groupClosureRepository.saveAll(closures.values());
+    groupClosureRepository.deleteAll(groupClosureRepository.findAll().stream()
+        .filter(closure -> !groups.containsKey(closure.getId()))
+        .collect(Collectors.toList()));
+
+    log.info("Rebuilt group hierarchy of " + closures.size() + " groups");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void initialize() {
+    try {
+      withLock(() -> {
+        rebuild();
+        return null;
+      });
+    } catch (final EntityUpdateConflictException e) {
+      log.info("Group hierarchy is being rebuilt or changed elsewhere, not rebuilding it here");
+    }
+  }
+}
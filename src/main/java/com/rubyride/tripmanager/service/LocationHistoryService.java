@@ -0,0 +1,260 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.tripmanager.event.DriverLocationSetEvent;
+import com.rubyride.tripmanager.model.LocationTrackChunk;
+import com.rubyride.tripmanager.model.TrackPoint;
+import com.rubyride.tripmanager.repository.mongo.LocationTrackChunkRepository;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.utility.TrackCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.Record;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only history of accepted driver locations.
+ * <p>
+ * Points are queued in memory as they are accepted and appended in batches to a Redis stream per driver and (UTC)
+ * day, so recording a location adds nothing to the ingest path but a queue insert. Once a day is over its streams are
+ * compacted into Mongo as {@link LocationTrackChunk}s encoded by {@link TrackCodec}. Chunk IDs are derived from the
+ * driver and the time of their first point, so a compaction that is retried after failing part way overwrites rather
+ * than duplicates its chunks. Compaction only removes the stream entries it read, so points flushed to a day's stream
+ * while it is being compacted are left for the next compaction.
+ * <p>
+ * Points whose flush fails are queued again. A flush that failed part way can append a point twice, so points are
+ * deduplicated by time when they are read.
+ */
+@Service
+public class LocationHistoryService {
+  private static final Logger log = LoggerFactory.getLogger(LocationHistoryService.class);
+
+  private static final String KEY_PREFIX = "locationHistory:";
+  private static final String STREAMS_KEY = KEY_PREFIX + "streams";
+  private static final String LOCK_KEY = KEY_PREFIX + "compactionLock";
+
+  private static final int CHUNK_SIZE = 1_024;
+  private static final Duration STREAM_TTL = Duration.ofDays(7L);
+  private static final Duration LOCK_LEASE = Duration.ofMinutes(5L);
+
+  // Delete a stream (KEYS[1]) and drop it from the set of streams (KEYS[2]) if nothing has been appended since it was
+  // compacted
+  private static final RedisScript<Long> REMOVE_IF_EMPTY = new DefaultRedisScript<>(
+      "if redis.call('XLEN', KEYS[1]) > 0 then return 0 end " +
+          "redis.call('DEL', KEYS[1]) " +
+          "return redis.call('SREM', KEYS[2], KEYS[1])",
+      Long.class);
+
+  // Release the lease only if it is still held by this run
+  private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('DEL', KEYS[1])",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final LocationTrackChunkRepository locationTrackChunkRepository;
+  private final Queue<PendingPoint> pendingPoints = new ConcurrentLinkedQueue<>();
+
+  public LocationHistoryService(final StringRedisTemplate redisTemplate, final LocationTrackChunkRepository locationTrackChunkRepository) {
+    this.redisTemplate = redisTemplate;
+    this.locationTrackChunkRepository = locationTrackChunkRepository;
+  }
+
+  private static String getStreamKey(final UUID driverId, final LocalDate date) {
+    return KEY_PREFIX + driverId + ":" + date;
+  }
+
+  @EventListener(DriverLocationSetEvent.class)
+  public void recordLocation(final DriverLocationSetEvent event) {
+    pendingPoints.add(new PendingPoint(event.getDriverId(), new TrackPoint(event.getLocation().getLatitude(),
+        event.getLocation().getLongitude(),
+        OffsetDateTime.now(ZoneOffset.UTC))));
+  }
+
+  /**
+   * Append queued points to their streams
+   */
+  @Scheduled(fixedDelayString = "${LOCATION_HISTORY_FLUSH_MILLIS:1000}")
+  public void flush() {
+    final var points = new ArrayList<PendingPoint>();
+
+    PendingPoint point;
+    while ((point = pendingPoints.poll()) != null) {
+      points.add(point);
+    }
+
+    if (points.isEmpty()) {
+      return;
+    }
+
+    try {
+      append(points);
+    } catch (final RuntimeException e) {
+      log.warn("Unable to append " + points.size() + " points to location history, will retry", e);
+      pendingPoints.addAll(points);
+    }
+  }
+
+  private void append(final List<PendingPoint> points) {
+    final var keys = new HashSet<String>();
+
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      final var stringConnection = (StringRedisConnection) connection;
+
+      points.forEach(pendingPoint -> {
+        final var key = getStreamKey(pendingPoint.driverId, pendingPoint.point.getTime().toLocalDate());
+        keys.add(key);
+
+        stringConnection.xAdd(key, Map.of(
+            "t", String.valueOf(pendingPoint.point.getTime().toInstant().toEpochMilli()),
+            "lat", String.valueOf(pendingPoint.point.getLatitude()),
+            "lng", String.valueOf(pendingPoint.point.getLongitude())));
+      });
+
+      keys.forEach(key -> stringConnection.expire(key, STREAM_TTL.toSeconds()));
+      stringConnection.sAdd(STREAMS_KEY, keys.toArray(new String[0]));
+
+      return null;
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    flush();
+  }
+
+  /**
+   * Compact the streams of days that are over into Mongo
+   */
+  @Scheduled(fixedDelayString = "${LOCATION_HISTORY_COMPACT_MILLIS:600000}", initialDelayString = "${LOCATION_HISTORY_COMPACT_MILLIS:600000}")
+  public void compact() {
+    final var token = UUID.randomUUID().toString();
+
+    if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, LOCK_LEASE))) {
+      return;
+    }
+
+    try {
+      final var today = LocalDate.now(ZoneOffset.UTC);
+
+      StreamUtils.safeStream(redisTemplate.opsForSet().members(STREAMS_KEY))
+          .filter(key -> LocalDate.parse(key.substring(key.lastIndexOf(':') + 1)).isBefore(today))
+          .forEach(key -> {
+            try {
+              compactStream(key);
+              redisTemplate.expire(LOCK_KEY, LOCK_LEASE);
+            } catch (final RuntimeException e) {
+              log.error("Unable to compact location history " + key, e);
+            }
+          });
+    } finally {
+      redisTemplate.execute(RELEASE_LOCK, List.of(LOCK_KEY), token);
+    }
+  }
+
+  private void compactStream(final String key) {
+    final var driverId = UUID.fromString(key.substring(KEY_PREFIX.length(), key.lastIndexOf(':')));
+    final var records = readRecords(key);
+    final var points = toTrackPoints(records);
+
+    final var chunks = new ArrayList<LocationTrackChunk>();
+
+    for (var start = 0; start < points.size(); start += CHUNK_SIZE) {
+      final var chunkPoints = points.subList(start, Math.min(points.size(), start + CHUNK_SIZE));
+
+      chunks.add(new LocationTrackChunk(driverId + ":" + chunkPoints.get(0).getTime().toInstant().toEpochMilli(),
+          driverId,
+          chunkPoints.get(0).getTime(),
+          chunkPoints.get(chunkPoints.size() - 1).getTime(),
+          chunkPoints.size(),
+          TrackCodec.encode(chunkPoints)));
+    }
+
+    locationTrackChunkRepository.saveAll(chunks);
+
+    for (var start = 0; start < records.size(); start += CHUNK_SIZE) {
+      redisTemplate.opsForStream().delete(key, records.subList(start, Math.min(records.size(), start + CHUNK_SIZE)).stream()
+          .map(Record::getId)
+          .toArray(RecordId[]::new));
+    }
+
+    redisTemplate.execute(REMOVE_IF_EMPTY, List.of(key, STREAMS_KEY));
+  }
+
+  private List<MapRecord<String, String, String>> readRecords(final String key) {
+    return Optional.ofNullable(redisTemplate.<String, String>opsForStream().range(key, Range.unbounded()))
+        .orElse(Collections.emptyList());
+  }
+
+  // In time order, with points appended more than once by a retried flush dropped
+  private static List<TrackPoint> toTrackPoints(final List<MapRecord<String, String, String>> records) {
+    final var points = new TreeMap<Instant, TrackPoint>();
+
+    records.forEach(record -> {
+      final var time = Instant.ofEpochMilli(Long.parseLong(record.getValue().get("t")));
+
+      points.putIfAbsent(time, new TrackPoint(Double.parseDouble(record.getValue().get("lat")),
+          Double.parseDouble(record.getValue().get("lng")),
+          time.atOffset(ZoneOffset.UTC)));
+    });
+
+    return new ArrayList<>(points.values());
+  }
+
+  private List<TrackPoint> readStream(final String key) {
+    return toTrackPoints(readRecords(key));
+  }
+
+  /**
+   * Find the points a driver reported between two times, in time order
+   */
+  public List<TrackPoint> getTrack(final UUID driverId, final OffsetDateTime from, final OffsetDateTime to) {
+    if (from.isAfter(to)) {
+      return Collections.emptyList();
+    }
+
+    // Keyed by time, since a day whose compaction didn't finish can be both compacted and still in Redis
+    final var points = new TreeMap<Instant, TrackPoint>();
+
+    locationTrackChunkRepository.findByDriverIdAndStartTimeLessThanEqualAndEndTimeGreaterThanEqualOrderByStartTime(driverId, to, from)
+        .forEach(chunk -> TrackCodec.decode(chunk.getData())
+            .forEach(point -> points.put(point.getTime().toInstant(), point)));
+
+    for (var date = from.atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+         !date.isAfter(to.atZoneSameInstant(ZoneOffset.UTC).toLocalDate());
+         date = date.plusDays(1L)) {
+      readStream(getStreamKey(driverId, date))
+          .forEach(point -> points.put(point.getTime().toInstant(), point));
+    }
+
+    return points.subMap(from.toInstant(), true, to.toInstant(), true)
+        .values()
+        .stream()
+        .collect(Collectors.toList());
+  }
+
+  private static final class PendingPoint {
+    private final UUID driverId;
+    private final TrackPoint point;
+
+    private PendingPoint(final UUID driverId, final TrackPoint point) {
+      this.driverId = driverId;
+      this.point = point;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.rubyride.tripmanager.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rubyride.model.LatitudeLongitude;
+import com.rubyride.tripmanager.exception.EntityNotFoundException;
+import com.rubyride.tripmanager.repository.mongo.DriverRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Entry point for location reports from drivers' devices. Devices report every few seconds whether or not they have
+ * moved, so reports are thinned out before they reach {@link LocationService}: a report is dropped if it arrives too
+ * soon after the last one accepted for the driver, or if the driver has barely moved and the last accepted report is
+ * still recent. The check and the record of an accepted report are one atomic step per driver, so concurrent reports
+ * can't both be accepted. Users found to be drivers are cached, so a report doesn't need a database lookup; users who
+ * aren't are looked up again, so a driver can report as soon as they are registered.
+ */
+@Service
+public class LocationIngestService {
+  private static final double EARTH_RADIUS_METERS = 6_371_000D;
+
+  private final DriverRepository driverRepository;
+  private final LocationService locationService;
+
+  // Only drivers that were found are cached
+  private final Cache<UUID, Boolean> knownDrivers = CacheBuilder.newBuilder()
+      .expireAfterWrite(Duration.ofMinutes(5L))
+      .maximumSize(10_000L)
+      .build();
+
+  private final Cache<UUID, AcceptedLocation> lastAccepted = CacheBuilder.newBuilder()
+      .expireAfterAccess(Duration.ofMinutes(30L))
+      .build();
+
+  private final Counter acceptedCounter;
+  private final Counter tooSoonCounter;
+  private final Counter notMovedCounter;
+  private final Counter unknownDriverCounter;
+
+  @Value("${LOCATION_MIN_INTERVAL_MILLIS:2000}")
+  private long minIntervalMillis;
+
+  @Value("${LOCATION_MIN_DISTANCE_METERS:15}")
+  private double minDistanceMeters;
+
+  // Longest a driver's location goes without an update while they stand still
+  @Value("${LOCATION_MAX_INTERVAL_MILLIS:60000}")
+  private long maxIntervalMillis;
+
+  public LocationIngestService(final DriverRepository driverRepository, final LocationService locationService, final MeterRegistry meterRegistry) {
+    this.driverRepository = driverRepository;
+    this.locationService = locationService;
+
+    this.acceptedCounter = meterRegistry.counter("tripmanager.location.updates", "result", "accepted");
+    this.tooSoonCounter = meterRegistry.counter("tripmanager.location.updates", "result", "too_soon");
+    this.notMovedCounter = meterRegistry.counter("tripmanager.location.updates", "result", "not_moved");
+    this.unknownDriverCounter = meterRegistry.counter("tripmanager.location.updates", "result", "unknown_driver");
+  }
+
+  // Haversine distance
+  private static double getDistanceMeters(final LatitudeLongitude a, final LatitudeLongitude b) {
+    final var latitudeDelta = Math.toRadians(b.getLatitude() - a.getLatitude());
+    final var longitudeDelta = Math.toRadians(b.getLongitude() - a.getLongitude());
+
+    final var h = Math.pow(Math.sin(latitudeDelta / 2D), 2D) +
+        Math.cos(Math.toRadians(a.getLatitude())) * Math.cos(Math.toRadians(b.getLatitude())) *
+            Math.pow(Math.sin(longitudeDelta / 2D), 2D);
+
+    return 2D * EARTH_RADIUS_METERS * Math.asin(Math.min(1D, Math.sqrt(h)));
+  }
+
+  private boolean isDriver(final UUID userId) {
+    if (knownDrivers.getIfPresent(userId) != null) {
+      return true;
+    }
+
+    if (driverRepository.findByUserId(userId) == null) {
+      return false;
+    }
+
+    knownDrivers.put(userId, Boolean.TRUE);
+
+    return true;
+  }
+
+  private Outcome throttle(final AcceptedLocation previous, final LatitudeLongitude location, final long now) {
+    if (previous != null) {
+      final var elapsed = now - previous.time;
+
+      if (elapsed < minIntervalMillis) {
+        return Outcome.TOO_SOON;
+      }
+
+      if (elapsed < maxIntervalMillis && getDistanceMeters(previous.location, location) < minDistanceMeters) {
+        return Outcome.NOT_MOVED;
+      }
+    }
+
+    return Outcome.ACCEPTED;
+  }
+
+  /**
+   * Handle a location report from a driver's device
+   *
+   * @param userId user ID of the driver
+   * @return whether the location was recorded
+   */
+  public boolean ingest(final UUID userId, final LatitudeLongitude location) {
+    if (!isDriver(userId)) {
+      unknownDriverCounter.increment();
+      throw new EntityNotFoundException("Driver not found");
+    }
+
+    if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+      return false;
+    }
+
+    final var now = System.currentTimeMillis();
+    final var outcome = new AtomicReference<Outcome>();
+
+    lastAccepted.asMap().compute(userId, (id, previous) -> {
+      outcome.set(throttle(previous, location, now));
+
+      return outcome.get() == Outcome.ACCEPTED ?
+          new AcceptedLocation(location, now) :
+          previous;
+    });
+
+    switch (outcome.get()) {
+      case TOO_SOON:
+        tooSoonCounter.increment();
+        return false;
+      case NOT_MOVED:
+        notMovedCounter.increment();
+        return false;
+      default:
+        locationService.setLocation(userId, location);
+        acceptedCounter.increment();
+        return true;
+    }
+  }
+
+  private enum Outcome {
+    ACCEPTED,
+    TOO_SOON,
+    NOT_MOVED
+  }
+
+  private static final class AcceptedLocation {
+    private final LatitudeLongitude location;
+    private final long time;
+
+    private AcceptedLocation(final LatitudeLongitude location, final long time) {
+      this.location = location;
+      this.time = time;
+    }
+  }
+}
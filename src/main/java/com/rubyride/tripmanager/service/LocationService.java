@@ -1,40 +1,91 @@
 package com.rubyride.tripmanager.service;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.rubyride.model.LatitudeLongitude;
 import com.rubyride.tripmanager.event.DriverLocationSetEvent;
+import com.rubyride.tripmanager.model.DriverLocation;
+import com.rubyride.tripmanager.repository.redis.DriverLocationIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.Metrics;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Driver locations, kept in a Redis GEO index shared by every instance. A location is dropped once it hasn't been
+ * reported for a while, or when the driver goes off duty.
+ */
 @Service
 public class LocationService {
-  private final ApplicationEventPublisher applicationEventPublisher;
+  private static final Logger log = LoggerFactory.getLogger(LocationService.class);
+
+  private static final Duration LOCATION_TTL = Duration.ofMinutes(30L);
 
-  private final Cache<UUID, LatitudeLongitude> driverLocations = CacheBuilder.newBuilder()
-      .expireAfterWrite(Duration.ofMinutes(30L))
-      .build();
+  private final ApplicationEventPublisher applicationEventPublisher;
+  private final DriverLocationIndex driverLocationIndex;
+  private final ZoneIndexService zoneIndexService;
 
-  public LocationService(final ApplicationEventPublisher applicationEventPublisher) {
+  public LocationService(final ApplicationEventPublisher applicationEventPublisher, final DriverLocationIndex driverLocationIndex, final ZoneIndexService zoneIndexService) {
     this.applicationEventPublisher = applicationEventPublisher;
+    this.driverLocationIndex = driverLocationIndex;
+    this.zoneIndexService = zoneIndexService;
+  }
+
+  private static OffsetDateTime getOldestLiveTime() {
+    return OffsetDateTime.now()
+        .minus(LOCATION_TTL);
   }
 
   public Optional<LatitudeLongitude> getLocation(final UUID driverId) {
-    return Optional.ofNullable(driverLocations.getIfPresent(driverId));
+    return driverLocationIndex.findLocation(driverId, getOldestLiveTime())
+        .map(DriverLocation::getLocation);
+  }
+
+  /**
+   * Find the locations of on-duty drivers in a zone
+   */
+  public List<DriverLocation> getLocationsInZone(final UUID zoneId) {
+    return driverLocationIndex.findLocationsInZone(zoneId, getOldestLiveTime());
+  }
+
+  /**
+   * Find the on-duty drivers in a zone nearest to a location, nearest first
+   *
+   * @param radius maximum distance from the location, in kilometres
+   * @param count  maximum number of drivers to return
+   */
+  public List<DriverLocation> getNearestDriversInZone(final UUID zoneId, final LatitudeLongitude location, final double radius, final int count) {
+    return driverLocationIndex.findNearestInZone(zoneId, location, new Distance(radius, Metrics.KILOMETERS), count, getOldestLiveTime());
   }
 
   public void flushLocation(final UUID driverId) {
-    driverLocations.invalidate(driverId);
+    driverLocationIndex.removeLocation(driverId);
   }
 
   public void setLocation(@DestinationVariable("driverId") final UUID driverId, @Payload final LatitudeLongitude location) {
-    driverLocations.put(driverId, location);
+    if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+      return;
+    }
+
+    driverLocationIndex.setLocation(driverId, location, zoneIndexService.getZoneIdForLocation(location).orElse(null), OffsetDateTime.now());
     applicationEventPublisher.publishEvent(new DriverLocationSetEvent(driverId, location));
   }
+
+  @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+  public void removeStaleLocations() {
+    final var count = driverLocationIndex.removeLocationsBefore(getOldestLiveTime());
+
+    if (count > 0L) {
+      log.info("Removed " + count + " stale driver locations");
+    }
+  }
 }
@@ -2,16 +2,10 @@ package com.rubyride.tripmanager.service;
 
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.JsonParser;
-import com.mapbox.geojson.Point;
-import com.mapbox.geojson.Polygon;
-import com.mapbox.turf.TurfJoins;
 import com.rubyride.model.LatitudeLongitude;
 import com.rubyride.model.Place;
-import com.rubyride.model.Zone;
 import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
-import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
-import com.rubyride.tripmanager.utility.GeoUtils;
-import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.utils.URIBuilder;
 import org.slf4j.Logger;
@@ -28,26 +22,24 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 @Service
 public class MapService {
   private static final Logger log = LoggerFactory.getLogger(MapService.class);
 
-  private final GeoUtils geoUtils;
   private final PlaceRepository placeRepository;
-  private final ZoneRepository zoneRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final ZoneIndexService zoneIndexService;
 
   // Rate limiter so as to not violate OSM's TOS
   private final RateLimiter rateLimiter = RateLimiter.create(1D);
 
   @Autowired
-  public MapService(final GeoUtils geoUtils, final PlaceRepository placeRepository, final ZoneRepository zoneRepository) {
-    this.geoUtils = geoUtils;
+  public MapService(final PlaceRepository placeRepository, final ReferenceDataCache referenceDataCache, final ZoneIndexService zoneIndexService) {
     this.placeRepository = placeRepository;
-    this.zoneRepository = zoneRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.zoneIndexService = zoneIndexService;
   }
 
   /**
@@ -116,22 +108,7 @@ public class MapService {
             place.setLocation(location);
 
             // Set zone for place if possible
-            zoneRepository.findAll().stream()
-                .filter(zone -> {
-                  final var geoPolygon = geoUtils.getPolygonFromString(zone.getId(), zone.getBounds());
-                  if (geoPolygon == null) {
-                    return false;
-                  }
-
-                  final var turfPolygon = Polygon.fromLngLats(
-                      List.of(StreamUtils.streamIterator(geoPolygon.iterator())
-                          .map(point -> Point.fromLngLat(point.getX(), point.getY()))
-                          .collect(Collectors.toList())));
-
-                  return TurfJoins.inside(Point.fromLngLat(location.getLongitude(), location.getLatitude()), turfPolygon);
-                })
-                .findAny()
-                .map(Zone::getId)
+            zoneIndexService.getZoneIdForLocation(location)
                 .ifPresent(place::setZoneId);
           }
         }
@@ -150,6 +127,9 @@ public class MapService {
     placeRepository.findByLocationIsNullOrLocationLatitudeIsNullOrLocationLongitudeIsNull().stream()
         .map(this::geocode)
         .filter(Objects::nonNull)
-        .forEach(placeRepository::save);
+        .forEach(place -> {
+          placeRepository.save(place);
+          referenceDataCache.getPlaces().evict(place.getId());
+        });
   }
 }
@@ -0,0 +1,115 @@
+package com.rubyride.tripmanager.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Holds notifications for a short window before handing them to {@link NotifyService}, so a burst of events for the
+ * same entity (e.g. assigning a trip, which modifies the trip and up to two shifts) goes out as one message carrying
+ * the latest state.
+ * <p>
+ * Notifications are only collapsed when they go to the same destination, for the same entity and recipient, with the
+ * same title and text. Texts that differ are always delivered separately; identical SMS about the same entity to the
+ * same number within the window are sent once.
+ * <p>
+ * Windows are timed on a single scheduler thread, which must never send anything itself. Flushed notifications go
+ * through a bounded hand-off queue to a dispatcher thread, which submits them to the notification executor and is the
+ * one held up when that executor is saturated. If the hand-off queue stays full for a short wait, the notification is
+ * dropped and counted.
+ */
+@Service
+public class NotificationCoalescer {
+  private static final long HAND_OFF_WAIT_MILLIS = 100L;
+
+  private final NotifyService notifyService;
+  private final ExecutorService notificationExecutor;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("notification-coalescer-"));
+  private final ExecutorService dispatcher;
+  private final ConcurrentMap<List<Object>, Runnable> pending = new ConcurrentHashMap<>();
+  private final Counter coalescedCounter;
+  private final Counter droppedCounter;
+
+  @Value("${NOTIFICATION_COALESCE_MILLIS:150}")
+  private long windowMillis;
+
+  public NotificationCoalescer(final NotifyService notifyService, final ExecutorService notificationExecutor, final MeterRegistry meterRegistry,
+                               @Value("${NOTIFICATION_HAND_OFF_CAPACITY:1000}") final int handOffCapacity) {
+    this.notifyService = notifyService;
+    this.notificationExecutor = notificationExecutor;
+    this.coalescedCounter = meterRegistry.counter("tripmanager.notifications.coalesced");
+    this.droppedCounter = meterRegistry.counter("tripmanager.notifications.dropped");
+
+    this.dispatcher = new ThreadPoolExecutor(1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(handOffCapacity),
+        new CustomizableThreadFactory("notification-dispatcher-"),
+        (task, executor) -> {
+          try {
+            if (executor.isShutdown() || !executor.getQueue().offer(task, HAND_OFF_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+              droppedCounter.increment();
+            }
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCounter.increment();
+          }
+        });
+  }
+
+  /**
+   * Queue a push to a subscription, replacing any pending push with the same key
+   *
+   * @param entityId ID of the entity the notification is about; distinguishes feed messages that have no data ID
+   * @see NotifyService#pushToSubscriptionAndSendNotification
+   */
+  public <T> void pushToSubscriptionAndSendNotification(final UUID entityId, final UUID userId, final boolean shouldPushNotification, final boolean dataOnly, final NotifyService.Topic topic, final String dataId, final String title, final String message, final T data) {
+    submit(Arrays.asList(topic, dataId, entityId, userId, shouldPushNotification, dataOnly, title, message),
+        () -> notifyService.pushToSubscriptionAndSendNotification(userId, shouldPushNotification, dataOnly, topic, dataId, title, message, data));
+  }
+
+  /**
+   * Queue an SMS, dropping it if the same text about the same entity is already pending for the number
+   *
+   * @param entityId ID of the entity (trip) the message is about, so identical texts about different trips are all sent
+   */
+  public void sendSMS(final UUID entityId, final String phoneNumber, final String message) {
+    submit(Arrays.asList("SMS", entityId, phoneNumber, message),
+        () -> notifyService.sendSMS(phoneNumber, message));
+  }
+
+  private void submit(final List<Object> key, final Runnable notification) {
+    if (windowMillis <= 0L) {
+      notification.run();
+    } else if (pending.put(key, notification) == null) {
+      scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+    } else {
+      coalescedCounter.increment();
+    }
+  }
+
+  private void flush(final List<Object> key) {
+    Optional.ofNullable(pending.remove(key))
+        .ifPresent(notification -> dispatcher.execute(() -> notificationExecutor.execute(notification)));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+    dispatcher.shutdown();
+
+    pending.keySet()
+        .forEach(key -> Optional.ofNullable(pending.remove(key))
+            .ifPresent(Runnable::run));
+  }
+}
@@ -3,42 +3,50 @@ package com.rubyride.tripmanager.service;
 import com.rubyride.model.*;
 import com.rubyride.tripmanager.event.*;
 import com.rubyride.tripmanager.model.TripRequestIdAndStatus;
-import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
-import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
 import com.rubyride.tripmanager.utility.ObjectUtils;
 import org.springframework.context.MessageSource;
 import org.springframework.context.NoSuchMessageException;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class NotifierService {
   private final UserRepository userRepository;
-  private final PlaceRepository placeRepository;
-  private final ZoneRepository zoneRepository;
+  private final ReferenceDataCache referenceDataCache;
   private final MessageSource messageSource;
   private final NotifyService notifyService;
+  private final NotificationCoalescer notificationCoalescer;
+  private final ExecutorService notificationExecutor;
+  private final ConcurrentMap<UUID, DriverLocationSetEvent> pendingDriverLocations = new ConcurrentHashMap<>();
 
-  public NotifierService(final UserRepository userRepository, final PlaceRepository placeRepository, final ZoneRepository zoneRepository, final MessageSource messageSource, final NotifyService notifyService) {
+  public NotifierService(final UserRepository userRepository, final ReferenceDataCache referenceDataCache, final MessageSource messageSource, final NotifyService notifyService, final NotificationCoalescer notificationCoalescer, final ExecutorService notificationExecutor) {
     this.userRepository = userRepository;
-    this.placeRepository = placeRepository;
-    this.zoneRepository = zoneRepository;
+    this.referenceDataCache = referenceDataCache;
     this.messageSource = messageSource;
     this.notifyService = notifyService;
+    this.notificationCoalescer = notificationCoalescer;
+    this.notificationExecutor = notificationExecutor;
   }
 
   private Object[] getMessageArguments(final TripRequest tripRequest, final User user, final Locale locale) {
     final var fromTimezone = Optional.ofNullable(tripRequest)
-        .flatMap(trip -> zoneRepository.findById(trip.getFromZoneId()))
+        .flatMap(trip -> referenceDataCache.getZones().findById(trip.getFromZoneId()))
         .map(Zone::getTimeZone)
         .map(ZoneOffset::ofHours)
         .orElse(ZoneOffset.UTC);
@@ -49,12 +57,12 @@ public class NotifierService {
             .withLocale(locale));
 
     final var fromAddress = Optional.ofNullable(tripRequest)
-        .flatMap(trip -> placeRepository.findById(trip.getFromLocationId())
+        .flatMap(trip -> referenceDataCache.getPlaces().findById(trip.getFromLocationId())
             .map(place -> place.getAddress().getStreet()))
         .orElse("");
 
     final var toAddress = Optional.ofNullable(tripRequest)
-        .flatMap(trip -> placeRepository.findById(trip.getToLocationId())
+        .flatMap(trip -> referenceDataCache.getPlaces().findById(trip.getToLocationId())
             .map(place -> place.getAddress().getStreet()))
         .orElse("");
 
@@ -87,13 +95,13 @@ public class NotifierService {
   @EventListener(NewTripRequestEvent.class)
   public void notifyTripRequests(final NewTripRequestEvent event) {
     CompletableFuture.runAsync(() ->
-        notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.TRIPS, null, null, null, event.getTripRequest().getId()));
+        notificationCoalescer.pushToSubscriptionAndSendNotification(event.getTripRequest().getId(), null, false, true, NotifyService.Topic.TRIPS, null, null, null, event.getTripRequest().getId()), notificationExecutor);
   }
 
   @EventListener(NewShiftEvent.class)
   public void notifyShifts(final NewShiftEvent event) {
     CompletableFuture.runAsync(() ->
-        notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.SHIFTS, null, null, null, event.getShift().getId()));
+        notificationCoalescer.pushToSubscriptionAndSendNotification(event.getShift().getId(), null, false, true, NotifyService.Topic.SHIFTS, null, null, null, event.getShift().getId()), notificationExecutor);
   }
 
   @EventListener(ModifyTripRequestEvent.class)
@@ -101,51 +109,57 @@ public class NotifierService {
     CompletableFuture.runAsync(() -> {
       final var tripRequest = event.getTripRequest();
       final var eventAction = event.getEventAction();
+      final var dataOnly = event.isDataOnly();
 
       userRepository.findById(tripRequest.getRiderId())
           .ifPresent(user -> {
             final var locale = Locale.forLanguageTag(ObjectUtils.getOrDefault(user.getLocale(), "en-US"));
             final var notificationType = ObjectUtils.getOrDefault(user.getNotificationType(), NotificationType.SMS);
-            final var arguments = getMessageArguments(tripRequest, user, locale);
 
             String title = null;
             String message = null;
 
-            try {
-              title = messageSource.getMessage(
-                  ObjectUtils.getOrDefault(tripRequest.getTripRequestType(), TripRequestType.PASSENGER).getValue() +
-                      "." + tripRequest.getStatus().getValue() +
-                      (eventAction != null ?
-                          "." + eventAction.getValue() :
-                          "")
-                      + ".TITLE",
-                  arguments,
-                  locale);
-              message = messageSource.getMessage(
-                  ObjectUtils.getOrDefault(tripRequest.getTripRequestType(), TripRequestType.PASSENGER).getValue() +
-                      "." + tripRequest.getStatus().getValue() +
-                      (eventAction != null ?
-                          "." + eventAction.getValue() :
-                          "")
-                      + "." + notificationType.getValue(),
-                  arguments,
-                  locale);
-
-              final var finalMessage = message;
-
-              Optional.ofNullable(user.getPrimaryPhone())
-                  .filter(phoneNumber -> !phoneNumber.isEmpty() &&
-                      notificationType == NotificationType.SMS || tripRequest.getTripRequestType() == TripRequestType.COURIER)
-                  .ifPresent(phoneNumber -> notifyService.sendSMS(phoneNumber, finalMessage));
-            } catch (final NoSuchMessageException e) {
-              // no-op
+            // Data-only updates carry the new status without texting or pushing a message to the rider
+            if (!dataOnly) {
+              final var arguments = getMessageArguments(tripRequest, user, locale);
+
+              try {
+                title = messageSource.getMessage(
+                    ObjectUtils.getOrDefault(tripRequest.getTripRequestType(), TripRequestType.PASSENGER).getValue() +
+                        "." + tripRequest.getStatus().getValue() +
+                        (eventAction != null ?
+                            "." + eventAction.getValue() :
+                            "")
+                        + ".TITLE",
+                    arguments,
+                    locale);
+                message = messageSource.getMessage(
+                    ObjectUtils.getOrDefault(tripRequest.getTripRequestType(), TripRequestType.PASSENGER).getValue() +
+                        "." + tripRequest.getStatus().getValue() +
+                        (eventAction != null ?
+                            "." + eventAction.getValue() :
+                            "")
+                        + "." + notificationType.getValue(),
+                    arguments,
+                    locale);
+
+                final var finalMessage = message;
+
+                Optional.ofNullable(user.getPrimaryPhone())
+                    .filter(phoneNumber -> !phoneNumber.isEmpty() &&
+                        notificationType == NotificationType.SMS || tripRequest.getTripRequestType() == TripRequestType.COURIER)
+                    .ifPresent(phoneNumber -> notificationCoalescer.sendSMS(tripRequest.getId(), phoneNumber, finalMessage));
+              } catch (final NoSuchMessageException e) {
+                // no-op
+              }
             }
 
             // Send data notification for trip request to user
-            notifyService.pushToSubscriptionAndSendNotification(
+            notificationCoalescer.pushToSubscriptionAndSendNotification(
+                tripRequest.getId(),
                 user.getId(),
-                notificationType == NotificationType.PUSH,
-                false,
+                !dataOnly && notificationType == NotificationType.PUSH,
+                dataOnly,
                 NotifyService.Topic.TRIP,
                 tripRequest.getId().toString(),
                 title,
@@ -154,8 +168,8 @@ public class NotifierService {
           });
 
       // Also notify TRIPS feed of modified trip request
-      notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.TRIPS, null, null, null, event.getTripRequest().getId());
-    });
+      notificationCoalescer.pushToSubscriptionAndSendNotification(event.getTripRequest().getId(), null, false, true, NotifyService.Topic.TRIPS, null, null, null, event.getTripRequest().getId());
+    }, notificationExecutor);
   }
 
   @EventListener(ModifyShiftEvent.class)
@@ -211,11 +225,12 @@ public class NotifierService {
                 final var phoneNumber = ObjectUtils.getOrDefault(user.getPrimaryPhone(), "");
 
                 if (notificationType == NotificationType.SMS && !phoneNumber.isEmpty()) {
-                  notifyService.sendSMS(phoneNumber, message);
+                  notificationCoalescer.sendSMS(tripRequest.getId(), phoneNumber, message);
                 }
 
                 // Send data notification for shift to user
-                notifyService.pushToSubscriptionAndSendNotification(
+                notificationCoalescer.pushToSubscriptionAndSendNotification(
+                    shift.getId(),
                     user.getId(),
                     notificationType == NotificationType.PUSH,
                     dataOnly,
@@ -238,7 +253,8 @@ public class NotifierService {
                     locale);
 
                 // Send WS update for shift to user
-                notifyService.pushToSubscriptionAndSendNotification(
+                notificationCoalescer.pushToSubscriptionAndSendNotification(
+                    shift.getId(),
                     user.getId(),
                     notificationType == NotificationType.PUSH,
                     dataOnly,
@@ -255,16 +271,37 @@ public class NotifierService {
 
       if (eventAction != null) {
         // Also notify SHIFTS feed of modified shift
-        notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.SHIFTS, null, null, null, event.getShift().getId());
+        notificationCoalescer.pushToSubscriptionAndSendNotification(event.getShift().getId(), null, false, true, NotifyService.Topic.SHIFTS, null, null, null, event.getShift().getId());
       }
-    });
+    }, notificationExecutor);
+  }
+
+  // Deltas must reach subscribers in sequence order, so unlike other notifications they are sent from the publishing
+  // thread, which holds the shift's write lease
+  @EventListener(ShiftDeltaEvent.class)
+  public void notifyShiftDelta(final ShiftDeltaEvent event) {
+    notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.SHIFT_DELTA, event.getDelta().getShiftId().toString(), null, null, event.getDelta());
   }
 
+  // The all-drivers feed is sent in batches, with the latest location of each driver that moved since the last one
   @EventListener(DriverLocationSetEvent.class)
   public void notifyDriverLocationSet(final DriverLocationSetEvent driverLocationSetEvent) {
-    CompletableFuture.runAsync(() -> {
-      notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.DRIVER_LOCATION, driverLocationSetEvent.getDriverId().toString(), null, null, driverLocationSetEvent.getLocation());
-      notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.DRIVER_LOCATIONS, null, null, null, driverLocationSetEvent);
-    });
+    pendingDriverLocations.put(driverLocationSetEvent.getDriverId(), driverLocationSetEvent);
+
+    CompletableFuture.runAsync(() -> notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.DRIVER_LOCATION, driverLocationSetEvent.getDriverId().toString(), null, null, driverLocationSetEvent.getLocation()),
+        notificationExecutor);
+  }
+
+  @Scheduled(fixedDelayString = "${LOCATION_BROADCAST_MILLIS:1000}")
+  public void notifyDriverLocationsSet() {
+    final var driverLocations = new ArrayList<DriverLocationSetEvent>();
+
+    pendingDriverLocations.keySet()
+        .forEach(driverId -> Optional.ofNullable(pendingDriverLocations.remove(driverId))
+            .ifPresent(driverLocations::add));
+
+    if (!driverLocations.isEmpty()) {
+      notifyService.pushToSubscriptionAndSendNotification(null, false, true, NotifyService.Topic.DRIVER_LOCATIONS, null, null, null, driverLocations);
+    }
   }
 }
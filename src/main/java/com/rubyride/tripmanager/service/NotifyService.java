@@ -3,7 +3,6 @@ package com.rubyride.tripmanager.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
@@ -14,12 +13,12 @@ public class NotifyService {
   private static final Logger log = LoggerFactory.getLogger(NotifyService.class);
 
   private final TwilioService twilioService;
-  private final SimpMessageSendingOperations messageService;
+  private final WebSocketRelayService webSocketRelayService;
   private final ObjectMapper objectMapper;
 
-  public NotifyService(final TwilioService twilioService, final SimpMessageSendingOperations messageService, final ObjectMapper objectMapper) {
+  public NotifyService(final TwilioService twilioService, final WebSocketRelayService webSocketRelayService, final ObjectMapper objectMapper) {
     this.twilioService = twilioService;
-    this.messageService = messageService;
+    this.webSocketRelayService = webSocketRelayService;
     this.objectMapper = objectMapper;
   }
 
@@ -28,7 +27,7 @@ public class NotifyService {
         "/" + dataId :
         "");
 
-    messageService.convertAndSend("/topic/" + destinationTopic, data);
+    webSocketRelayService.convertAndSend("/topic/" + destinationTopic, data);
     log.info("Message delivered to WS endpoint " + destinationTopic);
 
     if (userId != null && shouldPushNotification) {
@@ -68,6 +67,7 @@ public class NotifyService {
     TRIPS("trips"),
     SHIFT("shift"),
     SHIFTS("shifts"),
+    SHIFT_DELTA("shiftDelta"),
     DRIVER_LOCATION("driverLocation"),
     DRIVER_LOCATIONS("driverLocations");
 
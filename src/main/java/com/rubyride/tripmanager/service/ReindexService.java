@@ -0,0 +1,251 @@
+package com.rubyride.tripmanager.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.rubyride.tripmanager.model.ReindexJobStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs repository reindexes as background jobs. Repositories are reindexed one at a time, each by several workers
+ * sharing a single rate limit, so a reindex doesn't starve request traffic. Progress is kept in Redis for a day so
+ * any instance can report on a job.
+ * <p>
+ * Only one job runs at a time across all instances. The running job holds a lease in Redis, keyed by its ID and
+ * extended as it makes progress, so starting another job while one is running anywhere returns the running job; a job
+ * that loses its lease stops and is marked as failed.
+ */
+@Service
+public class ReindexService {
+  private static final Logger log = LoggerFactory.getLogger(ReindexService.class);
+
+  private static final String KEY_PREFIX = "reindex:job:";
+  private static final String LOCK_KEY = "reindex:lock";
+  private static final Duration JOB_TTL = Duration.ofDays(1L);
+  private static final Duration LOCK_LEASE = Duration.ofMinutes(5L);
+  private static final int PROGRESS_INTERVAL = 100;
+
+  // Extend the lease only if it is still held by this job, so a job whose lease lapsed can't take it back from another
+  private static final RedisScript<Long> EXTEND_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('PEXPIRE', KEYS[1], ARGV[2])",
+      Long.class);
+
+  // Release the lease only if it is still held by this job
+  private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+          "return redis.call('DEL', KEYS[1])",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final ExecutorService executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("reindex-"));
+
+  @Value("${REINDEX_WORKERS:4}")
+  private int workers;
+
+  @Value("${REINDEX_RATE_PER_SECOND:200}")
+  private double ratePerSecond;
+
+  public ReindexService(final StringRedisTemplate redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  private static String getKey(final UUID jobId) {
+    return KEY_PREFIX + jobId;
+  }
+
+  /**
+   * Start reindexing a list of repositories in the background
+   *
+   * @return ID of the new job, or of the job already running on any instance
+   */
+  public UUID start(final List<Target> targets) {
+    final var jobId = UUID.randomUUID();
+
+    // If the running job finishes between failing to take the lease and reading it, try again
+    while (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, jobId.toString(), LOCK_LEASE))) {
+      final var runningJobId = redisTemplate.opsForValue().get(LOCK_KEY);
+
+      if (runningJobId != null) {
+        return UUID.fromString(runningJobId);
+      }
+    }
+
+    final var key = getKey(jobId);
+
+    redisTemplate.opsForHash().putAll(key, Map.of(
+        "state", ReindexJobStatus.State.RUNNING.name(),
+        "startedAt", OffsetDateTime.now().toString(),
+        "repositories", targets.stream()
+            .map(Target::getName)
+            .collect(Collectors.joining(","))));
+    redisTemplate.expire(key, JOB_TTL);
+
+    try {
+      executor.execute(() -> run(jobId, targets));
+    } catch (final RuntimeException e) {
+      releaseLock(jobId);
+      throw e;
+    }
+
+    return jobId;
+  }
+
+  private void run(final UUID jobId, final List<Target> targets) {
+    final var key = getKey(jobId);
+    final var rateLimiter = RateLimiter.create(ratePerSecond);
+
+    try {
+      for (final var target : targets) {
+        reindex(jobId, key, target, rateLimiter);
+      }
+
+      redisTemplate.opsForHash().put(key, "state", ReindexJobStatus.State.COMPLETED.name());
+      log.info("Reindex job " + jobId + " completed");
+    } catch (final RuntimeException e) {
+      log.error("Reindex job " + jobId + " failed", e);
+
+      redisTemplate.opsForHash().putAll(key, Map.of(
+          "state", ReindexJobStatus.State.FAILED.name(),
+          "error", String.valueOf(e.getMessage())));
+    } finally {
+      redisTemplate.opsForHash().put(key, "finishedAt", OffsetDateTime.now().toString());
+      releaseLock(jobId);
+    }
+  }
+
+  private void extendLock(final UUID jobId) {
+    if (!Long.valueOf(1L).equals(redisTemplate.execute(EXTEND_LOCK, List.of(LOCK_KEY), jobId.toString(), Long.toString(LOCK_LEASE.toMillis())))) {
+      throw new IllegalStateException("Lost the reindex lease");
+    }
+  }
+
+  private void releaseLock(final UUID jobId) {
+    redisTemplate.execute(RELEASE_LOCK, List.of(LOCK_KEY), jobId.toString());
+  }
+
+  private void reindex(final UUID jobId, final String key, final Target target, final RateLimiter rateLimiter) {
+    extendLock(jobId);
+
+    final var ids = target.ids.get();
+    final var cursor = new AtomicInteger();
+
+    redisTemplate.opsForHash().put(key, target.name + ":total", String.valueOf(ids.size()));
+
+    CompletableFuture.allOf(IntStream.range(0, Math.max(1, workers))
+        .mapToObj(worker -> CompletableFuture.runAsync(() -> work(jobId, key, target, ids, cursor, rateLimiter), executor))
+        .toArray(CompletableFuture[]::new))
+        .join();
+
+    log.info("Reindexed " + ids.size() + " " + target.name);
+  }
+
+  private void work(final UUID jobId, final String key, final Target target, final List<UUID> ids, final AtomicInteger cursor, final RateLimiter rateLimiter) {
+    var processed = 0L;
+    var failed = 0L;
+    int index;
+
+    while (!Thread.currentThread().isInterrupted() && (index = cursor.getAndIncrement()) < ids.size()) {
+      rateLimiter.acquire();
+
+      try {
+        target.reindexer.accept(ids.get(index));
+        processed++;
+      } catch (final Exception e) {
+        log.error("Exception caught reindexing " + target.name + " " + ids.get(index), e);
+        failed++;
+      }
+
+      if (processed + failed >= PROGRESS_INTERVAL) {
+        extendLock(jobId);
+        recordProgress(key, target, processed, failed);
+        processed = 0L;
+        failed = 0L;
+      }
+    }
+
+    recordProgress(key, target, processed, failed);
+  }
+
+  private void recordProgress(final String key, final Target target, final long processed, final long failed) {
+    if (processed > 0L) {
+      redisTemplate.opsForHash().increment(key, target.name + ":processed", processed);
+    }
+
+    if (failed > 0L) {
+      redisTemplate.opsForHash().increment(key, target.name + ":failed", failed);
+    }
+  }
+
+  public Optional<ReindexJobStatus> getStatus(final UUID jobId) {
+    final var job = redisTemplate.<String, String>opsForHash().entries(getKey(jobId));
+
+    if (job.isEmpty()) {
+      return Optional.empty();
+    }
+
+    final var repositories = new LinkedHashMap<String, ReindexJobStatus.RepositoryProgress>();
+
+    Arrays.stream(job.getOrDefault("repositories", "").split(","))
+        .filter(name -> !name.isEmpty())
+        .forEach(name -> repositories.put(name, new ReindexJobStatus.RepositoryProgress(
+            Optional.ofNullable(job.get(name + ":total"))
+                .map(Long::valueOf)
+                .orElse(null),
+            Long.parseLong(job.getOrDefault(name + ":processed", "0")),
+            Long.parseLong(job.getOrDefault(name + ":failed", "0")))));
+
+    return Optional.of(new ReindexJobStatus(jobId,
+        ReindexJobStatus.State.valueOf(job.get("state")),
+        Optional.ofNullable(job.get("startedAt"))
+            .map(OffsetDateTime::parse)
+            .orElse(null),
+        Optional.ofNullable(job.get("finishedAt"))
+            .map(OffsetDateTime::parse)
+            .orElse(null),
+        job.get("error"),
+        repositories));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * A repository to reindex: how to list the IDs of its entities, and how to reindex one of them in place
+   */
+  public static final class Target {
+    private final String name;
+    private final Supplier<List<UUID>> ids;
+    private final Consumer<UUID> reindexer;
+
+    public Target(final String name, final Supplier<List<UUID>> ids, final Consumer<UUID> reindexer) {
+      this.name = name;
+      this.ids = ids;
+      this.reindexer = reindexer;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.repository.redis.ShiftRepository;
+import com.rubyride.tripmanager.utility.AnalyticsUtils;
+import com.rubyride.tripmanager.utility.DateUtils;
+import com.rubyride.tripmanager.utility.ObjectUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.Pair;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Computes shift analytics over live and archived shifts, one driver at a time. A few drivers are worked on in
+ * parallel, and their rows are handed out in driver order as each finishes, so only the rows of the drivers in flight
+ * are held in memory however long the date range is.
+ * <p>
+ * Drivers from every request share one bounded pool, published under the "shift-analytics" executor name. When it
+ * and its queue are full, the requesting thread works on the driver itself.
+ */
+@Service
+public class ShiftAnalyticsService {
+  private final ShiftRepository shiftRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final MongoTemplate mongoTemplate;
+  private final AnalyticsUtils analyticsUtils;
+  private final ExecutorService executor;
+
+  @Value("${SHIFT_ANALYTICS_WORKERS:4}")
+  private int workers;
+
+  public ShiftAnalyticsService(final ShiftRepository shiftRepository, final ReferenceDataCache referenceDataCache, final MongoTemplate mongoTemplate, final AnalyticsUtils analyticsUtils, final MeterRegistry meterRegistry,
+                               @Value("${SHIFT_ANALYTICS_THREADS:8}") final int threads, @Value("${SHIFT_ANALYTICS_QUEUE_CAPACITY:100}") final int queueCapacity) {
+    this.shiftRepository = shiftRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.mongoTemplate = mongoTemplate;
+    this.analyticsUtils = analyticsUtils;
+
+    final var threadPoolExecutor = new ThreadPoolExecutor(threads,
+        threads,
+        60L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(queueCapacity),
+        new CustomizableThreadFactory("shift-analytics-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+    this.executor = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, "shift-analytics", List.of());
+  }
+
+  /**
+   * Stream analytics CSV rows, without a header, for shifts overlapping a range of dates
+   *
+   * @param from         first date, in the time zone of each shift's zone
+   * @param to           last date, inclusive
+   * @param driverIds    drivers to report on, or all drivers if empty
+   * @param zoneIds      zones to report on, or all zones if empty
+   * @param accessFilter shifts the caller may see
+   * @return rows grouped by driver; the stream must be closed to stop any work still in flight
+   */
+  public Stream<String> streamCsvRows(final LocalDate from, final LocalDate to, final List<UUID> driverIds, final List<UUID> zoneIds, final Predicate<Shift> accessFilter) {
+    final var dates = DateUtils.getMinMaxDates(from, to);
+    final var timeRange = DateUtils.getTimeRange(Pair.of(dates.getFirst(), LocalDate.MAX.equals(dates.getSecond()) ?
+        dates.getSecond() :
+        dates.getSecond().plusDays(1L)));
+    final var zoneOffsets = new ConcurrentHashMap<UUID, ZoneOffset>();
+
+    final Predicate<Shift> filter = accessFilter
+        .and(shift -> shift.getDriverId() != null)
+        .and(shift -> driverIds.isEmpty() || driverIds.contains(shift.getDriverId()))
+        .and(shift -> zoneIds.isEmpty() || zoneIds.contains(shift.getZoneId()))
+        .and(shift -> {
+          final var offset = shift.getZoneId() != null ?
+              zoneOffsets.computeIfAbsent(shift.getZoneId(), this::findZoneOffset) :
+              ZoneOffset.UTC;
+
+          return ObjectUtils.getOrDefault(shift.getStartTime(), OffsetDateTime.now())
+              .atZoneSameInstant(offset).toLocalDate()
+              .compareTo(dates.getSecond()) <= 0 &&
+              ObjectUtils.getOrDefault(shift.getEndTime(), OffsetDateTime.now())
+                  .atZoneSameInstant(offset).toLocalDate()
+                  .compareTo(dates.getFirst()) >= 0;
+        });
+
+    // Live shifts cover a week at most, so they are read up front
+    final var liveShifts = findLiveShifts(driverIds, zoneIds)
+        .filter(filter)
+        .collect(Collectors.groupingBy(Shift::getDriverId));
+
+    final var reportedDriverIds = new TreeSet<UUID>(liveShifts.keySet());
+    if (driverIds.isEmpty()) {
+      reportedDriverIds.addAll(mongoTemplate.findDistinct(getArchiveQuery(timeRange, zoneIds), "driverId", Shift.class, UUID.class));
+    } else {
+      reportedDriverIds.addAll(driverIds);
+    }
+
+    return inParallel(new ArrayList<>(reportedDriverIds), driverId -> {
+      final var shiftsById = new HashMap<UUID, Shift>();
+      StreamUtils.safeStream(liveShifts.get(driverId))
+          .forEach(shift -> shiftsById.put(shift.getId(), shift));
+
+      // A shift being archived can briefly be both live and archived; the live copy wins
+      try (final var archivedShifts = mongoTemplate.stream(getArchiveQuery(timeRange, zoneIds)
+          .addCriteria(Criteria.where("driverId").is(driverId)), Shift.class)) {
+        StreamUtils.streamIterator(archivedShifts)
+            .filter(filter)
+            .forEach(shift -> shiftsById.putIfAbsent(shift.getId(), shift));
+      }
+
+      final var shifts = new ArrayList<>(shiftsById.values());
+      shifts.sort(Comparator.comparing(Shift::getStartTime, Comparator.nullsLast(Comparator.naturalOrder())));
+
+      return analyticsUtils.getCsvRows(shifts);
+    });
+  }
+
+  private ZoneOffset findZoneOffset(final UUID zoneId) {
+    return referenceDataCache.getZones().findById(zoneId)
+        .map(zone -> ZoneOffset.ofHours(zone.getTimeZone()))
+        .orElse(ZoneOffset.UTC);
+  }
+
+  private Stream<Shift> findLiveShifts(final List<UUID> driverIds, final List<UUID> zoneIds) {
+    if (!driverIds.isEmpty()) {
+      return driverIds.stream()
+          .flatMap(driverId -> StreamUtils.safeStream(shiftRepository.findByDriverId(driverId)));
+    } else if (!zoneIds.isEmpty()) {
+      return zoneIds.stream()
+          .flatMap(zoneId -> StreamUtils.safeStream(shiftRepository.findByZoneId(zoneId)));
+    } else {
+      return StreamUtils.streamIterable(shiftRepository.findAll());
+    }
+  }
+
+  // Archived shifts overlapping a time range, narrowed to the exact dates once each shift's zone is known
+  private static Query getArchiveQuery(final Pair<OffsetDateTime, OffsetDateTime> timeRange, final List<UUID> zoneIds) {
+    final var queryRange = DateUtils.getQueryRange(timeRange);
+    final var query = Query.query(Criteria.where("startTime").lt(queryRange.getUpperBound().getValue().orElseThrow())
+        .and("endTime").gte(queryRange.getLowerBound().getValue().orElseThrow()));
+
+    if (!zoneIds.isEmpty()) {
+      query.addCriteria(Criteria.where("zoneId").in(zoneIds));
+    }
+
+    return query;
+  }
+
+  /**
+   * Compute rows for each driver on the worker pool, a bounded number at a time, handing them out in driver order
+   */
+  private Stream<String> inParallel(final List<UUID> driverIds, final Function<UUID, List<String>> rows) {
+    final var remaining = driverIds.iterator();
+    final var pending = new ArrayDeque<CompletableFuture<List<String>>>();
+
+    final var iterator = new Iterator<List<String>>() {
+      private void fill() {
+        while (pending.size() < Math.max(1, workers) && remaining.hasNext()) {
+          final var driverId = remaining.next();
+          pending.add(CompletableFuture.supplyAsync(() -> rows.apply(driverId), executor));
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+      }
+
+      @Override
+      public List<String> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        return pending.remove().join();
+      }
+    };
+
+    return StreamUtils.streamIterator(iterator)
+        .flatMap(List::stream)
+        .onClose(() -> pending.forEach(future -> future.cancel(true)));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
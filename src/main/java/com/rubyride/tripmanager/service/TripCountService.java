@@ -0,0 +1,190 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.model.TripRequest;
+import com.rubyride.tripmanager.model.TripCount;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.repository.mongo.TripArchiveRepository;
+import com.rubyride.tripmanager.repository.mongo.TripCountRepository;
+import com.rubyride.tripmanager.repository.redis.TripCountIndex;
+import com.rubyride.tripmanager.utility.DateUtils;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import com.rubyride.tripmanager.utility.TripUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Trip counts per zone and across all zones, by date, status and schedule type. Counts of live trips are kept in Redis
+ * by {@link TripCountIndex}; counts of archived trips are frozen into Mongo as trips are archived.
+ * <p>
+ * The archive marks the date buckets of each batch as stale before moving it, and the frozen counts of stale buckets
+ * are then recomputed from the archive as a whole. Recomputing rather than adding to them keeps the counts right when
+ * a batch is archived more than once.
+ */
+@Service
+public class TripCountService {
+  private static final Logger log = LoggerFactory.getLogger(TripCountService.class);
+
+  private static final String STALE_KEY = "tripCounts:stale";
+
+  // Bounds for unbounded date ranges that still compare correctly as ISO date strings
+  private static final String MIN_DATE = "0000-01-01";
+  private static final String MAX_DATE = "9999-12-31";
+
+  private final TripCountIndex tripCountIndex;
+  private final TripCountRepository tripCountRepository;
+  private final TripArchiveRepository tripArchiveRepository;
+  private final ReferenceDataCache referenceDataCache;
+  private final MongoTemplate mongoTemplate;
+  private final StringRedisTemplate redisTemplate;
+  private final TripUtils tripUtils;
+
+  public TripCountService(final TripCountIndex tripCountIndex, final TripCountRepository tripCountRepository, final TripArchiveRepository tripArchiveRepository, final ReferenceDataCache referenceDataCache, final MongoTemplate mongoTemplate, final StringRedisTemplate redisTemplate, final TripUtils tripUtils) {
+    this.tripCountIndex = tripCountIndex;
+    this.tripCountRepository = tripCountRepository;
+    this.tripArchiveRepository = tripArchiveRepository;
+    this.referenceDataCache = referenceDataCache;
+    this.mongoTemplate = mongoTemplate;
+    this.redisTemplate = redisTemplate;
+    this.tripUtils = tripUtils;
+  }
+
+  private static String getScope(final UUID zoneId) {
+    return zoneId != null ?
+        zoneId.toString() :
+        TripCountIndex.ALL_SCOPE;
+  }
+
+  private static String toDateKey(final LocalDate date, final String unbounded) {
+    return LocalDate.MIN.equals(date) || LocalDate.MAX.equals(date) ?
+        unbounded :
+        date.toString();
+  }
+
+  private static TripCount countOne(final String scope, final LocalDate date, final TripRequest tripRequest) {
+    return TripCount.of(scope, date, tripRequest.getStatus(), tripRequest.getScheduleType(), 1L);
+  }
+
+  private static List<TripCount> sum(final Stream<TripCount> tripCounts) {
+    return new ArrayList<>(tripCounts
+        .collect(Collectors.toMap(TripCount::getId, Function.identity(), TripCount::add))
+        .values());
+  }
+
+  /**
+   * Counts of live and archived trips from or to a zone, or for all zones, with dates in [from, to)
+   *
+   * @param zoneId zone to count trips for, or null for all zones
+   */
+  public List<TripCount> getCounts(final UUID zoneId, final LocalDate from, final LocalDate to) {
+    final var scope = getScope(zoneId);
+    final var dates = DateUtils.getMinMaxDates(from, to);
+
+    return Stream.concat(tripCountIndex.getCounts(scope, dates).stream(),
+        tripCountRepository.findByScopeAndDateGreaterThanEqualAndDateLessThan(scope,
+            toDateKey(dates.getFirst(), MIN_DATE),
+            toDateKey(dates.getSecond(), MAX_DATE)).stream())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Mark the date buckets of trips about to be archived as needing their frozen counts recomputed
+   */
+  public void markStale(final Collection<TripRequest> tripRequests) {
+    final var zoneOffsets = new HashMap<UUID, Optional<ZoneOffset>>();
+
+    final var buckets = StreamUtils.safeStream(tripRequests)
+        .flatMap(tripRequest -> tripCountIndex.getDatesByScope(tripRequest, zoneOffsets).entrySet().stream())
+        .map(entry -> entry.getKey() + "|" + entry.getValue())
+        .distinct()
+        .toArray(String[]::new);
+
+    if (buckets.length > 0) {
+      redisTemplate.opsForSet().add(STALE_KEY, buckets);
+    }
+  }
+
+  /**
+   * Recompute the frozen counts of every stale date bucket from the archive
+   */
+  public void freezeStaleBuckets() {
+    StreamUtils.safeStream(redisTemplate.opsForSet().members(STALE_KEY))
+        .forEach(bucket -> {
+          final var separator = bucket.indexOf('|');
+          final var scope = bucket.substring(0, separator);
+          final var date = LocalDate.parse(bucket.substring(separator + 1));
+
+          final var tripCounts = countArchivedTrips(scope, date);
+
+          tripCountRepository.deleteByScopeAndDate(scope, date.toString());
+          tripCountRepository.saveAll(tripCounts);
+
+          redisTemplate.opsForSet().remove(STALE_KEY, bucket);
+        });
+  }
+
+  private List<TripCount> countArchivedTrips(final String scope, final LocalDate date) {
+    final var dates = Pair.of(date, date.plusDays(1L));
+
+    if (TripCountIndex.ALL_SCOPE.equals(scope)) {
+      try (final var tripRequests = tripArchiveRepository.findByPrimaryTimeConstraintTimeBetween(DateUtils.getQueryRange(DateUtils.getTimeRange(dates)))) {
+        return sum(tripRequests
+            .filter(request -> date.equals(tripUtils.getPrimaryTimeConstraint(request).toLocalDate()))
+            .map(request -> countOne(scope, date, request)));
+      }
+    }
+
+    final var zoneId = UUID.fromString(scope);
+
+    return referenceDataCache.getZones().findById(zoneId)
+        .map(zone -> {
+          final var offset = ZoneOffset.ofHours(zone.getTimeZone());
+          final var queryRange = DateUtils.getQueryRange(DateUtils.getTimeRange(dates, offset));
+
+          try (final var tripRequests = StreamUtils.merge(tripArchiveRepository.findByFromZoneIdAndPrimaryTimeConstraintTimeBetween(zoneId, queryRange),
+              tripArchiveRepository.findByToZoneIdAndPrimaryTimeConstraintTimeBetween(zoneId, queryRange)
+                  .filter(request -> !zoneId.equals(request.getFromZoneId())))) {
+            return sum(tripRequests
+                .filter(request -> date.equals(tripUtils.getPrimaryTimeConstraint(request).atZoneSameInstant(offset).toLocalDate()))
+                .map(request -> countOne(scope, date, request)));
+          }
+        })
+        .orElse(Collections.emptyList());
+  }
+
+  /**
+   * Freeze counts for the whole archive, if it has trips but no counts have been frozen yet
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void initialize() {
+    if (tripCountRepository.count() > 0 || tripArchiveRepository.count() == 0) {
+      return;
+    }
+
+    final var zoneOffsets = new HashMap<UUID, Optional<ZoneOffset>>();
+    final List<TripCount> tripCounts;
+
+    try (final var tripRequests = mongoTemplate.stream(new Query(), TripRequest.class)) {
+      tripCounts = sum(StreamUtils.streamIterator(tripRequests)
+          .flatMap(tripRequest -> tripCountIndex.getDatesByScope(tripRequest, zoneOffsets).entrySet().stream()
+              .map(entry -> countOne(entry.getKey(), entry.getValue(), tripRequest))));
+    }
+
+    tripCountRepository.saveAll(tripCounts);
+
+    log.info("Froze " + tripCounts.size() + " trip counts for archived trip requests");
+  }
+}
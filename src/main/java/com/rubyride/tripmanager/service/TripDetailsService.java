@@ -0,0 +1,156 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.model.*;
+import com.rubyride.tripmanager.repository.mongo.DriverRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
+import com.rubyride.tripmanager.repository.mongo.UserRepository;
+import com.rubyride.tripmanager.repository.redis.ShiftRepository;
+import com.rubyride.tripmanager.utility.StreamUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Adds places and driver details to trip requests for riders. All the trips in a result are enriched together, so each
+ * kind of entity is fetched with one query however many trips there are; places and vehicles come from
+ * {@link ReferenceDataCache}.
+ */
+@Service
+public class TripDetailsService {
+  private final DriverRepository driverRepository;
+  private final ShiftRepository shiftRepository;
+  private final UserRepository userRepository;
+  private final ReferenceDataCache referenceDataCache;
+
+  public TripDetailsService(final DriverRepository driverRepository, final ShiftRepository shiftRepository, final UserRepository userRepository, final ReferenceDataCache referenceDataCache) {
+    this.driverRepository = driverRepository;
+    this.shiftRepository = shiftRepository;
+    this.userRepository = userRepository;
+    this.referenceDataCache = referenceDataCache;
+  }
+
+  // Vehicles as shown to riders, without their registration and insurance details
+  private static Vehicle getPublicDetails(final Vehicle vehicle) {
+    return new Vehicle()
+        .make(vehicle.getMake())
+        .model(vehicle.getModel())
+        .trim(vehicle.getTrim())
+        .year(vehicle.getYear())
+        .plate(vehicle.getPlate())
+        .plateState(vehicle.getPlateState())
+        .color(vehicle.getColor())
+        .capacity(vehicle.getCapacity())
+        .image(vehicle.getImage());
+  }
+
+  /**
+   * Find the details of the drivers of a set of trips
+   *
+   * @return driver details by trip request ID; trips with no driver are omitted
+   */
+  public Map<UUID, DriverDetails> getDriverDetails(final Collection<TripRequest> tripRequests) {
+    final var driverIdsByShiftId = shiftRepository.findDriverIdsById(tripRequests.stream()
+        .map(TripRequest::getShiftId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet()));
+
+    if (driverIdsByShiftId.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    final var userIds = new HashSet<>(driverIdsByShiftId.values());
+
+    final var drivers = driverRepository.findByUserIdIn(userIds).stream()
+        .collect(Collectors.toMap(Driver::getUserId, Function.identity(), (a, b) -> a));
+
+    final var users = StreamUtils.streamIterable(userRepository.findAllById(userIds))
+        .collect(Collectors.toMap(User::getId, Function.identity()));
+
+    final var vehicles = referenceDataCache.getVehicles().findAllById(drivers.values().stream()
+        .map(Driver::getVehicle)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet()));
+
+    final var driverDetails = new HashMap<UUID, DriverDetails>();
+
+    tripRequests.forEach(tripRequest -> Optional.ofNullable(tripRequest.getShiftId())
+        .map(driverIdsByShiftId::get)
+        .ifPresent(userId -> Optional.ofNullable(users.get(userId))
+            .ifPresent(user -> {
+              final var driver = drivers.getOrDefault(userId, new Driver());
+
+              driverDetails.put(tripRequest.getId(), new DriverDetails()
+                  .firstName(user.getFirstName())
+                  .lastName(user.getLastName())
+                  .phoneNumber(user.getPrimaryPhone())
+                  .image(driver.getImage())
+                  .hireDate(driver.getHireDate())
+                  .vaccinationStatus(driver.getVaccinationStatus())
+                  .vehicle(Optional.ofNullable(driver.getVehicle())
+                      .map(vehicles::get)
+                      .map(TripDetailsService::getPublicDetails)
+                      .orElse(new Vehicle())));
+            })));
+
+    return driverDetails;
+  }
+
+  public Optional<DriverDetails> getDriverDetails(final TripRequest tripRequest) {
+    return Optional.ofNullable(getDriverDetails(List.of(tripRequest)).get(tripRequest.getId()));
+  }
+
+  /**
+   * Add places and driver details to a list of trips
+   *
+   * @return the trips in the same order; trips whose places can't be found are null
+   */
+  public List<TripRequestWithLocationsAndDriverDetails> withLocationsAndDriverDetails(final List<TripRequest> tripRequests) {
+    final var places = referenceDataCache.getPlaces().findAllById(tripRequests.stream()
+        .flatMap(tripRequest -> Stream.of(tripRequest.getFromLocationId(), tripRequest.getToLocationId()))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet()));
+
+    final var driverDetails = getDriverDetails(tripRequests);
+
+    return tripRequests.stream()
+        .map(tripRequest -> {
+          final var fromLocation = places.get(tripRequest.getFromLocationId());
+          final var toLocation = places.get(tripRequest.getToLocationId());
+
+          if (fromLocation == null || toLocation == null) {
+            return null;
+          }
+
+          return new TripRequestWithLocationsAndDriverDetails()
+              .id(tripRequest.getId())
+              .riderId(tripRequest.getRiderId())
+              .fromLocation(fromLocation)
+              .toLocation(toLocation)
+              .fromZoneId(fromLocation.getZoneId())
+              .toZoneId(toLocation.getZoneId())
+              .shiftId(tripRequest.getShiftId())
+              .driverDetails(driverDetails.get(tripRequest.getId()))
+              .passengerCount(tripRequest.getPassengerCount())
+              .tripRequestType(tripRequest.getTripRequestType())
+              .primaryTimeConstraint(tripRequest.getPrimaryTimeConstraint())
+              .secondaryTimeConstraint(tripRequest.getSecondaryTimeConstraint())
+              .leftFloat(tripRequest.getLeftFloat())
+              .rightFloat(tripRequest.getRightFloat())
+              .partnerTransportationRequestId(tripRequest.getPartnerTransportationRequestId())
+              .status(tripRequest.getStatus())
+              .specialInstructions(tripRequest.getSpecialInstructions())
+              .lastUpdated(tripRequest.getLastUpdated());
+        })
+        .collect(Collectors.toList());
+  }
+
+  public Optional<TripRequestWithLocationsAndDriverDetails> withLocationsAndDriverDetails(final TripRequest tripRequest) {
+    return Optional.ofNullable(tripRequest)
+        .map(List::of)
+        .map(this::withLocationsAndDriverDetails)
+        .map(list -> list.get(0));
+  }
+}
@@ -0,0 +1,77 @@
+package com.rubyride.tripmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Relays STOMP topic messages between trip manager instances through Redis pub/sub.
+ * <p>
+ * The in-process simple broker only reaches clients connected to the same JVM, so each message is published once to
+ * a Redis channel that every instance (including the publisher) subscribes to; each instance then delivers it to its
+ * own local subscribers. With the relay disabled, messages go straight to the local broker as before.
+ */
+@Service
+public class WebSocketRelayService {
+  private static final Logger log = LoggerFactory.getLogger(WebSocketRelayService.class);
+
+  private static final String CHANNEL = WebSocketRelayService.class.getName() + ":messages";
+
+  private final SimpMessageSendingOperations messageService;
+  private final StringRedisTemplate redisTemplate;
+  private final ObjectMapper objectMapper;
+  private final boolean relayEnabled;
+
+  public WebSocketRelayService(final SimpMessageSendingOperations messageService, final StringRedisTemplate redisTemplate, final RedisMessageListenerContainer redisMessageListenerContainer, final ObjectMapper objectMapper, @Value("${WEBSOCKET_RELAY:true}") final boolean relayEnabled) {
+    this.messageService = messageService;
+    this.redisTemplate = redisTemplate;
+    this.objectMapper = objectMapper;
+    this.relayEnabled = relayEnabled;
+
+    if (relayEnabled) {
+      redisMessageListenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+    }
+  }
+
+  /**
+   * Send a message to the subscribers of a destination on every instance
+   *
+   * @param destination STOMP destination, e.g. /topic/trips
+   * @param payload     Message payload, sent as JSON
+   */
+  public void convertAndSend(final String destination, final Object payload) {
+    if (relayEnabled) {
+      try {
+        final var envelope = objectMapper.createObjectNode()
+            .put("destination", destination)
+            .set("payload", objectMapper.valueToTree(payload));
+
+        redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(envelope));
+        return;
+      } catch (final Exception e) {
+        log.error("Unable to relay message for " + destination + ", delivering locally only", e);
+      }
+    }
+
+    messageService.convertAndSend(destination, payload);
+  }
+
+  private void onMessage(final Message message, final byte[] pattern) {
+    try {
+      final var envelope = objectMapper.readTree(message.getBody());
+
+      messageService.convertAndSend(envelope.path("destination").asText(), envelope.path("payload"));
+    } catch (final IOException e) {
+      log.error("Unable to read relayed WebSocket message", e);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package com.rubyride.tripmanager.service;
+
+import com.rubyride.model.LatitudeLongitude;
+import com.rubyride.model.Zone;
+import com.rubyride.tripmanager.repository.mongo.ZoneRepository;
+import com.rubyride.tripmanager.utility.GeoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.geo.Point;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * In-memory spatial index of zone bounds, used to resolve which zone (if any) contains a point without loading and
+ * re-parsing every zone polygon on each lookup.
+ * <p>
+ * Zones are bucketed into a uniform grid by bounding box; candidates from the matching cell are then checked exactly
+ * against their prepared polygon. The index is built lazily from {@link ZoneRepository} and dropped whenever a zone
+ * is changed through {@link #invalidate(UUID)}.
+ */
+@Service
+public class ZoneIndexService {
+  private static final Logger log = LoggerFactory.getLogger(ZoneIndexService.class);
+
+  // Grid cell size in degrees
+  private static final double CELL_SIZE = 0.25D;
+
+  // Zones whose bounding box covers more cells than this are checked on every lookup instead of being bucketed
+  private static final long MAX_CELLS_PER_ZONE = 4_096L;
+
+  private final GeoUtils geoUtils;
+  private final ZoneRepository zoneRepository;
+
+  private volatile ZoneIndex index;
+
+  // Bumped, under the lock, whenever a zone changes; an index built from data read before the change isn't published
+  private long generation;
+
+  public ZoneIndexService(final GeoUtils geoUtils, final ZoneRepository zoneRepository) {
+    this.geoUtils = geoUtils;
+    this.zoneRepository = zoneRepository;
+  }
+
+  private static long getCellKey(final long cellX, final long cellY) {
+    return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+  }
+
+  private static long getCell(final double coordinate) {
+    return (long) Math.floor(coordinate / CELL_SIZE);
+  }
+
+  /**
+   * Find the zone containing a location
+   *
+   * @param location Location to look up
+   * @return ID of the first zone whose bounds contain the location, if any
+   */
+  public Optional<UUID> getZoneIdForLocation(final LatitudeLongitude location) {
+    if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+      return Optional.empty();
+    }
+
+    return getZoneIdForLocation(location.getLatitude(), location.getLongitude());
+  }
+
+  public Optional<UUID> getZoneIdForLocation(final double latitude, final double longitude) {
+    return getIndex().find(longitude, latitude);
+  }
+
+  /**
+   * Drop the index (and the cached polygon for the given zone) so the next lookup rebuilds it from the repository
+   *
+   * @param zoneId ID of zone that was added, changed or removed
+   */
+  public synchronized void invalidate(final UUID zoneId) {
+    if (zoneId != null) {
+      geoUtils.invalidatePolygon(zoneId);
+    }
+
+    generation++;
+    index = null;
+  }
+
+  // Periodically rebuild so zone changes made elsewhere are eventually picked up. The index is built outside the lock
+  // so lookups carry on against the current one meanwhile.
+  @Scheduled(fixedDelay = 300_000L, initialDelay = 300_000L)
+  public void refresh() {
+    final long startGeneration;
+
+    synchronized (this) {
+      startGeneration = generation;
+    }
+
+    geoUtils.invalidatePolygons();
+    final var newIndex = buildIndex();
+
+    synchronized (this) {
+      if (generation == startGeneration) {
+        index = newIndex;
+      }
+    }
+  }
+
+  private ZoneIndex getIndex() {
+    var currentIndex = index;
+
+    if (currentIndex == null) {
+      synchronized (this) {
+        currentIndex = index;
+
+        if (currentIndex == null) {
+          currentIndex = buildIndex();
+          index = currentIndex;
+        }
+      }
+    }
+
+    return currentIndex;
+  }
+
+  private ZoneIndex buildIndex() {
+    final var startTime = System.nanoTime();
+    final var zoneIndex = new ZoneIndex();
+
+    zoneRepository.findAll()
+        .forEach(zone -> {
+          try {
+            Optional.ofNullable(prepare(zone))
+                .ifPresent(zoneIndex::add);
+          } catch (final Exception e) {
+            log.error("Unable to index bounds for zone " + zone.getId(), e);
+          }
+        });
+
+    log.info("Built zone index with " + zoneIndex.size + " zones in " + (System.nanoTime() - startTime) / 1_000_000L + "ms");
+
+    return zoneIndex;
+  }
+
+  private PreparedZone prepare(final Zone zone) {
+    final var polygon = geoUtils.getPolygonFromString(zone.getId(), zone.getBounds());
+
+    if (polygon == null) {
+      return null;
+    }
+
+    final List<Point> points = polygon.getPoints();
+
+    if (points.size() < 3) {
+      return null;
+    }
+
+    final var xs = new double[points.size()];
+    final var ys = new double[points.size()];
+
+    for (var i = 0; i < points.size(); i++) {
+      xs[i] = points.get(i).getX();
+      ys[i] = points.get(i).getY();
+    }
+
+    return new PreparedZone(zone.getId(), xs, ys);
+  }
+
+  private static final class PreparedZone {
+    private final UUID id;
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    private PreparedZone(final UUID id, final double[] xs, final double[] ys) {
+      this.id = id;
+      this.xs = xs;
+      this.ys = ys;
+      this.minX = Arrays.stream(xs).min().orElse(0D);
+      this.minY = Arrays.stream(ys).min().orElse(0D);
+      this.maxX = Arrays.stream(xs).max().orElse(0D);
+      this.maxY = Arrays.stream(ys).max().orElse(0D);
+    }
+
+    // Even-odd ray casting; ring may or may not be explicitly closed
+    private boolean contains(final double x, final double y) {
+      if (x < minX || x > maxX || y < minY || y > maxY) {
+        return false;
+      }
+
+      var inside = false;
+
+      for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+        if ((ys[i] > y) != (ys[j] > y) &&
+            x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+          inside = !inside;
+        }
+      }
+
+      return inside;
+    }
+  }
+
+  private static final class ZoneIndex {
+    private final Map<Long, List<PreparedZone>> cells = new HashMap<>();
+    private final List<PreparedZone> oversizedZones = new ArrayList<>();
+    private int size;
+
+    private void add(final PreparedZone zone) {
+      final var minCellX = getCell(zone.minX);
+      final var maxCellX = getCell(zone.maxX);
+      final var minCellY = getCell(zone.minY);
+      final var maxCellY = getCell(zone.maxY);
+
+      if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > MAX_CELLS_PER_ZONE) {
+        oversizedZones.add(zone);
+      } else {
+        for (var cellX = minCellX; cellX <= maxCellX; cellX++) {
+          for (var cellY = minCellY; cellY <= maxCellY; cellY++) {
+            cells.computeIfAbsent(getCellKey(cellX, cellY), key -> new ArrayList<>(1))
+                .add(zone);
+          }
+        }
+      }
+
+      size++;
+    }
+
+    private Optional<UUID> find(final double x, final double y) {
+      for (final var zone : cells.getOrDefault(getCellKey(getCell(x), getCell(y)), Collections.emptyList())) {
+        if (zone.contains(x, y)) {
+          return Optional.of(zone.id);
+        }
+      }
+
+      for (final var zone : oversizedZones) {
+        if (zone.contains(x, y)) {
+          return Optional.of(zone.id);
+        }
+      }
+
+      return Optional.empty();
+    }
+  }
+}
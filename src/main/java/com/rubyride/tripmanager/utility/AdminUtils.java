@@ -1,22 +1,30 @@
 package com.rubyride.tripmanager.utility;
 
+import com.rubyride.model.*;
 import com.rubyride.tripmanager.repository.mongo.*;
+import com.rubyride.tripmanager.repository.redis.RedisEntityReader;
 import com.rubyride.tripmanager.repository.redis.ShiftRepository;
 import com.rubyride.tripmanager.repository.redis.TripRepository;
 import com.rubyride.tripmanager.repository.redis.UserTokensRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.rubyride.tripmanager.security.UserTokens;
+import com.rubyride.tripmanager.service.ArchiveService;
+import com.rubyride.tripmanager.service.ReindexService;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Component;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 @Component
 public class AdminUtils {
-  private static final Logger log = LoggerFactory.getLogger(AdminUtils.class);
-
   private final ShiftRepository shiftRepository;
   private final TripRepository tripRepository;
   private final UserTokensRepository tokensRepository;
@@ -33,8 +41,12 @@ public class AdminUtils {
   private final ZoneRepository zoneRepository;
 
   private final TripUtils tripUtils;
+  private final ArchiveService archiveService;
+  private final ReindexService reindexService;
+  private final RedisEntityReader entityReader;
+  private final MongoTemplate mongoTemplate;
 
-  public AdminUtils(final ShiftRepository shiftRepository, final TripRepository tripRepository, final UserTokensRepository tokensRepository, final DriverRepository driverRepository, final DriverReviewRepository driverReviewRepository, final GroupRepository groupRepository, final PlaceRepository placeRepository, final RiderReviewRepository riderReviewRepository, final ShiftArchiveRepository shiftArchiveRepository, final TripArchiveRepository tripArchiveRepository, final UserRepository userRepository, final VehicleRepository vehicleRepository, final ZoneRepository zoneRepository, final TripUtils tripUtils) {
+  public AdminUtils(final ShiftRepository shiftRepository, final TripRepository tripRepository, final UserTokensRepository tokensRepository, final DriverRepository driverRepository, final DriverReviewRepository driverReviewRepository, final GroupRepository groupRepository, final PlaceRepository placeRepository, final RiderReviewRepository riderReviewRepository, final ShiftArchiveRepository shiftArchiveRepository, final TripArchiveRepository tripArchiveRepository, final UserRepository userRepository, final VehicleRepository vehicleRepository, final ZoneRepository zoneRepository, final TripUtils tripUtils, final ArchiveService archiveService, final ReindexService reindexService, final RedisEntityReader entityReader, final MongoTemplate mongoTemplate) {
     this.shiftRepository = shiftRepository;
     this.tripRepository = tripRepository;
     this.tokensRepository = tokensRepository;
@@ -49,52 +61,64 @@ public class AdminUtils {
     this.vehicleRepository = vehicleRepository;
     this.zoneRepository = zoneRepository;
     this.tripUtils = tripUtils;
+    this.archiveService = archiveService;
+    this.reindexService = reindexService;
+    this.entityReader = entityReader;
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  // Reload just before saving so concurrent changes made since the IDs were listed aren't overwritten
+  private static <T> Consumer<UUID> resave(final CrudRepository<T, UUID> repository, final UnaryOperator<T> preprocessor) {
+    return id -> repository.findById(id)
+        .map(preprocessor)
+        .ifPresent(repository::save);
   }
 
-  private static <T> void reindexRepository(final CrudRepository<T, UUID> repository, final Function<T, T> preprocessor) {
-    repository.findAll()
-        .forEach(item -> {
-          try {
-            repository.delete(item);
-            repository.save(preprocessor.apply(item));
-          } catch (final Exception e) {
-            log.error("Exception caught", e);
-          }
-        });
+  private Supplier<List<UUID>> findRedisIds(final Class<?> type) {
+    return () -> entityReader.findIds(type, UUID.class);
   }
 
-  public void reindexRepositories() {
-    // Redis-based repositories
-    reindexRepository(shiftRepository, Function.identity());
-    reindexRepository(tokensRepository, token -> token.id(null));
-    reindexRepository(tripRepository, tripUtils::setZones);
+  private <T> Supplier<List<UUID>> findMongoIds(final Class<T> type, final Function<T, UUID> idGetter) {
+    return () -> {
+      final var query = new Query();
+      query.fields().include("id");
 
-    // Mongo-based repositories
-    reindexRepository(driverRepository, Function.identity());
-    reindexRepository(driverReviewRepository, Function.identity());
-    reindexRepository(groupRepository, Function.identity());
-    reindexRepository(placeRepository, Function.identity());
-    reindexRepository(riderReviewRepository, Function.identity());
-    reindexRepository(shiftArchiveRepository, Function.identity());
-    reindexRepository(tripArchiveRepository, Function.identity());
-    reindexRepository(userRepository, Function.identity());
-    reindexRepository(vehicleRepository, Function.identity());
-    reindexRepository(zoneRepository, Function.identity());
+      try (final var items = mongoTemplate.stream(query, type)) {
+        return StreamUtils.streamIterator(items)
+            .map(idGetter)
+            .collect(Collectors.toList());
+      }
+    };
   }
 
-  public void archiveShiftsAndTrips(final OffsetDateTime time) {
-    StreamUtils.streamIterable(shiftRepository.findAll())
-        .filter(shift -> time.compareTo(ObjectUtils.getOrDefault(shift.getEndTime(), OffsetDateTime.now())) >= 0)
-        .forEach(shift -> {
-          shiftArchiveRepository.save(shift);
-          shiftRepository.delete(shift);
-        });
+  /**
+   * Start a background job that rewrites every entity in place, rebuilding its secondary indexes. Trips and shifts in
+   * Redis are rewritten in the configured storage format, so this also migrates them when compact storage is switched
+   * on or off.
+   *
+   * @return ID of the job, to check its progress with
+   */
+  public UUID reindexRepositories() {
+    return reindexService.start(List.of(
+        // Redis-based repositories; shifts go through the versioned update so concurrent edits aren't lost
+        new ReindexService.Target("shifts", findRedisIds(Shift.class), shiftId -> shiftRepository.update(shiftId, UnaryOperator.identity())),
+        new ReindexService.Target("tokens", findRedisIds(UserTokens.class), resave(tokensRepository, UnaryOperator.identity())),
+        new ReindexService.Target("trips", findRedisIds(TripRequest.class), resave(tripRepository, tripUtils::setZones)),
 
-    StreamUtils.streamIterable(tripRepository.findAll())
-        .filter(trip -> (time.compareTo(tripUtils.getPrimaryTimeConstraint(trip)) >= 0))
-        .forEach(trip -> {
-          tripArchiveRepository.save(trip);
-          tripRepository.delete(trip);
-        });
+        // Mongo-based repositories
+        new ReindexService.Target("drivers", findMongoIds(Driver.class, Driver::getId), resave(driverRepository, UnaryOperator.identity())),
+        new ReindexService.Target("driverReviews", findMongoIds(TripReview.class, TripReview::getId), resave(driverReviewRepository, UnaryOperator.identity())),
+        new ReindexService.Target("groups", findMongoIds(Group.class, Group::getId), resave(groupRepository, UnaryOperator.identity())),
+        new ReindexService.Target("places", findMongoIds(Place.class, Place::getId), resave(placeRepository, UnaryOperator.identity())),
+        new ReindexService.Target("riderReviews", findMongoIds(TripReview.class, TripReview::getId), resave(riderReviewRepository, UnaryOperator.identity())),
+        new ReindexService.Target("archivedShifts", findMongoIds(Shift.class, Shift::getId), resave(shiftArchiveRepository, UnaryOperator.identity())),
+        new ReindexService.Target("archivedTrips", findMongoIds(TripRequest.class, TripRequest::getId), resave(tripArchiveRepository, UnaryOperator.identity())),
+        new ReindexService.Target("users", findMongoIds(User.class, User::getId), resave(userRepository, UnaryOperator.identity())),
+        new ReindexService.Target("vehicles", findMongoIds(Vehicle.class, Vehicle::getId), resave(vehicleRepository, UnaryOperator.identity())),
+        new ReindexService.Target("zones", findMongoIds(Zone.class, Zone::getId), resave(zoneRepository, UnaryOperator.identity()))));
+  }
+
+  public void archiveShiftsAndTrips(final OffsetDateTime time) {
+    archiveService.archiveShiftsAndTrips(time);
   }
 }
@@ -1,6 +1,5 @@
 package com.rubyride.tripmanager.utility;
 
-import com.rubyride.model.Event;
 import com.rubyride.model.Shift;
 import org.springframework.stereotype.Component;
 
@@ -8,60 +7,67 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Splits shifts into the periods between their completed events: P1 before the first pickup of a shift, P3 while
+ * carrying passengers and P2 while empty between trips
+ */
 @Component
 public class AnalyticsUtils {
+  public static final String CSV_HEADER = "driver_id,period,start_timestamp,end_timestamp";
+
+  /**
+   * Build the analytics CSV for a list of shifts, with a header line
+   */
   public String getAnalytics(final List<Shift> shifts) {
+    return Stream.concat(Stream.of(CSV_HEADER), getCsvRows(shifts).stream())
+        .collect(Collectors.joining("\n", "", "\n"));
+  }
+
+  /**
+   * Build the analytics CSV lines for a list of shifts, without a header
+   */
+  public List<String> getCsvRows(final List<Shift> shifts) {
     final List<AnalyticsRow> output = new ArrayList<>();
 
-    shifts.forEach(shift -> {
-      final var completeEventIterator = shift.getEvents().stream()
-          .filter(event -> Boolean.TRUE.equals(event.getComplete()))
-          .iterator();
-
-      if (!completeEventIterator.hasNext()) {
-        return;
-      }
-
-      var currentPassengers = 0;
-
-      Event currentEvent = completeEventIterator.next(),
-          nextEvent = completeEventIterator.next();
-
-      while (currentPassengers == 0 && completeEventIterator.hasNext()) {
-        currentEvent = nextEvent;
-        nextEvent = completeEventIterator.next();
-
-        currentPassengers += currentEvent.getPassengerDelta();
-      }
-
-      output.add(new AnalyticsRow(
-          shift.getDriverId(),
-          TimePeriodType.P1,
-          currentEvent.getTime().toEpochSecond(),
-          nextEvent.getTime().toEpochSecond()
-      ));
-
-      while (completeEventIterator.hasNext()) {
-        currentEvent = nextEvent;
-        nextEvent = completeEventIterator.next();
-
-        currentPassengers += currentEvent.getPassengerDelta();
-
-        output.add(new AnalyticsRow(
-            shift.getDriverId(),
-            currentPassengers > 0 ? TimePeriodType.P3 :
-                TimePeriodType.P2,
-            currentEvent.getTime().toEpochSecond(),
-            nextEvent.getTime().toEpochSecond()
-        ));
-      }
-    });
-
-    return "driver_id,period,start_timestamp,end_timestamp" +
-        output.stream()
-            .map(AnalyticsRow::toCsv)
-            .collect(Collectors.joining("\n"));
+    StreamUtils.safeStream(shifts)
+        .filter(shift -> shift.getDriverId() != null)
+        .forEach(shift -> {
+          final var completeEventIterator = StreamUtils.safeStream(shift.getEvents())
+              .filter(event -> Boolean.TRUE.equals(event.getComplete()) && event.getTime() != null)
+              .iterator();
+
+          if (!completeEventIterator.hasNext()) {
+            return;
+          }
+
+          var currentPassengers = 0;
+          var pickedUp = false;
+          var currentEvent = completeEventIterator.next();
+
+          while (completeEventIterator.hasNext()) {
+            final var nextEvent = completeEventIterator.next();
+
+            currentPassengers += ObjectUtils.getOrDefault(currentEvent.getPassengerDelta(), 0);
+            pickedUp |= currentPassengers > 0;
+
+            output.add(new AnalyticsRow(
+                shift.getDriverId(),
+                currentPassengers > 0 ? TimePeriodType.P3 :
+                    pickedUp ? TimePeriodType.P2 :
+                        TimePeriodType.P1,
+                currentEvent.getTime().toEpochSecond(),
+                nextEvent.getTime().toEpochSecond()
+            ));
+
+            currentEvent = nextEvent;
+          }
+        });
+
+    return output.stream()
+        .map(AnalyticsRow::toCsv)
+        .collect(Collectors.toList());
   }
 
   private enum TimePeriodType {
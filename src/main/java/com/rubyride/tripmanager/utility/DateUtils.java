@@ -1,11 +1,18 @@
 package com.rubyride.tripmanager.utility;
 
+import org.springframework.data.domain.Range;
 import org.springframework.data.util.Pair;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 
 public final class DateUtils {
+  // Earliest and latest times that can be stored as a Mongo date
+  private static final OffsetDateTime MIN_STORED_TIME = Instant.ofEpochMilli(Long.MIN_VALUE).atOffset(ZoneOffset.UTC);
+  private static final OffsetDateTime MAX_STORED_TIME = Instant.ofEpochMilli(Long.MAX_VALUE).atOffset(ZoneOffset.UTC);
+
   private DateUtils() {
   }
 
@@ -38,4 +45,55 @@ public final class DateUtils {
 
     return Pair.of(minDate, maxDate);
   }
+
+  /**
+   * Convert a [from, to) date range into the range of instants it covers at the given offset
+   *
+   * @param dates  min and max dates, as returned by {@link #getMinMaxDates(LocalDate, LocalDate)}
+   * @param offset offset dates are local to
+   * @return [from, to) instant range; unbounded dates map to {@link OffsetDateTime#MIN} / {@link OffsetDateTime#MAX}
+   */
+  public static Pair<OffsetDateTime, OffsetDateTime> getTimeRange(final Pair<LocalDate, LocalDate> dates, final ZoneOffset offset) {
+    return getTimeRange(dates, offset, offset);
+  }
+
+  /**
+   * Convert a [from, to) date range into the widest range of instants that could fall on those dates at any offset
+   *
+   * @param dates min and max dates, as returned by {@link #getMinMaxDates(LocalDate, LocalDate)}
+   * @return [from, to) instant range; unbounded dates map to {@link OffsetDateTime#MIN} / {@link OffsetDateTime#MAX}
+   */
+  public static Pair<OffsetDateTime, OffsetDateTime> getTimeRange(final Pair<LocalDate, LocalDate> dates) {
+    return getTimeRange(dates, ZoneOffset.MAX, ZoneOffset.MIN);
+  }
+
+  private static Pair<OffsetDateTime, OffsetDateTime> getTimeRange(final Pair<LocalDate, LocalDate> dates, final ZoneOffset fromOffset, final ZoneOffset toOffset) {
+    final var from = LocalDate.MIN.equals(dates.getFirst()) ?
+        OffsetDateTime.MIN :
+        dates.getFirst().atStartOfDay().atOffset(fromOffset);
+
+    final var to = LocalDate.MAX.equals(dates.getSecond()) ?
+        OffsetDateTime.MAX :
+        dates.getSecond().atStartOfDay().atOffset(toOffset);
+
+    return Pair.of(from, to);
+  }
+
+  /**
+   * Convert a [from, to) instant range into a range usable in Mongo repository queries
+   *
+   * @param timeRange [from, to) instant range, as returned by {@link #getTimeRange(Pair)}
+   * @return right-open range with unbounded ends clamped to times that can be stored as a Mongo date
+   */
+  public static Range<OffsetDateTime> getQueryRange(final Pair<OffsetDateTime, OffsetDateTime> timeRange) {
+    final var from = timeRange.getFirst().isBefore(MIN_STORED_TIME) ?
+        MIN_STORED_TIME :
+        timeRange.getFirst();
+
+    final var to = timeRange.getSecond().isAfter(MAX_STORED_TIME) ?
+        MAX_STORED_TIME :
+        timeRange.getSecond();
+
+    return Range.rightOpen(from, to);
+  }
 }
@@ -60,6 +60,14 @@ public class GeoUtils {
     }
   }
 
+  public void invalidatePolygon(final UUID zoneId) {
+    polygonCache.invalidate(zoneId);
+  }
+
+  public void invalidatePolygons() {
+    polygonCache.invalidateAll();
+  }
+
   @SuppressWarnings("unused")
   private enum GeoJsonObjectType {
     FEATURE_COLLECTION(FeatureCollection.class,
@@ -3,11 +3,11 @@ package com.rubyride.tripmanager.utility;
 import com.rubyride.model.Event;
 import com.rubyride.model.EventAction;
 import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+import org.springframework.beans.BeanUtils;
 
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.UUID;
+import java.util.*;
 import java.util.stream.IntStream;
 
 public final class SchedulingUtils {
@@ -93,6 +93,29 @@ public final class SchedulingUtils {
     }
 
     // now actually update event (definitely already exists at this point)
+    mergeEvent(events, event);
+
+    return sortEvents(shift.events(events));
+  }
+
+  /**
+   * Add or update several events (without anchors) in one pass, sorting the shift's events once at the end
+   */
+  public static Shift addOrUpdateEvents(final Shift shift, final List<Event> newEvents) {
+    final var events = ObjectUtils.getOrDefault(shift.getEvents(), new ArrayList<Event>());
+
+    newEvents.forEach(event -> {
+      if (event.getId() == null) {
+        event.setId(UUID.randomUUID());
+      }
+
+      mergeEvent(events, event);
+    });
+
+    return sortEvents(shift.events(events));
+  }
+
+  private static void mergeEvent(final List<Event> events, final Event event) {
     events.stream()
         .filter(e -> org.springframework.util.ObjectUtils.nullSafeEquals(event.getTripRequestId(), e.getTripRequestId()))
         .filter(e -> org.springframework.util.ObjectUtils.nullSafeEquals(event.getAction(), (e.getAction())))
@@ -100,8 +123,6 @@ public final class SchedulingUtils {
         .ifPresentOrElse(
             existingEvent -> updateEvent(existingEvent, event),
             () -> events.add(event));
-
-    return sortEvents(shift.events(events));
   }
 
   public static Shift sortEvents(final Shift shift) {
@@ -112,6 +133,53 @@ public final class SchedulingUtils {
     return shift;
   }
 
+  /**
+   * Apply a delta to a shift at the preceding sequence number, giving the shift as it was saved when the delta was
+   * recorded
+   */
+  public static Shift applyDelta(final Shift shift, final ShiftEventDelta delta) {
+    final var events = ObjectUtils.getOrDefault(shift.getEvents(), new ArrayList<Event>());
+    final var removedEventIds = new HashSet<>(ObjectUtils.getOrDefault(delta.getRemovedEventIds(), Collections.emptyList()));
+
+    events.removeIf(event -> removedEventIds.contains(event.getId()));
+
+    // Changed events replace the existing event outright as the delta carries their complete state
+    for (final var event : ObjectUtils.getOrDefault(delta.getEvents(), Collections.<Event>emptyList())) {
+      final var position = IntStream.range(0, events.size())
+          .filter(i -> event.getId().equals(events.get(i).getId()))
+          .findFirst()
+          .orElse(-1);
+
+      if (position != -1) {
+        events.set(position, event);
+      } else {
+        final var previousEventId = ObjectUtils.getOrDefault(delta.getInsertedAfter(), Collections.<UUID, UUID>emptyMap())
+            .get(event.getId());
+
+        events.add(IntStream.range(0, events.size())
+                .filter(i -> previousEventId != null && previousEventId.equals(events.get(i).getId()))
+                .findFirst()
+                .orElse(previousEventId == null ? -1 : events.size() - 1) + 1,
+            event);
+      }
+    }
+
+    if (delta.getOrder() != null) {
+      final var order = delta.getOrder();
+      events.sort(Comparator.comparingInt(event -> order.indexOf(event.getId())));
+    }
+
+    if (delta.getTrips() != null) {
+      shift.setTrips(new ArrayList<>(delta.getTrips()));
+    }
+
+    // The delta carries every property other than events and trips, so copy them all, cleared ones included
+    Optional.ofNullable(delta.getProperties())
+        .ifPresent(properties -> BeanUtils.copyProperties(properties, shift, "id", "events", "trips"));
+
+    return shift.events(events);
+  }
+
   private static Event updateEvent(final Event existingEvent, final Event event) {
     if (event.getTime() != null) {
       existingEvent.setTime(event.getTime());
@@ -4,6 +4,8 @@ import com.rubyride.model.Role;
 import com.rubyride.model.User;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
 import com.rubyride.tripmanager.security.SecurityConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -21,11 +23,18 @@ import java.util.stream.Collectors;
 
 @Component
 public class SpringContext implements ApplicationContextAware {
+  // Authenticated user resolved for the request or STOMP message being handled on this thread
+  private static final ThreadLocal<AuthenticatedUser> authenticatedUser = new ThreadLocal<>();
+
   private final UserRepository userRepository;
+  private final Counter authenticatedUserHits;
+  private final Counter authenticatedUserMisses;
   private ApplicationContext context;
 
-  public SpringContext(final UserRepository userRepository) {
+  public SpringContext(final UserRepository userRepository, final MeterRegistry meterRegistry) {
     this.userRepository = userRepository;
+    this.authenticatedUserHits = meterRegistry.counter("tripmanager.authenticated.user.lookups", "result", "hit");
+    this.authenticatedUserMisses = meterRegistry.counter("tripmanager.authenticated.user.lookups", "result", "miss");
   }
 
   /**
@@ -49,9 +58,45 @@ public class SpringContext implements ApplicationContextAware {
     return TokenUtils.getUserNameFromToken(request.getHeader(SecurityConstants.HEADER_STRING));
   }
 
+  /**
+   * Resolve the authenticated user and roles once per authentication. HTTP requests are authenticated individually,
+   * so this is once per request; STOMP sessions reuse their principal. Either way the cached user is cleared via
+   * {@link #clearAuthenticatedUser()} once the request (by the authorization filter) or message (by the inbound
+   * channel) has been handled, so it isn't held by a pooled thread.
+   */
+  private AuthenticatedUser resolveAuthenticatedUser() {
+    final var authentication = SecurityContextHolder.getContext().getAuthentication();
+    final var cachedUser = authenticatedUser.get();
+
+    if (cachedUser != null && cachedUser.authentication == authentication) {
+      authenticatedUserHits.increment();
+      return cachedUser;
+    }
+
+    authenticatedUserMisses.increment();
+
+    final var resolvedUser = new AuthenticatedUser(authentication,
+        getAuthenticatedUserName()
+            .map(userRepository::findByUserName),
+        Optional.ofNullable(authentication)
+            .map(Authentication::getAuthorities)
+            .orElse(Collections.emptyList())
+            .stream()
+            .map(GrantedAuthority::getAuthority)
+            .map(Role::fromValue)
+            .collect(Collectors.toUnmodifiableList()));
+
+    authenticatedUser.set(resolvedUser);
+
+    return resolvedUser;
+  }
+
+  public void clearAuthenticatedUser() {
+    authenticatedUser.remove();
+  }
+
   public Optional<User> getAuthenticatedUser() {
-    return getAuthenticatedUserName()
-        .map(userRepository::findByUserName);
+    return resolveAuthenticatedUser().user;
   }
 
   public Optional<UUID> getAuthenticatedUserId() {
@@ -59,23 +104,34 @@ public class SpringContext implements ApplicationContextAware {
         .map(User::getId);
   }
 
+  public Optional<UUID> getAuthenticatedUserPartnerId() {
+    return getAuthenticatedUser()
+        .map(User::getPartnerId);
+  }
+
   public Optional<UUID> getAuthenticatedUserIdFromRequest(final HttpServletRequest request) {
     return Optional.ofNullable(userRepository.findByUserName(getAuthenticatedUserNameFromRequest(request)))
         .map(User::getId);
   }
 
   public List<Role> getAuthenticatedUserRoles() {
-    return Optional.ofNullable(SecurityContextHolder.getContext().getAuthentication())
-        .map(Authentication::getAuthorities)
-        .orElse(Collections.emptyList())
-        .stream()
-        .map(GrantedAuthority::getAuthority)
-        .map(Role::fromValue)
-        .collect(Collectors.toList());
+    return resolveAuthenticatedUser().roles;
   }
 
   @Override
   public void setApplicationContext(final ApplicationContext context) throws BeansException {
     this.context = context;
   }
+
+  private static final class AuthenticatedUser {
+    private final Authentication authentication;
+    private final Optional<User> user;
+    private final List<Role> roles;
+
+    private AuthenticatedUser(final Authentication authentication, final Optional<User> user, final List<Role> roles) {
+      this.authentication = authentication;
+      this.user = user;
+      this.roles = roles;
+    }
+  }
 }
@@ -0,0 +1,96 @@
+package com.rubyride.tripmanager.utility;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * Writes streams of entities as newline-delimited JSON, or of lines as CSV, as they are read from their source
+ */
+@Component
+public class StreamingResponseUtils {
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
+  // Number of entities written between flushes, after the first
+  private static final int FLUSH_INTERVAL = 100;
+
+  private final ObjectWriter objectWriter;
+
+  public StreamingResponseUtils(final ObjectMapper objectMapper) {
+    this.objectWriter = objectMapper.writer()
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  /**
+   * Build a streaming NDJSON response
+   *
+   * @param entities Entities to write; the stream is consumed lazily while the response is written, then closed so
+   *                 any database cursor behind it is released
+   * @return response writing each entity as a single line of JSON
+   */
+  public <T> ResponseEntity<StreamingResponseBody> toNdjson(final Stream<T> entities) {
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+        .body(outputStream -> {
+          try (entities) {
+            final var iterator = entities.iterator();
+            var count = 0L;
+
+            while (iterator.hasNext()) {
+              objectWriter.writeValue(outputStream, iterator.next());
+              outputStream.write('\n');
+
+              if (++count % FLUSH_INTERVAL == 1L) {
+                outputStream.flush();
+              }
+            }
+          }
+
+          outputStream.flush();
+        });
+  }
+
+  /**
+   * Build a streaming CSV response
+   *
+   * @param header Header line
+   * @param rows   CSV lines to write after the header; the stream is consumed lazily while the response is written,
+   *               then closed
+   * @return response writing the header and each row on its own line
+   */
+  public ResponseEntity<StreamingResponseBody> toCsv(final String header, final Stream<String> rows) {
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(TEXT_CSV_VALUE))
+        .body(outputStream -> {
+          try (rows) {
+            final var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            final var iterator = rows.iterator();
+            var count = 0L;
+
+            writer.write(header);
+            writer.write('\n');
+
+            while (iterator.hasNext()) {
+              writer.write(iterator.next());
+              writer.write('\n');
+
+              if (++count % FLUSH_INTERVAL == 1L) {
+                writer.flush();
+              }
+            }
+
+            writer.flush();
+          }
+        });
+  }
+}
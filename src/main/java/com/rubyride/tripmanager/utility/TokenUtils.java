@@ -3,6 +3,7 @@ package com.rubyride.tripmanager.utility;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.rubyride.tripmanager.security.SecurityConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,13 +20,24 @@ public final class TokenUtils {
     }
 
     try {
-      return JWT.require(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes()))
-          .build()
-          .verify(token.replace(SecurityConstants.TOKEN_PREFIX, ""))
+      return verifyToken(token)
           .getSubject();
     } catch (final JWTDecodeException e) {
       log.error("JWTDecodeException caught", e);
       return "";
     }
   }
+
+  /**
+   * Verify a token's signature and expiry
+   *
+   * @param token JWT, with or without the bearer prefix
+   * @return decoded token
+   * @throws com.auth0.jwt.exceptions.JWTVerificationException if the token is malformed, expired or not signed by us
+   */
+  public static DecodedJWT verifyToken(final String token) {
+    return JWT.require(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes()))
+        .build()
+        .verify(token.replace(SecurityConstants.TOKEN_PREFIX, ""));
+  }
 }
@@ -0,0 +1,121 @@
+package com.rubyride.tripmanager.utility;
+
+import com.rubyride.tripmanager.model.TrackPoint;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact encoding of a run of track points. Points are stored as three columns - time in epoch milliseconds, and
+ * latitude and longitude in millionths of a degree - each as zig-zag varint deltas from the previous point, and the
+ * whole is deflated. Consecutive points from one driver differ by little, so most deltas take a byte or two.
+ */
+public final class TrackCodec {
+  private static final int VERSION = 1;
+  private static final double SCALE = 1_000_000D;
+
+  private TrackCodec() {
+  }
+
+  public static byte[] encode(final List<TrackPoint> points) {
+    final var bytes = new ByteArrayOutputStream();
+
+    try (final var output = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      output.writeByte(VERSION);
+      writeVarint(output, points.size());
+
+      writeColumn(output, points, point -> point.getTime().toInstant().toEpochMilli());
+      writeColumn(output, points, point -> Math.round(point.getLatitude() * SCALE));
+      writeColumn(output, points, point -> Math.round(point.getLongitude() * SCALE));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  public static List<TrackPoint> decode(final byte[] data) {
+    try (final var input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+      final var version = input.readUnsignedByte();
+
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported track encoding version " + version);
+      }
+
+      final var count = (int) readVarint(input);
+      final var times = readColumn(input, count);
+      final var latitudes = readColumn(input, count);
+      final var longitudes = readColumn(input, count);
+
+      final var points = new ArrayList<TrackPoint>(count);
+
+      for (var i = 0; i < count; i++) {
+        points.add(new TrackPoint(latitudes[i] / SCALE,
+            longitudes[i] / SCALE,
+            Instant.ofEpochMilli(times[i]).atOffset(ZoneOffset.UTC)));
+      }
+
+      return points;
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeColumn(final DataOutput output, final List<TrackPoint> points, final ToLongFunction<TrackPoint> value) throws IOException {
+    var previous = 0L;
+
+    for (final var point : points) {
+      final var current = value.applyAsLong(point);
+      final var delta = current - previous;
+
+      writeVarint(output, (delta << 1) ^ (delta >> 63));
+      previous = current;
+    }
+  }
+
+  private static long[] readColumn(final DataInput input, final int count) throws IOException {
+    final var values = new long[count];
+    var previous = 0L;
+
+    for (var i = 0; i < count; i++) {
+      final var zigZag = readVarint(input);
+
+      previous += (zigZag >>> 1) ^ -(zigZag & 1L);
+      values[i] = previous;
+    }
+
+    return values;
+  }
+
+  private static void writeVarint(final DataOutput output, final long value) throws IOException {
+    var remaining = value;
+
+    while ((remaining & ~0x7FL) != 0L) {
+      output.writeByte((int) ((remaining & 0x7FL) | 0x80L));
+      remaining >>>= 7;
+    }
+
+    output.writeByte((int) remaining);
+  }
+
+  private static long readVarint(final DataInput input) throws IOException {
+    var value = 0L;
+
+    for (var shift = 0; shift < 64; shift += 7) {
+      final var b = input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+
+    throw new IOException("Malformed varint");
+  }
+}
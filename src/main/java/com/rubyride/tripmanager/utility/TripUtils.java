@@ -2,10 +2,11 @@ package com.rubyride.tripmanager.utility;
 
 import com.rubyride.model.*;
 import com.rubyride.tripmanager.exception.InvalidTripRequestException;
-import com.rubyride.tripmanager.repository.mongo.GroupRepository;
-import com.rubyride.tripmanager.repository.mongo.PlaceRepository;
+import com.rubyride.tripmanager.repository.mongo.ReferenceDataCache;
 import com.rubyride.tripmanager.repository.mongo.UserRepository;
 import com.rubyride.tripmanager.repository.redis.TripRepository;
+import com.rubyride.tripmanager.service.GroupHierarchyService;
+import com.rubyride.tripmanager.service.ZoneIndexService;
 import org.springframework.stereotype.Component;
 
 import java.time.OffsetDateTime;
@@ -13,30 +14,40 @@ import java.time.temporal.ChronoUnit;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Component
 public class TripUtils {
-  private final GroupRepository groupRepository;
-  private final PlaceRepository placeRepository;
+  private final GroupHierarchyService groupHierarchyService;
+  private final ReferenceDataCache referenceDataCache;
   private final TripRepository tripRepository;
   private final UserRepository userRepository;
+  private final ZoneIndexService zoneIndexService;
 
-  public TripUtils(final GroupRepository groupRepository, final PlaceRepository placeRepository, final TripRepository tripRepository, final UserRepository userRepository) {
-    this.groupRepository = groupRepository;
-    this.placeRepository = placeRepository;
+  public TripUtils(final GroupHierarchyService groupHierarchyService, final ReferenceDataCache referenceDataCache, final TripRepository tripRepository, final UserRepository userRepository, final ZoneIndexService zoneIndexService) {
+    this.groupHierarchyService = groupHierarchyService;
+    this.referenceDataCache = referenceDataCache;
     this.tripRepository = tripRepository;
     this.userRepository = userRepository;
+    this.zoneIndexService = zoneIndexService;
+  }
+
+  // Use place's zone if it has one; otherwise resolve it from the place's location
+  private UUID getZoneId(final Place place) {
+    return Optional.ofNullable(place.getZoneId())
+        .or(() -> zoneIndexService.getZoneIdForLocation(place.getLocation()))
+        .orElse(null);
   }
 
   public TripRequest setZones(final TripRequest request) {
     return request
-        .fromZoneId(placeRepository.findById(request.getFromLocationId())
-            .map(Place::getZoneId)
+        .fromZoneId(referenceDataCache.getPlaces().findById(request.getFromLocationId())
+            .map(this::getZoneId)
             .orElse(null))
-        .toZoneId(placeRepository.findById(request.getToLocationId())
-            .map(Place::getZoneId)
+        .toZoneId(referenceDataCache.getPlaces().findById(request.getToLocationId())
+            .map(this::getZoneId)
             .orElse(null));
   }
 
@@ -51,12 +62,11 @@ public class TripUtils {
 
     // Make sure user's group(s) or zone(s) contain to or from location
     // TODO: groups only?
-    final var groups = groupRepository.findAllById(
+    final var groupZones = groupHierarchyService.getOriginZoneIds(
         ObjectUtils.getOrDefault(user.getGroups(), Collections.emptyList()));
     final var zones = ObjectUtils.getOrDefault(user.getZones(), Collections.<UUID>emptyList());
 
-    final var allZones = StreamUtils.merge(StreamUtils.streamIterable(groups)
-            .map(Group::getOriginZoneId),
+    final var allZones = StreamUtils.merge(groupZones.stream(),
         zones.stream())
         .collect(Collectors.toSet());
 
@@ -0,0 +1,129 @@
+package com.rubyride.tripmanager;
+
+import com.rubyride.model.Event;
+import com.rubyride.model.EventAction;
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.utility.AnalyticsUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class AnalyticsUtilsTests {
+  private static final OffsetDateTime START_TIME = OffsetDateTime.of(2021, 6, 1, 8, 0, 0, 0, ZoneOffset.ofHours(-4));
+
+  private final AnalyticsUtils analyticsUtils = new AnalyticsUtils();
+
+  private static Event completeEvent(final EventAction action, final Integer passengerDelta, final long minutes) {
+    return new Event()
+        .id(UUID.randomUUID())
+        .action(action)
+        .passengerDelta(passengerDelta)
+        .time(START_TIME.plusMinutes(minutes))
+        .complete(true);
+  }
+
+  private static Shift createShift(final UUID driverId, final Event... events) {
+    return new Shift()
+        .id(UUID.randomUUID())
+        .driverId(driverId)
+        .events(new ArrayList<>(List.of(events)));
+  }
+
+  private static String row(final UUID driverId, final String period, final long startMinutes, final long endMinutes) {
+    return driverId + "," + period + "," + START_TIME.plusMinutes(startMinutes).toEpochSecond() + "," +
+        START_TIME.plusMinutes(endMinutes).toEpochSecond();
+  }
+
+  @Test
+  public void shiftWithoutCompleteEventsHasNoPeriods() {
+    final var shift = createShift(UUID.randomUUID(),
+        new Event()
+            .id(UUID.randomUUID())
+            .action(EventAction.SHIFT_START)
+            .time(START_TIME),
+        new Event()
+            .id(UUID.randomUUID())
+            .action(EventAction.PICKUP)
+            .passengerDelta(1)
+            .complete(true));
+
+    Assertions
+        .assertThat(analyticsUtils.getCsvRows(List.of(shift, createShift(UUID.randomUUID()))))
+        .isEmpty();
+    Assertions
+        .assertThat(analyticsUtils.getAnalytics(List.of(shift)))
+        .isEqualTo(AnalyticsUtils.CSV_HEADER + "\n");
+  }
+
+  @Test
+  public void shiftWithOneCompleteEventHasNoPeriods() {
+    final var shift = createShift(UUID.randomUUID(),
+        completeEvent(EventAction.SHIFT_START, null, 0L),
+        new Event()
+            .id(UUID.randomUUID())
+            .action(EventAction.SHIFT_END)
+            .time(START_TIME.plusHours(8L)));
+
+    Assertions
+        .assertThat(analyticsUtils.getCsvRows(List.of(shift)))
+        .isEmpty();
+  }
+
+  @Test
+  public void shiftWithoutDriverIsSkipped() {
+    final var shift = createShift(null,
+        completeEvent(EventAction.SHIFT_START, null, 0L),
+        completeEvent(EventAction.SHIFT_END, null, 60L));
+
+    Assertions
+        .assertThat(analyticsUtils.getCsvRows(List.of(shift)))
+        .isEmpty();
+  }
+
+  @Test
+  public void shiftWithTwoCompleteEventsHasOnePeriod() {
+    final var driverId = UUID.randomUUID();
+    final var shift = createShift(driverId,
+        completeEvent(EventAction.SHIFT_START, null, 0L),
+        completeEvent(EventAction.SHIFT_END, null, 60L));
+
+    Assertions
+        .assertThat(analyticsUtils.getCsvRows(List.of(shift)))
+        .containsExactly(row(driverId, "P1", 0L, 60L));
+  }
+
+  @Test
+  public void periodsFollowPassengersCarried() {
+    final var driverId = UUID.randomUUID();
+    final var shift = createShift(driverId,
+        completeEvent(EventAction.SHIFT_START, null, 0L),
+        completeEvent(EventAction.PICKUP, 2, 10L),
+        // Incomplete events don't start a period
+        new Event()
+            .id(UUID.randomUUID())
+            .action(EventAction.PICKUP)
+            .passengerDelta(1)
+            .time(START_TIME.plusMinutes(15L)),
+        completeEvent(EventAction.DROPOFF, -1, 20L),
+        completeEvent(EventAction.DROPOFF, -1, 30L),
+        completeEvent(EventAction.PICKUP, 1, 45L),
+        completeEvent(EventAction.DROPOFF, -1, 50L),
+        completeEvent(EventAction.SHIFT_END, null, 60L));
+
+    // P1 until the first pickup, P3 while anyone is on board, then P2 while empty between trips
+    Assertions
+        .assertThat(analyticsUtils.getCsvRows(List.of(shift)))
+        .containsExactly(
+            row(driverId, "P1", 0L, 10L),
+            row(driverId, "P3", 10L, 20L),
+            row(driverId, "P3", 20L, 30L),
+            row(driverId, "P2", 30L, 45L),
+            row(driverId, "P3", 45L, 50L),
+            row(driverId, "P2", 50L, 60L));
+  }
+}
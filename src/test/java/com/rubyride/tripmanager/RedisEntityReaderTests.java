@@ -0,0 +1,145 @@
+package com.rubyride.tripmanager;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.rubyride.model.Event;
+import com.rubyride.model.EventAction;
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.repository.redis.CompactMappingRedisConverter;
+import com.rubyride.tripmanager.repository.redis.RedisEntityReader;
+import com.rubyride.tripmanager.repository.redis.ShiftRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.ReferenceResolverImpl;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+@ContextConfiguration
+@SpringBootTest(classes = {TestRedisConfiguration.class, TestMongoConfiguration.class})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RedisEntityReaderTests {
+  private final RedisEntityReader entityReader;
+  private final ShiftRepository shiftRepository;
+  private final StringRedisTemplate redisTemplate;
+  private final CompactMappingRedisConverter compactConverter;
+
+  private final List<UUID> shiftIds = new ArrayList<>();
+
+  public RedisEntityReaderTests(@Autowired final RedisEntityReader entityReader, @Autowired final ShiftRepository shiftRepository, @Autowired final StringRedisTemplate redisTemplate,
+                                @Autowired final RedisMappingContext mappingContext, @Autowired final RedisCustomConversions redisCustomConversions,
+                                @Autowired final Jackson2ObjectMapperBuilder objectMapperBuilder, @Autowired final MeterRegistry meterRegistry) {
+    this.entityReader = entityReader;
+    this.shiftRepository = shiftRepository;
+    this.redisTemplate = redisTemplate;
+
+    // Configured as in RedisConfiguration, but writing the compact format whatever REDIS_COMPACT_ENTITIES is set to
+    this.compactConverter = new CompactMappingRedisConverter(mappingContext, new ReferenceResolverImpl(redisTemplate), true,
+        objectMapperBuilder
+            .factory(new SmileFactory())
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE)
+            .build(),
+        meterRegistry);
+    this.compactConverter.setCustomConversions(redisCustomConversions);
+    this.compactConverter.afterPropertiesSet();
+  }
+
+  private static Shift createShift() {
+    final var startTime = OffsetDateTime.of(2021, 6, 1, 8, 0, 0, 0, ZoneOffset.ofHours(-4));
+
+    return new Shift()
+        .id(UUID.randomUUID())
+        .active(true)
+        .driverId(UUID.randomUUID())
+        .startTime(startTime)
+        .endTime(startTime.plusHours(8L))
+        .trips(new ArrayList<>(List.of(UUID.randomUUID())))
+        .events(new ArrayList<>(List.of(new Event()
+            .id(UUID.randomUUID())
+            .action(EventAction.PICKUP)
+            .passengerDelta(300)
+            .time(startTime.plusMinutes(30L)))));
+  }
+
+  private void assertReadBack(final Shift shift) {
+    final var shifts = entityReader.findAllById(Shift.class, List.of(shift.getId(), UUID.randomUUID()));
+
+    Assertions
+        .assertThat(shifts)
+        .hasSize(1);
+
+    final var readShift = shifts.get(0);
+
+    Assertions
+        .assertThat(readShift.getId())
+        .isEqualTo(shift.getId());
+    Assertions
+        .assertThat(readShift.getDriverId())
+        .isEqualTo(shift.getDriverId());
+    Assertions
+        .assertThat(readShift.getStartTime())
+        .isAtSameInstantAs(shift.getStartTime());
+    Assertions
+        .assertThat(readShift.getTrips())
+        .isEqualTo(shift.getTrips());
+    Assertions
+        .assertThat(readShift.getEvents())
+        .extracting(Event::getId, Event::getAction, Event::getPassengerDelta)
+        .containsExactly(Assertions.tuple(shift.getEvents().get(0).getId(), EventAction.PICKUP, 300));
+  }
+
+  @Test
+  public void readsHashMappedEntities() {
+    final var shift = createShift();
+    shiftIds.add(shift.getId());
+
+    shiftRepository.save(shift);
+
+    assertReadBack(shift);
+  }
+
+  @Test
+  public void readsCompactEntities() {
+    final var shift = createShift();
+    shiftIds.add(shift.getId());
+
+    final var data = new RedisData();
+    compactConverter.write(shift, data);
+
+    final var hash = new HashMap<byte[], byte[]>();
+    data.getBucket().rawMap().forEach((field, value) -> hash.put(field.getBytes(StandardCharsets.UTF_8), value));
+
+    // Smile data isn't valid UTF-8, so it only survives the read if the hash isn't decoded as strings on the way
+    redisTemplate.execute((RedisCallback<Object>) connection -> {
+      connection.hMSet((data.getKeyspace() + ":" + data.getId()).getBytes(StandardCharsets.UTF_8), hash);
+      return null;
+    });
+
+    assertReadBack(shift);
+  }
+
+  @AfterAll
+  public void cleanup() {
+    shiftIds.forEach(shiftRepository::deleteById);
+  }
+}
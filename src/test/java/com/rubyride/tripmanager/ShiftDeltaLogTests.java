@@ -0,0 +1,188 @@
+package com.rubyride.tripmanager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rubyride.model.Event;
+import com.rubyride.model.EventAction;
+import com.rubyride.model.Shift;
+import com.rubyride.tripmanager.model.ShiftEventDelta;
+import com.rubyride.tripmanager.repository.redis.ShiftDeltaLog;
+import com.rubyride.tripmanager.repository.redis.ShiftRepository;
+import com.rubyride.tripmanager.utility.SchedulingUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@ContextConfiguration
+@SpringBootTest(classes = {TestRedisConfiguration.class, TestMongoConfiguration.class})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ShiftDeltaLogTests {
+  private static final OffsetDateTime START_TIME = OffsetDateTime.of(2021, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  private final ShiftRepository shiftRepository;
+  private final ShiftDeltaLog shiftDeltaLog;
+  private final ObjectMapper objectMapper;
+
+  private final List<UUID> shiftIds = new ArrayList<>();
+
+  public ShiftDeltaLogTests(@Autowired final ShiftRepository shiftRepository, @Autowired final ShiftDeltaLog shiftDeltaLog, @Autowired final ObjectMapper objectMapper) {
+    this.shiftRepository = shiftRepository;
+    this.shiftDeltaLog = shiftDeltaLog;
+    this.objectMapper = objectMapper;
+  }
+
+  private Shift createShift() {
+    final var shift = new Shift()
+        .id(UUID.randomUUID())
+        .active(true)
+        .driverId(UUID.randomUUID())
+        .startTime(START_TIME)
+        .endTime(START_TIME.plusHours(8L))
+        .trips(new ArrayList<>(List.of(UUID.randomUUID())))
+        .events(new ArrayList<>(List.of(
+            new Event()
+                .id(UUID.randomUUID())
+                .action(EventAction.SHIFT_START),
+            new Event()
+                .id(UUID.randomUUID())
+                .action(EventAction.PICKUP)
+                .tripRequestId(UUID.randomUUID())
+                .passengerDelta(1)
+                .time(START_TIME.plusMinutes(30L)),
+            new Event()
+                .id(UUID.randomUUID())
+                .action(EventAction.SHIFT_END))));
+
+    shiftIds.add(shift.getId());
+
+    return shiftRepository.save(shift);
+  }
+
+  private Shift replay(final UUID shiftId, final Shift snapshot, final long sequence) {
+    final var deltas = shiftDeltaLog.findSince(shiftId, sequence);
+
+    Assertions
+        .assertThat(deltas)
+        .isPresent();
+
+    var shift = snapshot;
+
+    for (final var delta : deltas.get()) {
+      shift = SchedulingUtils.applyDelta(shift, delta);
+    }
+
+    return shift;
+  }
+
+  private void assertSameShift(final Shift actual, final Shift expected) {
+    final JsonNode actualTree = objectMapper.valueToTree(actual);
+    final JsonNode expectedTree = objectMapper.valueToTree(expected);
+
+    Assertions
+        .assertThat(actualTree)
+        .isEqualTo(expectedTree);
+  }
+
+  @Test
+  public void replayedDeltasReproduceSavedShift() {
+    final var shiftId = createShift().getId();
+    final var snapshot = shiftRepository.findSnapshotById(shiftId).orElseThrow();
+    final var pickup = snapshot.getShift().getEvents().get(1);
+    final var tripRequestId = UUID.randomUUID();
+
+    // Added after the pickup, then anchored after the shift start, then merged into by trip request and action
+    shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+        .action(EventAction.DROPOFF)
+        .tripRequestId(pickup.getTripRequestId())
+        .passengerDelta(-1)
+        .time(START_TIME.plusMinutes(50L)), null));
+    shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+        .action(EventAction.PICKUP)
+        .tripRequestId(tripRequestId)
+        .passengerDelta(2), shift.getEvents().get(0).getId()));
+    shiftRepository.update(shiftId, shift -> SchedulingUtils.addOrUpdateEvent(shift, new Event()
+        .action(EventAction.PICKUP)
+        .tripRequestId(tripRequestId)
+        .time(START_TIME.plusMinutes(40L))
+        .complete(true), null));
+
+    // Reordered without adding or removing events, then one removed, along with trips and properties
+    shiftRepository.update(shiftId, shift -> {
+      shift.getEvents().stream()
+          .filter(event -> pickup.getId().equals(event.getId()))
+          .forEach(event -> event.setTime(START_TIME.plusMinutes(5L)));
+
+      return SchedulingUtils.sortEvents(shift);
+    });
+    shiftRepository.update(shiftId, shift -> shift
+        .events(shift.getEvents().stream()
+            .filter(event -> !pickup.getId().equals(event.getId()))
+            .collect(Collectors.toCollection(ArrayList::new)))
+        .trips(new ArrayList<>(List.of(UUID.randomUUID(), UUID.randomUUID())))
+        .driverId(null)
+        .endTime(START_TIME.plusHours(10L)));
+
+    final var saved = shiftRepository.findById(shiftId).orElseThrow();
+
+    Assertions
+        .assertThat(shiftDeltaLog.getSequence(shiftId))
+        .isEqualTo(snapshot.getSequence() + 5L);
+
+    assertSameShift(replay(shiftId, snapshot.getShift(), snapshot.getSequence()), saved);
+  }
+
+  @Test
+  public void unchangedShiftRecordsNoDelta() {
+    final var shiftId = createShift().getId();
+    final var sequence = shiftDeltaLog.getSequence(shiftId);
+
+    shiftRepository.update(shiftId, shift -> shift);
+
+    Assertions
+        .assertThat(shiftDeltaLog.getSequence(shiftId))
+        .isEqualTo(sequence);
+    Assertions
+        .assertThat(shiftDeltaLog.findSince(shiftId, sequence))
+        .hasValue(List.<ShiftEventDelta>of());
+  }
+
+  @Test
+  public void savedShiftIsReadBackAfterPartialWrites() {
+    final var shift = createShift();
+
+    // Dropping an event shifts the later events' hash fields down, leaving the last event's fields to be removed
+    final var updated = shiftRepository.update(shift.getId(), currentShift -> currentShift.events(new ArrayList<>(List.of(
+        currentShift.getEvents().get(0),
+        currentShift.getEvents().get(2)))))
+        .orElseThrow();
+
+    assertSameShift(shiftRepository.findById(shift.getId()).orElseThrow(), updated);
+    Assertions
+        .assertThat(shiftRepository.findByDriverId(shift.getDriverId()))
+        .extracting(Shift::getId)
+        .contains(shift.getId());
+
+    shiftRepository.update(shift.getId(), currentShift -> currentShift.driverId(null));
+
+    Assertions
+        .assertThat(shiftRepository.findByDriverId(shift.getDriverId()))
+        .extracting(Shift::getId)
+        .doesNotContain(shift.getId());
+  }
+
+  @AfterAll
+  public void cleanup() {
+    shiftIds.forEach(shiftRepository::deleteById);
+  }
+}
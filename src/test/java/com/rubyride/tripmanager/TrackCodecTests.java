@@ -0,0 +1,95 @@
+package com.rubyride.tripmanager;
+
+import com.rubyride.tripmanager.model.TrackPoint;
+import com.rubyride.tripmanager.utility.TrackCodec;
+import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+public class TrackCodecTests {
+  private static final OffsetDateTime START_TIME = OffsetDateTime.of(2021, 6, 1, 8, 0, 0, 123_000_000, ZoneOffset.ofHours(-4));
+
+  // Coordinates are kept in millionths of a degree, so each may be rounded by up to half of one
+  private static final Offset<Double> PRECISION = Offset.offset(0.5e-6 + 1e-9);
+
+  private static void assertRoundTrip(final List<TrackPoint> points) {
+    final var decoded = TrackCodec.decode(TrackCodec.encode(points));
+
+    Assertions
+        .assertThat(decoded)
+        .hasSameSizeAs(points);
+
+    for (var i = 0; i < points.size(); i++) {
+      Assertions
+          .assertThat(decoded.get(i).getTime())
+          .isAtSameInstantAs(points.get(i).getTime());
+      Assertions
+          .assertThat(decoded.get(i).getLatitude())
+          .isCloseTo(points.get(i).getLatitude(), PRECISION);
+      Assertions
+          .assertThat(decoded.get(i).getLongitude())
+          .isCloseTo(points.get(i).getLongitude(), PRECISION);
+    }
+  }
+
+  @Test
+  public void roundTripsEmptyTrack() {
+    assertRoundTrip(List.of());
+  }
+
+  @Test
+  public void roundTripsNegativeDeltas() {
+    // Western and southern hemispheres, doubling back, and a point reported out of order
+    assertRoundTrip(List.of(
+        new TrackPoint(40.440624, -79.995888, START_TIME),
+        new TrackPoint(40.440512, -79.996001, START_TIME.plusSeconds(5L)),
+        new TrackPoint(40.440624, -79.995888, START_TIME.plusSeconds(3L)),
+        new TrackPoint(-33.868820, 151.209296, START_TIME.plusSeconds(10L)),
+        new TrackPoint(-90D, -180D, START_TIME.plusSeconds(11L)),
+        new TrackPoint(90D, 180D, START_TIME.plusSeconds(12L))));
+  }
+
+  @Test
+  public void roundTripsLargeTimeGaps() {
+    assertRoundTrip(List.of(
+        new TrackPoint(40.440624, -79.995888, START_TIME),
+        new TrackPoint(40.440625, -79.995889, START_TIME.plus(Duration.ofDays(30L))),
+        new TrackPoint(40.440626, -79.995890, START_TIME.plus(Duration.ofDays(3_650L)).plusNanos(1_000_000L)),
+        new TrackPoint(40.440627, -79.995891, START_TIME.minus(Duration.ofDays(365L)))));
+  }
+
+  @Test
+  public void keepsMillionthsOfADegree() {
+    final var points = List.of(
+        new TrackPoint(40.000001, -79.000001, START_TIME),
+        new TrackPoint(40.000002, -79.000002, START_TIME.plusSeconds(1L)),
+        new TrackPoint(40.000001, -79.000001, START_TIME.plusSeconds(2L)),
+        new TrackPoint(0.000001, -0.000001, START_TIME.plusSeconds(3L)));
+
+    assertRoundTrip(points);
+
+    // One-millionth steps survive as distinct values rather than being rounded together
+    Assertions
+        .assertThat(TrackCodec.decode(TrackCodec.encode(points)))
+        .extracting(TrackPoint::getLatitude)
+        .containsExactly(40.000001, 40.000002, 40.000001, 0.000001);
+  }
+
+  @Test
+  public void roundsFinerCoordinatesToMillionthsOfADegree() {
+    final var decoded = TrackCodec.decode(TrackCodec.encode(List.of(
+        new TrackPoint(40.4406244, -79.9958886, START_TIME))));
+
+    Assertions
+        .assertThat(decoded.get(0).getLatitude())
+        .isEqualTo(40.440624);
+    Assertions
+        .assertThat(decoded.get(0).getLongitude())
+        .isEqualTo(-79.995889);
+  }
+}